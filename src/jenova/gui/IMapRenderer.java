@@ -3,6 +3,7 @@ package jenova.gui;
 import java.awt.Graphics;
 
 import jenova.mappingsystem.MapObject;
+import jenova.mappingsystem.MapPyramid;
 
 /**
  * Interface for creating map renderers for displaying HawkEye maps in the JenovaGUI
@@ -21,6 +22,13 @@ public interface IMapRenderer {
 	 */
 	public Graphics renderMap(MapObject[][] map);
 	
+	/**
+	 * Renders a map from its pyramid, drawing the coarsest level whose blocks are still at least a pixel across rather than every point
+	 * @param map MapPyramid of the map to be rendered to the canvas
+	 * @return Graphics object containing the updated map
+	 */
+	public Graphics renderMap(MapPyramid map);
+	
 	/**
 	 * @return A string containing information about the type of the renderer
 	 */
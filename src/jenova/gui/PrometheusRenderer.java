@@ -8,6 +8,8 @@ import javax.swing.JPanel;
 import jenova.console.JenovaConsole;
 import jenova.console.JenovaStatus;
 import jenova.mappingsystem.MapObject;
+import jenova.mappingsystem.MapPyramid;
+import jenova.mappingsystem.MapStateRegistry;
 
 /**
  * Renderer for displaying map data using the Prometheus probability map interpretation
@@ -17,11 +19,16 @@ import jenova.mappingsystem.MapObject;
 public class PrometheusRenderer implements IMapRenderer {
 
 	private static final double version = 0.1;
+	private static final short OCCUPIED_STATE = MapStateRegistry.intern("1");
 	private Graphics canvas;
 	private double xScale;
 	private double yScale;
+	private int panelWidth;
+	private int panelHeight;
 	
 	public PrometheusRenderer(JPanel panel, int mapHeight, int mapWidth){
+		this.panelWidth = panel.getWidth();
+		this.panelHeight = panel.getHeight();
 		this.xScale = ((double)panel.getWidth()-10)/(double)mapWidth;
 		JenovaConsole.statusMessage(new JenovaStatus("Render xScale: "+Double.toString(this.xScale)));
 		this.yScale = ((double)panel.getHeight()-10)/(double)mapHeight;
@@ -42,7 +49,7 @@ public class PrometheusRenderer implements IMapRenderer {
 				
 				//JenovaConsole.statusMessage(new JenovaStatus(new CartCoord(newX, newY).toString()));
 				
-				if(map[y][x].toString()=="1"){
+				if(map[y][x] != null && map[y][x].getStateId() == OCCUPIED_STATE){
 					this.canvas.setColor(Color.red);
 					this.canvas.fillRect(newX, newY, newWidth, newHeight);
 					/*JenovaConsole.statusMessage(new JenovaStatus(
@@ -62,6 +69,30 @@ public class PrometheusRenderer implements IMapRenderer {
 		return this.canvas;
 	}
 
+	@Override
+	public Graphics renderMap(MapPyramid map) {
+		double xScale = ((double)this.panelWidth-10)/(double)map.getWidth();
+		double yScale = ((double)this.panelHeight-10)/(double)map.getHeight();
+		int level = 0;
+		while(level < map.getLevels()-1 && (1<<level)*Math.min(xScale, yScale) < 1) level++;
+		double blockXScale = xScale*(1<<level);
+		double blockYScale = yScale*(1<<level);
+		int newWidth = Math.max((int)Math.round(blockXScale), 1);
+		int newHeight = Math.max((int)Math.round(blockYScale), 1);
+		for(int y=0; y<map.getLevelHeight(level); y++){
+			int newY = (int)Math.round(y*blockYScale)+5;
+			for(int x=0; x<map.getLevelWidth(level); x++){
+				int newX = (int)Math.round(x*blockXScale)+5;
+				//A block is drawn as occupied if any point under it is, so that obstacles do not vanish when zoomed out
+				if(map.getOccupiedCount(level, x, y) > 0) this.canvas.setColor(Color.red);
+				else this.canvas.setColor(Color.green);
+				this.canvas.fillRect(newX, newY, newWidth, newHeight);
+			}
+		}
+		JenovaConsole.statusMessage(new JenovaStatus("Map Render Complete"));
+		return this.canvas;
+	}
+
 	@Override
 	public void setCanvas(Graphics canvas) {
 		this.canvas = canvas;
@@ -0,0 +1,91 @@
+package jenova.localization;
+
+import jenova.mappingsystem.HawkEye;
+import jenova.mappingsystem.MapObject;
+import jenova.mappingsystem.MapView;
+import jenova.mappingsystem.ObjectLocationData;
+
+/**
+ * Class for correcting the location of a HawkEye's local frame by matching range scans against its global map. The scan is assumed to be
+ * taken from the origin of the local frame, facing along its X axis, which is where HawkEye.castScan() puts a sensor at pose (0,0,0).
+ * The localizer matches against a LikelihoodField built from a snapshot of the global map, so building it does not hold up the mapping
+ * thread for longer than the snapshot takes; the field is rebuilt only when rebuildField() is called, usually on its own thread every few
+ * seconds, and matching carries on against the previous field while a new one is built. Taking the snapshot writes the local map back into
+ * the global map, so rebuildField() may only be called from a thread other than the mapping thread once concurrent access has been enabled
+ * on the HawkEye, see HawkEye.enableConcurrentAccess().
+ * @author Adam Panzica
+ *
+ */
+public class HawkEyeLocalizer {
+	private final HawkEye hawkEye;
+	private final ScanMatcher matcher;
+	private final MapObject obstacle;
+	private final double sigma;
+	private final int levelCount;
+	private final double minScore;
+	private volatile LikelihoodField field;			//Field matched against, null until the first rebuildField()
+	private volatile ScanMatch lastMatch;
+
+	/**
+	 * Constructor for creating a localizer
+	 * @param hawkEye HawkEye to localize in
+	 * @param matcher ScanMatcher to match scans with
+	 * @param obstacle MapObject whose state marks a point of the global map as an obstacle
+	 * @param sigma spread of the likelihood around each obstacle, in points
+	 * @param levelCount number of levels of the likelihood field to search over
+	 * @param minScore lowest match score which is trusted over the odometry, from 0 to 1
+	 */
+	public HawkEyeLocalizer(HawkEye hawkEye, ScanMatcher matcher, MapObject obstacle, double sigma, int levelCount, double minScore){
+		this.hawkEye = hawkEye;
+		this.matcher = matcher;
+		this.obstacle = obstacle;
+		this.sigma = sigma;
+		this.levelCount = levelCount;
+		this.minScore = minScore;
+	}
+
+	/**
+	 * Rebuilds the likelihood field from a snapshot of the global map. Safe to call from another thread than the one mapping only if
+	 * concurrent access has been enabled on the HawkEye, see HawkEye.enableConcurrentAccess(); otherwise the snapshot races with the
+	 * mapping thread's changes to the local map, and this must be called from the mapping thread
+	 */
+	public void rebuildField(){
+		MapView view = this.hawkEye.snapshot();
+		this.field = new LikelihoodField(view.getGlobalMap(), this.obstacle, this.sigma, this.levelCount);
+	}
+
+	/**
+	 * Corrects an odometry estimate of the location of the local frame by matching a scan taken from the local origin
+	 * @param odometry origin relative location of the local frame in the global frame, as would be passed to HawkEye.updateLocation()
+	 * @param angles angle of each beam relative to the local frame's X axis, in radians
+	 * @param ranges range of each beam, in points
+	 * @param maxRange range at or beyond which a beam did not hit anything
+	 * @return The corrected location, or the odometry unchanged if there is no field yet or the scan did not match well enough
+	 */
+	public ObjectLocationData refine(ObjectLocationData odometry, double[] angles, double[] ranges, double maxRange){
+		LikelihoodField field = this.field;
+		if(field == null) return odometry;
+		SensorPose sensor = SensorPose.fromLocation(this.hawkEye, odometry);
+		ScanMatch match = this.matcher.match(field, sensor.x, sensor.y, sensor.heading, angles, ranges, maxRange);
+		this.lastMatch = match;
+		if(match == null || match.getScore() < this.minScore) return odometry;
+		return new SensorPose(match.getX(), match.getY(), match.getHeading()).toLocation(this.hawkEye);
+	}
+
+	/**
+	 * Corrects an odometry estimate, see refine(), and moves the local frame of the HawkEye to the corrected location
+	 * @return The location the local frame was moved to
+	 */
+	public ObjectLocationData update(ObjectLocationData odometry, double[] angles, double[] ranges, double maxRange){
+		ObjectLocationData location = refine(odometry, angles, ranges, maxRange);
+		this.hawkEye.updateLocation(location);
+		return location;
+	}
+
+	/**
+	 * @return The result of the last match, in global map points, or null if the last scan did not hit anything or nothing has been matched
+	 */
+	public ScanMatch getLastMatch(){
+		return this.lastMatch;
+	}
+}
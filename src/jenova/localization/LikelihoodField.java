@@ -0,0 +1,130 @@
+package jenova.localization;
+
+import jenova.mappingsystem.DistanceField;
+import jenova.mappingsystem.Frame;
+import jenova.mappingsystem.MapObject;
+
+/**
+ * Class for holding how likely a range reading is to end at each point of a map. The likelihood of a point falls off with its distance
+ * from the nearest obstacle as a Gaussian, so a scan lined up with the map scores highly even when its end points miss the obstacles by
+ * a point or two. The field is computed once from a DistanceField and never changes, so any number of threads may match scans against it.
+ * Along with the field itself, the field holds coarser levels for branch and bound searches: the value of a point on level n is the
+ * highest likelihood in the 2^n by 2^n block of points starting at it, so the score of a scan on level n is an upper bound on its score
+ * at any of the 2^n by 2^n offsets the block covers.
+ * @author Adam Panzica
+ *
+ */
+public class LikelihoodField {
+	private final int width;
+	private final int height;
+	private final float[][] levels;					//Likelihood of each point, then the block maximums of each coarser level
+
+	/**
+	 * Constructor for creating a likelihood field from the obstacles of a frame
+	 * @param frame Frame to take the obstacles from, such as the global map of a MapView
+	 * @param obstacle MapObject whose state marks a point as an obstacle
+	 * @param sigma spread of the Gaussian, in points
+	 * @param levelCount number of levels to build, at least 1
+	 */
+	public LikelihoodField(Frame frame, MapObject obstacle, double sigma, int levelCount){
+		this(build(frame, obstacle, sigma), sigma, levelCount);
+	}
+
+	private static DistanceField build(Frame frame, MapObject obstacle, double sigma){
+		DistanceField field = new DistanceField(frame, obstacle, 3*sigma);
+		field.detach();
+		return field;
+	}
+
+	/**
+	 * Constructor for creating a likelihood field from an up to date distance field. Points further from an obstacle than the maximum
+	 * distance of the distance field have no likelihood
+	 * @param field DistanceField to take the distances from
+	 * @param sigma spread of the Gaussian, in points
+	 * @param levelCount number of levels to build, at least 1
+	 */
+	public LikelihoodField(DistanceField field, double sigma, int levelCount){
+		if(levelCount < 1) throw new IllegalArgumentException("A likelihood field needs at least one level");
+		this.width = field.getWidth();
+		this.height = field.getHeight();
+		this.levels = new float[levelCount][];
+		float[] likelihood = new float[this.width*this.height];
+		double scale = -0.5/(sigma*sigma);
+		int squaredDistance;
+		for(int y=0; y<this.height; y++){
+			for(int x=0; x<this.width; x++){
+				squaredDistance = field.getSquaredDistance(x, y);
+				if(squaredDistance != Integer.MAX_VALUE) likelihood[y*this.width+x] = (float)Math.exp(squaredDistance*scale);
+			}
+		}
+		this.levels[0] = likelihood;
+		for(int level=1; level<levelCount; level++){
+			this.levels[level] = pool(this.levels[level-1], 1<<(level-1));
+		}
+	}
+
+	/**
+	 * Builds a level from the one below it: a block of 2^n starting at a point is made of the four blocks of 2^(n-1) starting at it and
+	 * half a block to its right and below it
+	 */
+	private float[] pool(float[] below, int half){
+		float[] level = new float[this.width*this.height];
+		int right;
+		int down;
+		for(int y=0; y<this.height; y++){
+			down = Math.min(y+half, this.height-1)*this.width;
+			for(int x=0; x<this.width; x++){
+				right = Math.min(x+half, this.width-1);
+				level[y*this.width+x] = Math.max(Math.max(below[y*this.width+x], below[y*this.width+right]), Math.max(below[down+x], below[down+right]));
+			}
+		}
+		return level;
+	}
+
+	/**
+	 * @return The likelihood of the point at (x,y), or 0 if it is outside of the field
+	 */
+	public float getLikelihood(int x, int y){
+		if(x<0 || x>=this.width || y<0 || y>=this.height) return 0;
+		return this.levels[0][y*this.width+x];
+	}
+
+	/**
+	 * @return The likelihood at a position between points, interpolated bilinearly from the four points around it
+	 */
+	public double getLikelihood(double x, double y){
+		int x0 = (int)Math.floor(x);
+		int y0 = (int)Math.floor(y);
+		double fx = x-x0;
+		double fy = y-y0;
+		return (1-fy)*((1-fx)*getLikelihood(x0, y0)+fx*getLikelihood(x0+1, y0))+fy*((1-fx)*getLikelihood(x0, y0+1)+fx*getLikelihood(x0+1, y0+1));
+	}
+
+	/**
+	 * @return The points of a level, indexed y*width+x. The array must not be changed
+	 */
+	float[] getLevel(int level){
+		return this.levels[level];
+	}
+
+	/**
+	 * @return The number of levels in the field
+	 */
+	public int getLevelCount(){
+		return this.levels.length;
+	}
+
+	/**
+	 * @return The width of the field
+	 */
+	public int getWidth(){
+		return this.width;
+	}
+
+	/**
+	 * @return The height of the field
+	 */
+	public int getHeight(){
+		return this.height;
+	}
+}
@@ -0,0 +1,487 @@
+package jenova.localization;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import jenova.mappingsystem.Frame;
+import jenova.mappingsystem.HawkEye;
+import jenova.mappingsystem.MapObject;
+import jenova.mappingsystem.MapView;
+import jenova.mappingsystem.ObjectLocationData;
+
+/**
+ * Class for finding the location of a HawkEye's local frame with a particle filter (Monte Carlo localization), for when there is no good
+ * guess to refine from: at start up, or after the robot has been picked up and put down somewhere else. Each particle is a guess at the
+ * pose of a sensor at the local origin, as for HawkEyeLocalizer, and the particles are held in parallel arrays of primitives rather than
+ * as objects, so that moving and weighing them walks memory in order and the filter allocates nothing once running.
+ * <p>
+ * Each cycle the particles are moved by the change in odometry, with noise, then weighed by how well the scan fits the global map from
+ * each of them, using a LikelihoodField built from a snapshot of the global map. Weighing is done in parallel across particles on a
+ * fork-join pool. The particles are then resampled with a low variance (systematic) wheel, keeping as many particles as KLD sampling says
+ * are needed to represent the spread of the weights: few once the filter has converged, up to the maximum while it is lost. The filter
+ * tracks a short and a long term average of how well scans fit, and when the short term average falls behind, replaces a share of the
+ * resampled particles with ones spread over the free space of the map, which lets it recover when the robot is moved without its
+ * odometry knowing.
+ * <p>
+ * A localizer is not thread safe: prediction, correction and the estimate should all be used from one thread, though rebuildField() may
+ * be called from any thread once concurrent access has been enabled on the HawkEye, see HawkEye.enableConcurrentAccess().
+ * @author Adam Panzica
+ *
+ */
+public class MonteCarloLocalizer {
+	private static final int PARALLEL_THRESHOLD = 256;		//Particles below which a weighing task is not split further
+	private static final int MAX_BEAMS = 60;				//Most beams of a scan used to weigh the particles
+	private static final double HIT_WEIGHT = 0.95;			//Share of a beam's likelihood explained by the map, the rest is random
+	private static final double SLOW_RATE = 0.001;			//Rate the long term average fit follows the scans
+	private static final double FAST_RATE = 0.1;			//Rate the short term average fit follows the scans
+	private static final int PLACEMENT_ATTEMPTS = 1000;	//Most points tried when placing a random particle in free space
+
+	private final HawkEye hawkEye;
+	private final MapObject obstacle;
+	private final MapObject free;
+	private final double sigma;
+	private final int minParticles;
+	private final int maxParticles;
+	private final ForkJoinPool pool;
+	private final Random random;
+
+	private volatile LikelihoodField field;				//Field weighed against, null until the first rebuildField()
+	private volatile Frame map;							//Snapshot of the global map the field was built from
+
+	private int count;
+	private double[] x;
+	private double[] y;
+	private double[] heading;
+	private double[] weight;
+	private double[] nextX;								//Buffers resampled into, swapped with the particles afterwards
+	private double[] nextY;
+	private double[] nextHeading;
+	private final double[] cumulative;					//Running total of the weights, for finding particles on the wheel
+	private final double[] hitX;						//End points of the scan being weighed, relative to the sensor
+	private final double[] hitY;
+	private int hits;
+	private final long[] bins;							//Open addressed set of the KLD bins hit while resampling
+
+	private double linearNoise = 0.1;
+	private double angularNoise = 0.1;
+	private double binSize = 2;
+	private double binAngle = Math.toRadians(10);
+	private double kldError = 0.05;
+	private double kldQuantile = 2.33;
+	private double slowFit;
+	private double fastFit;
+
+	/**
+	 * Constructor for creating a localizer which weighs particles on its own fork-join pool, with one thread per processor
+	 * @param hawkEye HawkEye to localize in
+	 * @param obstacle MapObject whose state marks a point of the global map as an obstacle
+	 * @param free MapObject whose state marks a point of the global map as free, where particles may be placed
+	 * @param sigma spread of the likelihood around each obstacle, in points
+	 * @param minParticles fewest particles to keep, however well the filter has converged
+	 * @param maxParticles most particles to keep
+	 */
+	public MonteCarloLocalizer(HawkEye hawkEye, MapObject obstacle, MapObject free, double sigma, int minParticles, int maxParticles){
+		this(hawkEye, obstacle, free, sigma, minParticles, maxParticles, new ForkJoinPool(), new Random());
+	}
+
+	/**
+	 * Constructor for creating a localizer which weighs particles on an existing fork-join pool
+	 * @param hawkEye HawkEye to localize in
+	 * @param obstacle MapObject whose state marks a point of the global map as an obstacle
+	 * @param free MapObject whose state marks a point of the global map as free, where particles may be placed
+	 * @param sigma spread of the likelihood around each obstacle, in points
+	 * @param minParticles fewest particles to keep, however well the filter has converged
+	 * @param maxParticles most particles to keep
+	 * @param pool Pool to weigh particles on
+	 * @param random Random source for the motion noise and resampling
+	 */
+	public MonteCarloLocalizer(HawkEye hawkEye, MapObject obstacle, MapObject free, double sigma, int minParticles, int maxParticles, ForkJoinPool pool, Random random){
+		if(minParticles < 1 || maxParticles < minParticles) throw new IllegalArgumentException("Particle counts must satisfy 1 <= min <= max");
+		this.hawkEye = hawkEye;
+		this.obstacle = obstacle;
+		this.free = free;
+		this.sigma = sigma;
+		this.minParticles = minParticles;
+		this.maxParticles = maxParticles;
+		this.pool = pool;
+		this.random = random;
+		this.x = new double[maxParticles];
+		this.y = new double[maxParticles];
+		this.heading = new double[maxParticles];
+		this.weight = new double[maxParticles];
+		this.nextX = new double[maxParticles];
+		this.nextY = new double[maxParticles];
+		this.nextHeading = new double[maxParticles];
+		this.cumulative = new double[maxParticles];
+		this.hitX = new double[MAX_BEAMS];
+		this.hitY = new double[MAX_BEAMS];
+		this.bins = new long[Integer.highestOneBit(maxParticles)<<2];
+	}
+
+	/**
+	 * Sets the noise added when moving the particles
+	 * @param linearNoise standard deviation of the error in distance travelled, as a fraction of the distance
+	 * @param angularNoise standard deviation of the error in rotation, as a fraction of the rotation plus the distance travelled
+	 */
+	public void setMotionNoise(double linearNoise, double angularNoise){
+		this.linearNoise = linearNoise;
+		this.angularNoise = angularNoise;
+	}
+
+	/**
+	 * Sets how many particles KLD sampling keeps
+	 * @param binSize size of the bins the particles are counted in, in points
+	 * @param binAngle size of the bins the particles are counted in, in radians
+	 * @param error greatest KL divergence allowed between the particles and the distribution they sample
+	 * @param quantile upper standard normal quantile of the confidence the error bound holds with, 2.33 for 99%
+	 */
+	public void setKLDSampling(double binSize, double binAngle, double error, double quantile){
+		this.binSize = binSize;
+		this.binAngle = binAngle;
+		this.kldError = error;
+		this.kldQuantile = quantile;
+	}
+
+	/**
+	 * Rebuilds the likelihood field from a snapshot of the global map. Safe to call from another thread than the ones mapping and
+	 * localizing only if concurrent access has been enabled on the HawkEye, see HawkEye.enableConcurrentAccess(); otherwise the snapshot
+	 * races with the mapping thread's changes to the local map, and this must be called from the mapping thread
+	 */
+	public void rebuildField(){
+		MapView view = this.hawkEye.snapshot();
+		LikelihoodField field = new LikelihoodField(view.getGlobalMap(), this.obstacle, this.sigma, 1);
+		//The map is published before the field, so a thread which sees a field always sees a map with it
+		this.map = view.getGlobalMap();
+		this.field = field;
+	}
+
+	/**
+	 * Spreads the maximum number of particles over the free space of the global map, for when the location is not known at all
+	 */
+	public void initializeGlobal(){
+		checkField();
+		this.count = this.maxParticles;
+		for(int n=0; n<this.count; n++){
+			placeRandom(n, this.x, this.y, this.heading);
+			this.weight[n] = 1.0/this.count;
+		}
+		this.slowFit = 0;
+		this.fastFit = 0;
+	}
+
+	/**
+	 * Spreads the minimum number of particles around a location, for when the location is roughly known
+	 * @param location origin relative location of the local frame in the global frame
+	 * @param linearSpread standard deviation of the particles' positions, in points
+	 * @param angularSpread standard deviation of the particles' headings, in radians
+	 */
+	public void initialize(ObjectLocationData location, double linearSpread, double angularSpread){
+		SensorPose pose = SensorPose.fromLocation(this.hawkEye, location);
+		this.count = this.minParticles;
+		for(int n=0; n<this.count; n++){
+			this.x[n] = pose.x+this.random.nextGaussian()*linearSpread;
+			this.y[n] = pose.y+this.random.nextGaussian()*linearSpread;
+			this.heading[n] = pose.heading+this.random.nextGaussian()*angularSpread;
+			this.weight[n] = 1.0/this.count;
+		}
+		this.slowFit = 0;
+		this.fastFit = 0;
+	}
+
+	/**
+	 * Moves the particles by the change between two odometry readings. The change is taken relative to the sensor, so each particle moves
+	 * the same way relative to its own heading
+	 * @param previous origin relative location of the local frame as given by odometry at the last prediction
+	 * @param current origin relative location of the local frame as given by odometry now
+	 */
+	public void predict(ObjectLocationData previous, ObjectLocationData current){
+		SensorPose from = SensorPose.fromLocation(this.hawkEye, previous);
+		SensorPose to = SensorPose.fromLocation(this.hawkEye, current);
+		double cos = Math.cos(from.heading);
+		double sin = Math.sin(from.heading);
+		double forward = cos*(to.x-from.x)+sin*(to.y-from.y);
+		double sideways = -sin*(to.x-from.x)+cos*(to.y-from.y);
+		double rotation = Math.IEEEremainder(to.heading-from.heading, 2*Math.PI);
+		double distance = Math.hypot(forward, sideways);
+		double linearDeviation = this.linearNoise*distance;
+		double angularDeviation = this.angularNoise*(Math.abs(rotation)+distance);
+		double scale;
+		double dx;
+		double dy;
+		for(int n=0; n<this.count; n++){
+			scale = 1+this.random.nextGaussian()*this.linearNoise;
+			dx = forward*scale+this.random.nextGaussian()*linearDeviation*0.5;
+			dy = sideways*scale+this.random.nextGaussian()*linearDeviation*0.5;
+			cos = Math.cos(this.heading[n]);
+			sin = Math.sin(this.heading[n]);
+			this.x[n] += cos*dx-sin*dy;
+			this.y[n] += sin*dx+cos*dy;
+			this.heading[n] += rotation+this.random.nextGaussian()*angularDeviation;
+		}
+	}
+
+	/**
+	 * Weighs the particles by how well a scan taken from the local origin fits the global map from each of them, then resamples them.
+	 * Beams with a range that is not positive, or at or beyond the maximum range, did not hit anything and are left out; if no beam hit
+	 * anything the particles are left as they are
+	 * @param angles angle of each beam relative to the local frame's X axis, in radians
+	 * @param ranges range of each beam, in points
+	 * @param maxRange range at or beyond which a beam did not hit anything
+	 */
+	public void correct(double[] angles, double[] ranges, double maxRange){
+		LikelihoodField field = checkField();
+		int valid = 0;
+		for(int beam=0; beam<ranges.length; beam++){
+			if(ranges[beam]>0 && ranges[beam]<maxRange) valid++;
+		}
+		if(valid == 0) return;
+		//Use evenly spread beams, at most MAX_BEAMS of them
+		this.hits = 0;
+		int seen = 0;
+		for(int beam=0; beam<ranges.length && this.hits<MAX_BEAMS; beam++){
+			if(!(ranges[beam]>0 && ranges[beam]<maxRange)) continue;
+			if((long)seen*MAX_BEAMS >= (long)this.hits*valid){
+				this.hitX[this.hits] = ranges[beam]*Math.cos(angles[beam]);
+				this.hitY[this.hits] = ranges[beam]*Math.sin(angles[beam]);
+				this.hits++;
+			}
+			seen++;
+		}
+
+		WeighTask task = new WeighTask(field, 0, this.count);
+		if(this.count < PARALLEL_THRESHOLD) task.compute();
+		else this.pool.invoke(task);
+
+		//The weights hold log likelihoods, so scale by the best before leaving log space
+		double best = Double.NEGATIVE_INFINITY;
+		for(int n=0; n<this.count; n++){
+			best = Math.max(best, this.weight[n]);
+		}
+		double total = 0;
+		double fit = 0;
+		for(int n=0; n<this.count; n++){
+			fit += Math.exp(this.weight[n]/this.hits);
+			this.weight[n] = Math.exp(this.weight[n]-best);
+			total += this.weight[n];
+		}
+		for(int n=0; n<this.count; n++){
+			this.weight[n] /= total;
+		}
+		fit /= this.count;
+		this.slowFit = this.slowFit == 0 ? fit : this.slowFit+SLOW_RATE*(fit-this.slowFit);
+		this.fastFit = this.fastFit == 0 ? fit : this.fastFit+FAST_RATE*(fit-this.fastFit);
+		resample();
+	}
+
+	/**
+	 * Resamples the particles with a low variance wheel, drawing one particle at a time until there are as many as the KLD bound asks for
+	 * the number of bins drawn into so far. The wheel has a spoke for each of the maximum number of particles, visited in bit reversed
+	 * order, so that however early drawing stops the particles drawn are spread evenly around the wheel. Each draw is instead placed at
+	 * random in free space with a chance given by how far the short term fit has fallen behind the long term fit, and as those land in new
+	 * bins they raise the number of particles drawn
+	 */
+	private void resample(){
+		double total = 0;
+		for(int n=0; n<this.count; n++){
+			total += this.weight[n];
+			this.cumulative[n] = total;
+		}
+		double randomChance = 0;
+		if(this.slowFit > 0) randomChance = Math.max(0, 1-this.fastFit/this.slowFit);
+		int bits = Integer.numberOfTrailingZeros(this.bins.length>>>1);
+		double spokes = 1<<bits;
+		double offset = this.random.nextDouble();
+		Arrays.fill(this.bins, Long.MIN_VALUE);
+		int filled = 0;
+		int drawn = 0;
+		int particle;
+		while(drawn < this.maxParticles){
+			if(this.random.nextDouble() < randomChance){
+				placeRandom(drawn, this.nextX, this.nextY, this.nextHeading);
+			}
+			else{
+				particle = find(total*((Integer.reverse(drawn)>>>(32-bits))+offset)/spokes);
+				this.nextX[drawn] = this.x[particle];
+				this.nextY[drawn] = this.y[particle];
+				this.nextHeading[drawn] = this.heading[particle];
+			}
+			if(addBin(this.nextX[drawn], this.nextY[drawn], this.nextHeading[drawn])) filled++;
+			drawn++;
+			if(drawn >= this.minParticles && drawn >= kldBound(filled)) break;
+		}
+
+		double[] swap = this.x;
+		this.x = this.nextX;
+		this.nextX = swap;
+		swap = this.y;
+		this.y = this.nextY;
+		this.nextY = swap;
+		swap = this.heading;
+		this.heading = this.nextHeading;
+		this.nextHeading = swap;
+		this.count = drawn;
+		for(int n=0; n<this.count; n++){
+			this.weight[n] = 1.0/this.count;
+		}
+	}
+
+	/**
+	 * @return The index of the particle whose slice of the cumulative weights holds the pointer
+	 */
+	private int find(double pointer){
+		int low = 0;
+		int high = this.count-1;
+		int middle;
+		while(low < high){
+			middle = (low+high)>>>1;
+			if(this.cumulative[middle] < pointer) low = middle+1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Adds the bin holding a pose to the set of filled bins
+	 * @return True if the bin was not already filled
+	 */
+	private boolean addBin(double x, double y, double heading){
+		long bx = (long)Math.floor(x/this.binSize);
+		long by = (long)Math.floor(y/this.binSize);
+		long bh = (long)Math.floor(Math.IEEEremainder(heading, 2*Math.PI)/this.binAngle);
+		long key = ((bx&0x1FFFFF)<<42)|((by&0x1FFFFF)<<21)|(bh&0x1FFFFF);
+		int mask = this.bins.length-1;
+		int slot = (int)((key*0x9E3779B97F4A7C15L)>>>40)&mask;
+		while(this.bins[slot] != Long.MIN_VALUE){
+			if(this.bins[slot] == key) return false;
+			slot = (slot+1)&mask;
+		}
+		this.bins[slot] = key;
+		return true;
+	}
+
+	/**
+	 * @return The number of particles needed so that, with the configured confidence, the KL divergence between the particles and a
+	 * distribution filling the given number of bins is within the configured error
+	 */
+	private int kldBound(int bins){
+		if(bins < 2) return this.minParticles;
+		double k = bins-1;
+		double a = 2/(9*k);
+		double b = 1-a+Math.sqrt(a)*this.kldQuantile;
+		return (int)Math.ceil(k/(2*this.kldError)*b*b*b);
+	}
+
+	/**
+	 * Places a particle at a random free point of the map, facing a random way. If no free point is found the particle is placed anywhere
+	 */
+	private void placeRandom(int n, double[] x, double[] y, double[] heading){
+		Frame map = this.map;
+		int px = 0;
+		int py = 0;
+		for(int attempt=0; attempt<PLACEMENT_ATTEMPTS; attempt++){
+			px = this.random.nextInt(map.getWidth());
+			py = this.random.nextInt(map.getHeight());
+			if(map.getState(px, py) == this.free.getStateId()) break;
+		}
+		x[n] = px+this.random.nextDouble()-0.5;
+		y[n] = py+this.random.nextDouble()-0.5;
+		heading[n] = (this.random.nextDouble()*2-1)*Math.PI;
+	}
+
+	private LikelihoodField checkField(){
+		LikelihoodField field = this.field;
+		if(field == null) throw new IllegalStateException("rebuildField() must be called before the map can be used");
+		return field;
+	}
+
+	/**
+	 * @return The origin relative location of the local frame given by the weighted mean of the particles, which can be passed to
+	 * HawkEye.updateLocation(). Only meaningful once the filter has converged, see getSpread()
+	 */
+	public ObjectLocationData getLocation(){
+		double meanX = 0;
+		double meanY = 0;
+		double cos = 0;
+		double sin = 0;
+		for(int n=0; n<this.count; n++){
+			meanX += this.weight[n]*this.x[n];
+			meanY += this.weight[n]*this.y[n];
+			cos += this.weight[n]*Math.cos(this.heading[n]);
+			sin += this.weight[n]*Math.sin(this.heading[n]);
+		}
+		return new SensorPose(meanX, meanY, Math.atan2(sin, cos)).toLocation(this.hawkEye);
+	}
+
+	/**
+	 * @return The root mean square distance of the particles from their weighted mean, in points
+	 */
+	public double getSpread(){
+		double meanX = 0;
+		double meanY = 0;
+		for(int n=0; n<this.count; n++){
+			meanX += this.weight[n]*this.x[n];
+			meanY += this.weight[n]*this.y[n];
+		}
+		double spread = 0;
+		for(int n=0; n<this.count; n++){
+			spread += this.weight[n]*((this.x[n]-meanX)*(this.x[n]-meanX)+(this.y[n]-meanY)*(this.y[n]-meanY));
+		}
+		return Math.sqrt(spread);
+	}
+
+	/**
+	 * @return The number of particles currently held
+	 */
+	public int getParticleCount(){
+		return this.count;
+	}
+
+	/**
+	 * Weighs a range of particles, splitting the range in half until it is small enough to weigh directly. The weight of each particle is
+	 * left as the log likelihood of the scan from it
+	 */
+	private class WeighTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+
+		private final LikelihoodField field;
+		private final int start;
+		private final int end;
+
+		WeighTask(LikelihoodField field, int start, int end){
+			this.field = field;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if(this.end-this.start > PARALLEL_THRESHOLD){
+				int middle = (this.start+this.end)>>>1;
+				invokeAll(new WeighTask(this.field, this.start, middle), new WeighTask(this.field, middle, this.end));
+				return;
+			}
+			double[] hitX = MonteCarloLocalizer.this.hitX;
+			double[] hitY = MonteCarloLocalizer.this.hitY;
+			int hits = MonteCarloLocalizer.this.hits;
+			double[] x = MonteCarloLocalizer.this.x;
+			double[] y = MonteCarloLocalizer.this.y;
+			double[] heading = MonteCarloLocalizer.this.heading;
+			double[] weight = MonteCarloLocalizer.this.weight;
+			double cos;
+			double sin;
+			double logLikelihood;
+			for(int n=this.start; n<this.end; n++){
+				cos = Math.cos(heading[n]);
+				sin = Math.sin(heading[n]);
+				logLikelihood = 0;
+				for(int hit=0; hit<hits; hit++){
+					logLikelihood += Math.log(HIT_WEIGHT*this.field.getLikelihood((int)Math.round(x[n]+cos*hitX[hit]-sin*hitY[hit]),
+							(int)Math.round(y[n]+sin*hitX[hit]+cos*hitY[hit]))+(1-HIT_WEIGHT));
+				}
+				weight[n] = logLikelihood;
+			}
+		}
+	}
+}
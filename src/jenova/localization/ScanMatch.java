@@ -0,0 +1,59 @@
+package jenova.localization;
+
+/**
+ * Class for holding the result of matching a scan against a LikelihoodField: the pose of the sensor which best lines the scan up with the
+ * map, in points of the map and radians counter clockwise from its X axis, and how well the scan fits there.
+ * @author Adam Panzica
+ *
+ */
+public class ScanMatch {
+	private final double x;
+	private final double y;
+	private final double heading;
+	private final double score;
+
+	/**
+	 * @param x X coordinate of the sensor in the map
+	 * @param y Y coordinate of the sensor in the map
+	 * @param heading heading of the sensor, in radians counter clockwise from the X axis of the map
+	 * @param score mean likelihood of the scan's end points at the pose, from 0 to 1
+	 */
+	public ScanMatch(double x, double y, double heading, double score){
+		this.x = x;
+		this.y = y;
+		this.heading = heading;
+		this.score = score;
+	}
+
+	/**
+	 * @return The X coordinate of the sensor in the map
+	 */
+	public double getX(){
+		return this.x;
+	}
+
+	/**
+	 * @return The Y coordinate of the sensor in the map
+	 */
+	public double getY(){
+		return this.y;
+	}
+
+	/**
+	 * @return The heading of the sensor, in radians counter clockwise from the X axis of the map
+	 */
+	public double getHeading(){
+		return this.heading;
+	}
+
+	/**
+	 * @return The mean likelihood of the scan's end points at the pose, from 0 for a scan which fits nowhere to 1 for a perfect fit
+	 */
+	public double getScore(){
+		return this.score;
+	}
+
+	public String toString(){
+		return "("+this.x+","+this.y+") heading "+this.heading+" score "+this.score;
+	}
+}
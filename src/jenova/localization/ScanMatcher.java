@@ -0,0 +1,301 @@
+package jenova.localization;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class for finding the pose of a range sensor by matching its scan against a LikelihoodField. The matcher searches every pose within a
+ * window around an initial guess: headings are stepped so that the furthest end point of the scan moves by about one point per step, and
+ * for each heading the translations are searched by branch and bound over the levels of the field, opening only the blocks of
+ * translations whose upper bound beats the best score found so far. Headings are searched in parallel on a fork-join pool, sharing the
+ * best score so that every heading prunes against it. The best pose on the grid is then refined between points and steps by climbing the
+ * bilinearly interpolated field, which gives a pose finer than the points of the map.
+ * The matcher holds no state between matches, so it may be used from several threads at once.
+ * @author Adam Panzica
+ *
+ */
+public class ScanMatcher {
+	private static final int REFINE_ROUNDS = 6;				//Number of times the refinement steps are halved
+	private static final int REFINE_MOVES = 8;				//Greatest number of moves made at each refinement step size
+
+	private final int linearWindow;
+	private final double angularWindow;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Constructor for creating a matcher which runs on its own fork-join pool, with one thread per processor
+	 * @param linearWindow furthest the sensor may be from the initial guess along each axis, in points
+	 * @param angularWindow furthest the heading of the sensor may be from the initial guess, in radians
+	 */
+	public ScanMatcher(int linearWindow, double angularWindow){
+		this(linearWindow, angularWindow, new ForkJoinPool());
+	}
+
+	/**
+	 * Constructor for creating a matcher which runs on an existing fork-join pool
+	 * @param linearWindow furthest the sensor may be from the initial guess along each axis, in points
+	 * @param angularWindow furthest the heading of the sensor may be from the initial guess, in radians
+	 * @param pool Pool to search headings on
+	 */
+	public ScanMatcher(int linearWindow, double angularWindow, ForkJoinPool pool){
+		this.linearWindow = linearWindow;
+		this.angularWindow = angularWindow;
+		this.pool = pool;
+	}
+
+	/**
+	 * Finds the pose of the sensor which best lines a scan up with the field. Beams with a range that is not positive (or not a number),
+	 * or at or beyond the maximum range, did not hit anything and are left out
+	 * @param field LikelihoodField to match against
+	 * @param x initial guess at the X coordinate of the sensor in the field
+	 * @param y initial guess at the Y coordinate of the sensor in the field
+	 * @param heading initial guess at the heading of the sensor, in radians counter clockwise from the X axis of the field
+	 * @param angles angle of each beam relative to the sensor heading, in radians counter clockwise
+	 * @param ranges range of each beam, in points
+	 * @param maxRange range at or beyond which a beam did not hit anything
+	 * @return The best pose found, or null if no beam hit anything
+	 */
+	public ScanMatch match(LikelihoodField field, double x, double y, double heading, double[] angles, double[] ranges, double maxRange){
+		double[] hitX = new double[ranges.length];
+		double[] hitY = new double[ranges.length];
+		int hits = 0;
+		double furthest = 0;
+		for(int beam=0; beam<ranges.length; beam++){
+			if(!(ranges[beam]>0) || ranges[beam]>=maxRange) continue;
+			hitX[hits] = ranges[beam]*Math.cos(angles[beam]);
+			hitY[hits] = ranges[beam]*Math.sin(angles[beam]);
+			furthest = Math.max(furthest, ranges[beam]);
+			hits++;
+		}
+		if(hits == 0) return null;
+
+		//Step the heading so that the furthest end point moves about a point per step
+		double step = furthest > 1 ? Math.acos(1-1/(2*furthest*furthest)) : this.angularWindow;
+		int steps = step > 0 ? (int)Math.ceil(this.angularWindow/step) : 0;
+		HeadingSearch search = new HeadingSearch(field, x, y, heading, step, steps, hitX, hitY, hits, this.linearWindow);
+		HeadingTask task = new HeadingTask(search, 0, 2*steps+1);
+		if(hits*(2*steps+1) < 1024) task.compute();
+		else this.pool.invoke(task);
+
+		int best = 0;
+		for(int n=1; n<search.scores.length; n++){
+			if(search.scores[n] > search.scores[best]) best = n;
+		}
+		return refine(field, x+search.offsetX[best], y+search.offsetY[best], heading+(best-steps)*step, step, hitX, hitY, hits);
+	}
+
+	/**
+	 * Climbs the interpolated field from a pose on the search grid, trying a step each way along each axis and around the heading, and
+	 * halving the steps each time none of them improve the score
+	 */
+	private ScanMatch refine(LikelihoodField field, double x, double y, double heading, double headingStep, double[] hitX, double[] hitY, int hits){
+		double best = score(field, x, y, heading, hitX, hitY, hits);
+		double linearStep = 0.5;
+		double angularStep = headingStep/2;
+		double candidate;
+		boolean moved;
+		for(int round=0; round<REFINE_ROUNDS; round++){
+			for(int move=0; move<REFINE_MOVES; move++){
+				moved = false;
+				for(int direction=0; direction<6; direction++){
+					double sign = (direction&1) == 0 ? 1 : -1;
+					double dx = direction < 2 ? sign*linearStep : 0;
+					double dy = direction == 2 || direction == 3 ? sign*linearStep : 0;
+					double dHeading = direction >= 4 ? sign*angularStep : 0;
+					candidate = score(field, x+dx, y+dy, heading+dHeading, hitX, hitY, hits);
+					if(candidate > best){
+						best = candidate;
+						x += dx;
+						y += dy;
+						heading += dHeading;
+						moved = true;
+					}
+				}
+				if(!moved) break;
+			}
+			linearStep /= 2;
+			angularStep /= 2;
+		}
+		return new ScanMatch(x, y, heading, best);
+	}
+
+	/**
+	 * @return The mean interpolated likelihood of the scan's end points with the sensor at a pose
+	 */
+	private static double score(LikelihoodField field, double x, double y, double heading, double[] hitX, double[] hitY, int hits){
+		double cos = Math.cos(heading);
+		double sin = Math.sin(heading);
+		double sum = 0;
+		for(int n=0; n<hits; n++){
+			sum += field.getLikelihood(x+cos*hitX[n]-sin*hitY[n], y+sin*hitX[n]+cos*hitY[n]);
+		}
+		return sum/hits;
+	}
+
+	/**
+	 * The state of one match shared by the heading tasks: the scan, the best score found by any heading, and the best translation and
+	 * score found for each heading
+	 */
+	private static class HeadingSearch{
+		final LikelihoodField field;
+		final double x;
+		final double y;
+		final double heading;
+		final double step;
+		final int steps;
+		final double[] hitX;
+		final double[] hitY;
+		final int hits;
+		final int window;
+		final AtomicInteger bestBits;				//Best score found by any heading so far, as float bits
+		final float[] scores;
+		final int[] offsetX;
+		final int[] offsetY;
+
+		HeadingSearch(LikelihoodField field, double x, double y, double heading, double step, int steps, double[] hitX, double[] hitY, int hits, int window){
+			this.field = field;
+			this.x = x;
+			this.y = y;
+			this.heading = heading;
+			this.step = step;
+			this.steps = steps;
+			this.hitX = hitX;
+			this.hitY = hitY;
+			this.hits = hits;
+			this.window = window;
+			this.bestBits = new AtomicInteger(Float.floatToIntBits(-1));
+			this.scores = new float[2*steps+1];
+			this.offsetX = new int[2*steps+1];
+			this.offsetY = new int[2*steps+1];
+		}
+
+		float getBest(){
+			return Float.intBitsToFloat(this.bestBits.get());
+		}
+
+		void offerBest(float score){
+			int bits;
+			do{
+				bits = this.bestBits.get();
+				if(Float.intBitsToFloat(bits) >= score) return;
+			}while(!this.bestBits.compareAndSet(bits, Float.floatToIntBits(score)));
+		}
+	}
+
+	/**
+	 * Searches the translations of a range of headings, splitting the range in half until each task holds a single heading
+	 */
+	private static class HeadingTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+
+		private final HeadingSearch search;
+		private final int start;
+		private final int end;
+		private int[] cellX;
+		private int[] cellY;
+		private float bestScore;
+		private int bestX;
+		private int bestY;
+
+		HeadingTask(HeadingSearch search, int start, int end){
+			this.search = search;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if(this.end-this.start > 1){
+				int middle = (this.start+this.end)>>>1;
+				invokeAll(new HeadingTask(this.search, this.start, middle), new HeadingTask(this.search, middle, this.end));
+				return;
+			}
+			HeadingSearch search = this.search;
+			int index = this.start;
+			double heading = search.heading+(index-search.steps)*search.step;
+			double cos = Math.cos(heading);
+			double sin = Math.sin(heading);
+			this.cellX = new int[search.hits];
+			this.cellY = new int[search.hits];
+			for(int n=0; n<search.hits; n++){
+				this.cellX[n] = (int)Math.round(search.x+cos*search.hitX[n]-sin*search.hitY[n]);
+				this.cellY[n] = (int)Math.round(search.y+sin*search.hitX[n]+cos*search.hitY[n]);
+			}
+			this.bestScore = -1;
+			int top = search.field.getLevelCount()-1;
+			int size = 1<<top;
+			for(int ty=-search.window; ty<=search.window; ty+=size){
+				for(int tx=-search.window; tx<=search.window; tx+=size){
+					branch(top, tx, ty, score(top, tx, ty));
+				}
+			}
+			search.scores[index] = this.bestScore;
+			search.offsetX[index] = this.bestX;
+			search.offsetY[index] = this.bestY;
+		}
+
+		/**
+		 * Searches a block of 2^level by 2^level translations starting at (tx,ty), whose upper bound has already been scored
+		 */
+		private void branch(int level, int tx, int ty, float bound){
+			if(bound <= this.search.getBest() || bound <= this.bestScore) return;
+			if(level == 0){
+				this.bestScore = bound;
+				this.bestX = tx;
+				this.bestY = ty;
+				this.search.offerBest(bound);
+				return;
+			}
+			//Score the four quarters of the block, and search the most promising first
+			int half = 1<<(level-1);
+			int[] childX = new int[4];
+			int[] childY = new int[4];
+			float[] childBound = new float[4];
+			int children = 0;
+			for(int child=0; child<4; child++){
+				int cx = tx+((child&1) == 0 ? 0 : half);
+				int cy = ty+((child&2) == 0 ? 0 : half);
+				if(cx > this.search.window || cy > this.search.window) continue;
+				childX[children] = cx;
+				childY[children] = cy;
+				childBound[children] = score(level-1, cx, cy);
+				children++;
+			}
+			int best;
+			for(int n=0; n<children; n++){
+				best = n;
+				for(int m=n+1; m<children; m++){
+					if(childBound[m] > childBound[best]) best = m;
+				}
+				branch(level-1, childX[best], childY[best], childBound[best]);
+				childBound[best] = childBound[n];
+				childX[best] = childX[n];
+				childY[best] = childY[n];
+			}
+		}
+
+		/**
+		 * @return The mean value of the scan's end points on a level of the field, with the scan shifted by (tx,ty). Above level 0, a
+		 * block which starts just off the top or left edge of the map still covers points of the map, so it takes the value of the block
+		 * at the edge, which covers all of those points, keeping the score a bound on every finer level
+		 */
+		private float score(int level, int tx, int ty){
+			float[] values = this.search.field.getLevel(level);
+			int width = this.search.field.getWidth();
+			int height = this.search.field.getHeight();
+			int edge = level>0 ? -(1<<level) : 0;
+			float sum = 0;
+			int x;
+			int y;
+			for(int n=0; n<this.cellX.length; n++){
+				x = this.cellX[n]+tx;
+				y = this.cellY[n]+ty;
+				if(x<0 && x>edge) x = 0;
+				if(y<0 && y>edge) y = 0;
+				if(x>=0 && x<width && y>=0 && y<height) sum += values[y*width+x];
+			}
+			return sum/this.cellX.length;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package jenova.localization;
+
+import jenova.mappingsystem.CartCoord;
+import jenova.mappingsystem.HawkEye;
+import jenova.mappingsystem.ObjectLocationData;
+import jenova.mappingsystem.PreciseCoord;
+
+/**
+ * Converts between the location of a HawkEye's local frame, as passed to HawkEye.updateLocation(), and the pose of a sensor at the
+ * local origin facing along the local X axis, in points of the global map. A local point L lands on the global point R(-theta)L+t, where
+ * theta is the orientation of the local frame and t its true location, so the sensor sits at R(-theta)localOrigin+t facing -theta.
+ * @author Adam Panzica
+ *
+ */
+final class SensorPose {
+	final double x;
+	final double y;
+	final double heading;
+
+	SensorPose(double x, double y, double heading){
+		this.x = x;
+		this.y = y;
+		this.heading = heading;
+	}
+
+	/**
+	 * @param hawkEye HawkEye the location is in
+	 * @param location origin relative location of the local frame in the global frame
+	 * @return The pose of the sensor at the local origin, in points of the global map
+	 */
+	static SensorPose fromLocation(HawkEye hawkEye, ObjectLocationData location){
+		CartCoord globalOrigin = hawkEye.getGlobalOrigin();
+		CartCoord localOrigin = hawkEye.getLocalOrigin();
+		double theta = location.getOrientation();
+		double cos = Math.cos(theta);
+		double sin = Math.sin(theta);
+		return new SensorPose(cos*localOrigin.getX()+sin*localOrigin.getY()+location.getPreciseX()+globalOrigin.getX(),
+				-sin*localOrigin.getX()+cos*localOrigin.getY()+location.getPreciseY()+globalOrigin.getY(), -theta);
+	}
+
+	/**
+	 * @param hawkEye HawkEye the location is in
+	 * @return The origin relative location of the local frame which puts its origin at this pose, kept to the full precision of the pose
+	 */
+	ObjectLocationData toLocation(HawkEye hawkEye){
+		CartCoord globalOrigin = hawkEye.getGlobalOrigin();
+		CartCoord localOrigin = hawkEye.getLocalOrigin();
+		double theta = -this.heading;
+		double cos = Math.cos(theta);
+		double sin = Math.sin(theta);
+		double tx = this.x-(cos*localOrigin.getX()+sin*localOrigin.getY());
+		double ty = this.y-(-sin*localOrigin.getX()+cos*localOrigin.getY());
+		return new ObjectLocationData(new PreciseCoord(tx-globalOrigin.getX(), ty-globalOrigin.getY()), theta);
+	}
+}
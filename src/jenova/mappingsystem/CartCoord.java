@@ -45,6 +45,16 @@ public class CartCoord implements IMapPoint {
 	public int getY() {
 		return this.yVal;
 	}
+
+	@Override
+	public double getPreciseX() {
+		return this.xVal;
+	}
+
+	@Override
+	public double getPreciseY() {
+		return this.yVal;
+	}
 	
 	public String toString(){
 		return "("+this.xVal+","+this.yVal+")";
@@ -0,0 +1,96 @@
+package jenova.mappingsystem;
+/**
+ * IGridKernel which convolves the grid with a separable, normalized kernel, run as a horizontal pass followed by a vertical pass.
+ * Points beyond the edge of the grid take the value of the nearest edge point.
+ * @author Adam Panzica
+ *
+ */
+public class ConvolutionKernel implements IGridKernel {
+	private final float[] weights;
+	private final int radius;
+	
+	/**
+	 * Constructor for creating a convolution kernel from its one dimensional weights. The weights are normalized so that they sum to 1
+	 * @param weights weights of the kernel, from -radius to radius. Must have an odd length
+	 */
+	public ConvolutionKernel(float[] weights){
+		if(weights.length%2 != 1) throw new IllegalArgumentException("Kernel must have an odd number of weights, not "+weights.length);
+		float sum = 0;
+		for(int i=0; i<weights.length; i++) sum += weights[i];
+		this.weights = new float[weights.length];
+		for(int i=0; i<weights.length; i++) this.weights[i] = weights[i]/sum;
+		this.radius = weights.length/2;
+	}
+	
+	/**
+	 * Creates a box (mean) kernel
+	 * @param radius number of points on either side of the center which are averaged with it
+	 * @return the new kernel
+	 */
+	public static ConvolutionKernel box(int radius){
+		float[] weights = new float[2*radius+1];
+		for(int i=0; i<weights.length; i++) weights[i] = 1;
+		return new ConvolutionKernel(weights);
+	}
+	
+	/**
+	 * Creates a Gaussian kernel, truncated at three standard deviations
+	 * @param sigma standard deviation of the kernel, in points
+	 * @return the new kernel
+	 */
+	public static ConvolutionKernel gaussian(double sigma){
+		int radius = Math.max(1, (int)Math.ceil(3*sigma));
+		float[] weights = new float[2*radius+1];
+		for(int i=-radius; i<=radius; i++) weights[i+radius] = (float)Math.exp(-(i*i)/(2*sigma*sigma));
+		return new ConvolutionKernel(weights);
+	}
+	
+	/**
+	 * @return number of points on either side of the center the kernel reaches
+	 */
+	public int getRadius(){
+		return this.radius;
+	}
+	
+	@Override
+	public int getPasses() {
+		return 2;
+	}
+	
+	@Override
+	public void apply(int pass, float[] source, float[] dest, int width, int height, int startY, int endY) {
+		float sum;
+		int row;
+		int sample;
+		if(pass == 0){
+			for(int y=startY; y<endY; y++){
+				row = y*width;
+				for(int x=0; x<width; x++){
+					sum = 0;
+					for(int k=-this.radius; k<=this.radius; k++){
+						sample = x+k;
+						if(sample < 0) sample = 0;
+						else if(sample >= width) sample = width-1;
+						sum += this.weights[k+this.radius]*source[row+sample];
+					}
+					dest[row+x] = sum;
+				}
+			}
+		}
+		else{
+			//Accumulate whole rows at a time, so the inner loop runs straight along memory
+			for(int y=startY; y<endY; y++){
+				row = y*width;
+				for(int x=0; x<width; x++) dest[row+x] = 0;
+				for(int k=-this.radius; k<=this.radius; k++){
+					sample = y+k;
+					if(sample < 0) sample = 0;
+					else if(sample >= height) sample = height-1;
+					sample *= width;
+					float weight = this.weights[k+this.radius];
+					for(int x=0; x<width; x++) dest[row+x] += weight*source[sample+x];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package jenova.mappingsystem;
+
+import java.util.BitSet;
+
+/**
+ * Set of the cells of a frame store which have been modified. Keeps both a bit per cell, so that marking a cell twice costs nothing,
+ * and a list of the marked cells, so that walking or clearing the set costs time proportional to the number of dirty cells rather
+ * than the size of the store. Cells are identified by their index in the store (y*width+x).
+ * @author Adam Panzica
+ *
+ */
+final class DirtyCellSet {
+	private final BitSet marked;
+	private int[] cells;
+	private int count;
+
+	/**
+	 * @param size Number of cells in the store being tracked
+	 */
+	DirtyCellSet(int size){
+		this.marked = new BitSet(size);
+		this.cells = new int[64];
+		this.count = 0;
+	}
+
+	/**
+	 * Marks a cell as dirty
+	 * @param index index of the cell
+	 */
+	void mark(int index){
+		if(this.marked.get(index)) return;
+		this.marked.set(index);
+		if(this.count == this.cells.length){
+			int[] grown = new int[this.cells.length*2];
+			System.arraycopy(this.cells, 0, grown, 0, this.count);
+			this.cells = grown;
+		}
+		this.cells[this.count++] = index;
+	}
+
+	/**
+	 * @param index index of the cell
+	 * @return True if the cell is marked as dirty
+	 */
+	boolean isDirty(int index){
+		return this.marked.get(index);
+	}
+
+	/**
+	 * @return The number of dirty cells
+	 */
+	int size(){
+		return this.count;
+	}
+
+	/**
+	 * @param n position in the set, from 0 to size()-1
+	 * @return The index of the nth dirty cell, in the order the cells were marked
+	 */
+	int get(int n){
+		return this.cells[n];
+	}
+
+	/**
+	 * Removes the nth dirty cell from the set, moving the last dirty cell into its position. Walking the set from size()-1 down to 0
+	 * allows cells to be removed as they are visited.
+	 * @param n position in the set of the cell to remove
+	 */
+	void remove(int n){
+		this.marked.clear(this.cells[n]);
+		this.cells[n] = this.cells[--this.count];
+	}
+
+	/**
+	 * Clears all of the dirty cells
+	 */
+	void clear(){
+		for(int n=0; n<this.count; n++){
+			this.marked.clear(this.cells[n]);
+		}
+		this.count = 0;
+	}
+}
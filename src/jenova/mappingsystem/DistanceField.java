@@ -0,0 +1,293 @@
+package jenova.mappingsystem;
+
+import java.util.Arrays;
+
+/**
+ * Class for keeping the Euclidean distance from every point of a frame to its nearest obstacle. The field listens to the frame, and
+ * changes to obstacles are queued as they happen; update() then repairs only the region of the field they affect, using a dynamic
+ * brushfire: new obstacles lower distances outwards from themselves, and removed obstacles raise the distances of the points which
+ * pointed at them before those points are lowered again from the surviving obstacles around them. Distances are only propagated out to
+ * the field's maximum distance, so the cost of an update depends on the number of changes and that distance, not the size of the frame.
+ * Once updated, the distance of any point is read in constant time.
+ * The field holds two ints and a byte per point of the frame.
+ * @author Adam Panzica
+ *
+ */
+public class DistanceField implements IFrameListener {
+	private static final int NONE = -1;
+	private static final int[] NEIGHBOUR_X = {-1, 0, 1, -1, 1, -1, 0, 1};
+	private static final int[] NEIGHBOUR_Y = {-1, -1, -1, 0, 0, 1, 1, 1};
+
+	private final Frame frame;
+	private final short obstacleState;
+	private final int width;
+	private final int height;
+	private final int maxSquaredDistance;
+	private final double maxDistance;
+	private final int[] nearest;					//Index of the nearest obstacle to each point, NONE if there is none within range
+	private final int[] squaredDistance;			//Squared distance from each point to its nearest obstacle
+	private final byte[] flags;
+	private final CellQueue open;
+
+	private static final byte OBSTACLE = 1;			//The point is an obstacle
+	private static final byte RAISE = 2;			//The point's nearest obstacle has been removed, and its distance must be raised
+
+	/**
+	 * Constructor for creating a distance field over a frame. The field is built from the points of the frame, and registers itself as a
+	 * listener on the frame to follow later changes
+	 * @param frame Frame to keep distances for. The frame must not change size
+	 * @param obstacle MapObject whose state marks a point as an obstacle
+	 * @param maxDistance distance beyond which distances are not tracked, in points. Points further than this from every obstacle
+	 * report maxDistance
+	 */
+	public DistanceField(Frame frame, MapObject obstacle, double maxDistance){
+		this.frame = frame;
+		this.obstacleState = obstacle.getStateId();
+		this.width = frame.getWidth();
+		this.height = frame.getHeight();
+		this.maxSquaredDistance = (int)Math.min(Math.floor(maxDistance*maxDistance), Integer.MAX_VALUE);
+		this.maxDistance = maxDistance;
+		this.nearest = new int[this.width*this.height];
+		this.squaredDistance = new int[this.width*this.height];
+		this.flags = new byte[this.width*this.height];
+		this.open = new CellQueue();
+		Arrays.fill(this.nearest, NONE);
+		Arrays.fill(this.squaredDistance, Integer.MAX_VALUE);
+
+		short[] states = new short[this.width];
+		float[] logOdds = new float[this.width];
+		for(int y=0; y<this.height; y++){
+			frame.readRow(y, states, logOdds);
+			for(int x=0; x<this.width; x++){
+				if(states[x] == this.obstacleState) setObstacle(y*this.width+x);
+			}
+		}
+		update();
+		frame.addListener(this);
+	}
+
+	/**
+	 * Stops the field following changes to its frame
+	 */
+	public void detach(){
+		this.frame.removeListener(this);
+	}
+
+	@Override
+	public void pointChanged(Frame frame, int x, int y) {
+		if(x<0 || x>=this.width || y<0 || y>=this.height) return;
+		int index = y*this.width+x;
+		boolean isObstacle = frame.getState(x, y) == this.obstacleState;
+		boolean wasObstacle = (this.flags[index]&OBSTACLE) != 0;
+		if(isObstacle && !wasObstacle) setObstacle(index);
+		else if(!isObstacle && wasObstacle) removeObstacle(index);
+	}
+
+	/**
+	 * @return True if there are changes which have not been applied to the field by update()
+	 */
+	public boolean isPending(){
+		return !this.open.isEmpty();
+	}
+
+	/**
+	 * Applies every change made to the obstacles since the last update to the field
+	 */
+	public void update(){
+		int index;
+		while(!this.open.isEmpty()){
+			index = this.open.pop();
+			if((this.flags[index]&RAISE) != 0) raise(index);
+			else if(this.nearest[index] != NONE && (this.flags[this.nearest[index]]&OBSTACLE) != 0) lower(index);
+		}
+	}
+
+	/**
+	 * Gets the distance from a point to its nearest obstacle, as of the last update(). NOTE: There is no bounds checking, calling function
+	 * must ensure that the location is within bounds
+	 * @param x X coordinate of the point
+	 * @param y Y coordinate of the point
+	 * @return The distance in points, or the maximum distance of the field if there is no obstacle that close
+	 */
+	public double getDistance(int x, int y){
+		int distance = this.squaredDistance[y*this.width+x];
+		if(distance > this.maxSquaredDistance) return this.maxDistance;
+		return Math.sqrt(distance);
+	}
+
+	/**
+	 * @return The squared distance from (x,y) to its nearest obstacle as of the last update(), or Integer.MAX_VALUE if there is no obstacle
+	 * within the maximum distance of the field, see getDistance()
+	 */
+	public int getSquaredDistance(int x, int y){
+		int distance = this.squaredDistance[y*this.width+x];
+		if(distance > this.maxSquaredDistance) return Integer.MAX_VALUE;
+		return distance;
+	}
+
+	/**
+	 * @return The X coordinate of the nearest obstacle to (x,y) as of the last update(), or -1 if there is none within the maximum distance
+	 */
+	public int getNearestX(int x, int y){
+		int obstacle = this.nearest[y*this.width+x];
+		return obstacle == NONE ? -1 : obstacle%this.width;
+	}
+
+	/**
+	 * @return The Y coordinate of the nearest obstacle to (x,y) as of the last update(), or -1 if there is none within the maximum distance
+	 */
+	public int getNearestY(int x, int y){
+		int obstacle = this.nearest[y*this.width+x];
+		return obstacle == NONE ? -1 : obstacle/this.width;
+	}
+
+	/**
+	 * @return The maximum distance the field tracks
+	 */
+	public double getMaxDistance(){
+		return this.maxDistance;
+	}
+
+	/**
+	 * @return the width of the field
+	 */
+	public int getWidth(){
+		return this.width;
+	}
+
+	/**
+	 * @return the height of the field
+	 */
+	public int getHeight(){
+		return this.height;
+	}
+
+	/**
+	 * Queues a point becoming an obstacle
+	 */
+	private void setObstacle(int index){
+		this.flags[index] |= OBSTACLE;
+		this.nearest[index] = index;
+		this.squaredDistance[index] = 0;
+		this.open.push(index, 0);
+	}
+
+	/**
+	 * Queues an obstacle being removed
+	 */
+	private void removeObstacle(int index){
+		this.flags[index] &= ~OBSTACLE;
+		clear(index);
+		this.flags[index] |= RAISE;
+		this.open.push(index, 0);
+	}
+
+	private void clear(int index){
+		this.nearest[index] = NONE;
+		this.squaredDistance[index] = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Spreads a removed obstacle outwards, clearing every neighbour which pointed at an obstacle that no longer exists, and queueing every
+	 * neighbour which still has an obstacle so that it can lower the cleared points again
+	 */
+	private void raise(int index){
+		int x = index%this.width;
+		int y = index/this.width;
+		int nx;
+		int ny;
+		int neighbour;
+		for(int n=0; n<8; n++){
+			nx = x+NEIGHBOUR_X[n];
+			ny = y+NEIGHBOUR_Y[n];
+			if(nx<0 || nx>=this.width || ny<0 || ny>=this.height) continue;
+			neighbour = ny*this.width+nx;
+			if(this.nearest[neighbour] == NONE || (this.flags[neighbour]&RAISE) != 0) continue;
+			this.open.push(neighbour, this.squaredDistance[neighbour]);
+			if((this.flags[this.nearest[neighbour]]&OBSTACLE) == 0){
+				clear(neighbour);
+				this.flags[neighbour] |= RAISE;
+			}
+		}
+		this.flags[index] &= ~RAISE;
+	}
+
+	/**
+	 * Spreads the nearest obstacle of a point to every neighbour it is closer to than their own nearest obstacle
+	 */
+	private void lower(int index){
+		int obstacle = this.nearest[index];
+		int obstacleX = obstacle%this.width;
+		int obstacleY = obstacle/this.width;
+		int x = index%this.width;
+		int y = index/this.width;
+		int nx;
+		int ny;
+		int neighbour;
+		int distance;
+		for(int n=0; n<8; n++){
+			nx = x+NEIGHBOUR_X[n];
+			ny = y+NEIGHBOUR_Y[n];
+			if(nx<0 || nx>=this.width || ny<0 || ny>=this.height) continue;
+			neighbour = ny*this.width+nx;
+			if((this.flags[neighbour]&RAISE) != 0) continue;
+			distance = (nx-obstacleX)*(nx-obstacleX)+(ny-obstacleY)*(ny-obstacleY);
+			if(distance < this.squaredDistance[neighbour] && distance <= this.maxSquaredDistance){
+				this.squaredDistance[neighbour] = distance;
+				this.nearest[neighbour] = obstacle;
+				this.open.push(neighbour, distance);
+			}
+		}
+	}
+
+	/**
+	 * Binary min heap of point indices keyed by squared distance. A point may be queued more than once; stale entries are harmless, as
+	 * processing a point twice makes no further changes
+	 */
+	private static class CellQueue{
+		private int[] cells = new int[256];
+		private int[] keys = new int[256];
+		private int size;
+
+		boolean isEmpty(){
+			return this.size == 0;
+		}
+
+		void push(int cell, int key){
+			if(this.size == this.cells.length){
+				this.cells = Arrays.copyOf(this.cells, this.size*2);
+				this.keys = Arrays.copyOf(this.keys, this.size*2);
+			}
+			int child = this.size++;
+			int parent;
+			while(child > 0){
+				parent = (child-1)>>1;
+				if(this.keys[parent] <= key) break;
+				this.cells[child] = this.cells[parent];
+				this.keys[child] = this.keys[parent];
+				child = parent;
+			}
+			this.cells[child] = cell;
+			this.keys[child] = key;
+		}
+
+		int pop(){
+			int top = this.cells[0];
+			this.size--;
+			int cell = this.cells[this.size];
+			int key = this.keys[this.size];
+			int parent = 0;
+			int child;
+			while((child = 2*parent+1) < this.size){
+				if(child+1 < this.size && this.keys[child+1] < this.keys[child]) child++;
+				if(this.keys[child] >= key) break;
+				this.cells[parent] = this.cells[child];
+				this.keys[parent] = this.keys[child];
+				parent = child;
+			}
+			this.cells[parent] = cell;
+			this.keys[parent] = key;
+			return top;
+		}
+	}
+}
@@ -1,23 +1,38 @@
 package jenova.mappingsystem;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 /**
  * Class for representing a frame, which is a grid of MapObjects. Note that the coordinates in the frame must always be positive.
  * To allow for negative coordinates, use the calcOffset function with the offsetPoint set to the desired origin.
  * EX: If a 200x200 frame is desired, but with input values ranging from -100->100 along both axis, all inputs to the frame should
  * use the calcOffset function with the CartCoord(100,100) as the offsetPoint parameter to determine the actual coordinates of that
  * point in the frame.
+ * The data for each point is held in an IFrameStore, see FrameStoreFactory for the stores available.
  * 
  * @author Adam Panzica
  *
  */
 public class Frame{
 	private double theta;
-	private MapObject[][] points;
+	private IFrameStore store;
 	private int height;
 	private int width;
-	private int xTrans;
-	private int yTrans;
+	private double xTrans;
+	private double yTrans;
 	private Frame baseFrame;
+	private int ringX;							//Offset of the frame's origin inside the store, along the X axis
+	private int ringY;							//Offset of the frame's origin inside the store, along the Y axis
+	private DirtyCellSet dirty;					//Store cells modified since the last write back to the base frame, null if not tracked
+	private DirtyCellSet written;				//Dirty cells already copied by a rotated write back, null until first needed
+	private ArrayList<IFrameListener> listeners;	//Listeners told about changed points, null if there are none
+	private short[] currentStates;				//Scratch row holding the states a row held before writeRow(), null until first needed
+	private float[] currentLogOdds;				//Scratch row holding the log-odds a row held before writeRow(), null until first needed
+	private TransformCalculator transform;		//Transform to the base frame, reused by every move of the frame, null until first needed
+	private int[] rowX;							//Scratch row of X coordinates for transforming rows of points, null until first needed
+	private int[] rowY;							//Scratch row of Y coordinates for transforming rows of points, null until first needed
+	private ArcSector sector;					//Scratch arc reused by castCircle(), null until first needed
 	
 	/**
 	 * Constructor to create a generic, uninitialized frame
@@ -25,12 +40,7 @@ public class Frame{
 	 * @param width The width of the frame
 	 */
 	public Frame(int height, int width){
-		this.points = new MapObject[height][width];
-		this.height = height;
-		this.width = width;
-		this.theta = 0;
-		this.xTrans = 0;
-		this.yTrans = 0;
+		this(new ObjectFrameStore(height, width));
 	}
 	
 	/**
@@ -40,17 +50,31 @@ public class Frame{
 	 * @param baseObj Base MapObject to initialize all points in the frame to
 	 */
 	public Frame(int height, int width, MapObject baseObj){
-		this.points = new MapObject[height][width];
-		this.height = height;
-		this.width = width;
+		this(new ObjectFrameStore(height, width, baseObj));
+	}
+	
+	/**
+	 * Constructor to create a frame initialized to some base MapObject, using a specific type of backing store
+	 * @param height height of the frame
+	 * @param width width of the frame
+	 * @param baseObj Base MapObject to initialize all points in the frame to
+	 * @param storeType The type of store to hold the frame's data in
+	 */
+	public Frame(int height, int width, MapObject baseObj, FrameStoreFactory.StoreType storeType){
+		this(FrameStoreFactory.spawnStore(storeType, height, width, baseObj));
+	}
+	
+	/**
+	 * Constructor to create a frame over an existing store
+	 * @param store The store holding the frame's data. The frame takes its height and width from the store
+	 */
+	public Frame(IFrameStore store){
+		this.store = store;
+		this.height = store.getHeight();
+		this.width = store.getWidth();
 		this.theta = 0;
 		this.xTrans = 0;
 		this.yTrans = 0;
-		for(int y=0;y<height;y++){
-			for(int x=0;x<width;x++){
-				points[y][x] = new MapObject(baseObj);
-			}
-		}
 	}
 	
 	/**
@@ -63,45 +87,230 @@ public class Frame{
 	 */
 	public Frame(int height, int width, Frame baseFrame, double theta, IMapPoint translation){
 		TransformCalculator transform = new TransformCalculator(theta, translation);
-		CartCoord tempXY;
+		int[] baseX = new int[width];
+		int[] baseY = new int[width];
 		
 		this.height = height;
 		this.width = width;
-		this.points = new MapObject[height][width];
+		this.store = baseFrame.getStore().spawn(height, width);
 		this.theta = theta;
-		this.xTrans = translation.getX();
-		this.yTrans = translation.getY();
+		this.xTrans = translation.getPreciseX();
+		this.yTrans = translation.getPreciseY();
 		this.baseFrame = baseFrame;
+		this.dirty = new DirtyCellSet(height*width);
 		
 		for(int y=0;y<height;y++){
+			transform.transformRowLocalToBase(y, 0, width, baseX, baseY);
 			for(int x=0;x<width;x++){
-				//System.out.println("Local ("+x+","+y+")");
-				tempXY = transform.transformLocalToBase(new CartCoord(x,y));
-				//System.out.println("Base "+tempXY);
-				//System.out.println(nextPoint);
-				if(baseFrame.checkBounds(tempXY)){
-					setPoint(new CartCoord(x,y),baseFrame.getPoints()[tempXY.getY()][tempXY.getX()]);
+				if(baseFrame.checkBounds(baseX[x], baseY[x])){
+					this.store.copyCell(x, y, baseFrame.getStore(), baseX[x], baseY[x]);
 				}
 			}
 		}
 	}
 	
 	/**
-	 * Copies the contents of the frame into a base frame
-	 * @param baseFrame Frame to copy into. Note, this frame MUST be the frame from which theta, xTrans and yTrans are measured from
+	 * Constructor to create a frame based on a rotation and translation from some base frame, over a store which has already been filled
+	 * from the base frame, see FrameResampler
+	 * @param store The store holding the frame's data. The frame takes its height and width from the store
+	 * @param baseFrame base frame the store was filled from
+	 * @param theta rotation from the base frame, positive clockwise from the Y axis of the base frame
+	 * @param translation CartCoord containing the X and Y translation from baseFrame of the frame
+	 */
+	Frame(IFrameStore store, Frame baseFrame, double theta, IMapPoint translation){
+		this(store);
+		this.theta = theta;
+		this.xTrans = translation.getPreciseX();
+		this.yTrans = translation.getPreciseY();
+		this.baseFrame = baseFrame;
+		this.dirty = new DirtyCellSet(this.height*this.width);
+	}
+	
+	/**
+	 * Copies the contents of the frame into its base frame. Only the points which have changed since the frame was built (or last
+	 * copied into its base frame) are copied, every other point already matches the base frame.
 	 */
 	public void copyToBaseFrame(){
-		TransformCalculator transform = new TransformCalculator(this.theta, new CartCoord(this.xTrans,this.yTrans));
-		CartCoord tempXY;
+		writeBackDirty(false);
+	}
+	
+	/**
+	 * Moves the frame to a new translation from its base frame without rebuilding it. The frame is treated as a ring buffer over its store:
+	 * dirty points are written back into the base frame, the origin of the frame inside the store is shifted, and only the rows and columns
+	 * exposed by the move are read in from the base frame. This is only possible for a pure translation of a frame whose axes line up with
+	 * those of the base frame (theta a multiple of 90 degrees) by a whole number of points; any other move must be made by resampling into
+	 * a new Frame.
+	 * @param theta rotation of the new location from the base frame, positive clockwise from the Y axis of the base frame
+	 * @param translation translation of the new location from the base frame
+	 * @return True if the frame was moved, false if the move requires a full resample, in which case the frame is left untouched
+	 */
+	public boolean slideTo(double theta, IMapPoint translation){
+		if(this.baseFrame == null || theta != this.theta || Math.abs(Math.sin(theta)*Math.cos(theta)) > 1e-9) return false;
 		
-		for(int y=0;y<height;y++){
-			for(int x=0;x<width;x++){
-				tempXY = transform.transformLocalToBase(new CartCoord(x,y));
-				if(this.baseFrame.checkBounds(tempXY)){
-					this.baseFrame.setPoint(tempXY,points[y][x]);
+		double moveX = translation.getPreciseX()-this.xTrans;
+		double moveY = translation.getPreciseY()-this.yTrans;
+		if(Math.abs(moveX-Math.rint(moveX)) > 1e-9 || Math.abs(moveY-Math.rint(moveY)) > 1e-9) return false;
+		
+		//Rotate the move into the frame, see TransformCalculator.rotateBaseToLocal()
+		moveX = Math.rint(moveX);
+		moveY = Math.rint(moveY);
+		int dx = (int)Math.round(Math.cos(theta)*moveX-Math.sin(theta)*moveY);
+		int dy = (int)Math.round(Math.sin(theta)*moveX+Math.cos(theta)*moveY);
+		
+		writeBackDirty(true);
+		this.xTrans = translation.getPreciseX();
+		this.yTrans = translation.getPreciseY();
+		
+		if(Math.abs(dx)>=this.width || Math.abs(dy)>=this.height){
+			//Nothing in the frame survives the move, so refill the whole thing
+			this.ringX = 0;
+			this.ringY = 0;
+			fetchFromBase(0, 0, this.width, this.height);
+			return true;
+		}
+		this.ringX = ((this.ringX+dx)%this.width+this.width)%this.width;
+		this.ringY = ((this.ringY+dy)%this.height+this.height)%this.height;
+		
+		//Exposed columns over the full height, then exposed rows over the remaining columns so that no point is fetched twice
+		int rowStartX = 0;
+		int rowEndX = this.width;
+		if(dx>0){
+			fetchFromBase(this.width-dx, 0, this.width, this.height);
+			rowEndX = this.width-dx;
+		}
+		else if(dx<0){
+			fetchFromBase(0, 0, -dx, this.height);
+			rowStartX = -dx;
+		}
+		if(dy>0) fetchFromBase(rowStartX, this.height-dy, rowEndX, this.height);
+		else if(dy<0) fetchFromBase(rowStartX, 0, rowEndX, -dy);
+		return true;
+	}
+	
+	/**
+	 * Copies the dirty points of the frame into the base frame and marks them clean. Dirty points which fall outside of the base frame have
+	 * nowhere to be saved; they are either left dirty, or cleared just as they would be by rebuilding the frame.
+	 * A frame whose axes line up with the base frame maps each of its points onto exactly one base point, so the dirty points are simply
+	 * copied across. A rotated frame does not: mapping its points forward would leave some base points unwritten and write others twice,
+	 * so instead every base point under the frame is mapped back into the frame, and takes the value of the point it lands on if that point
+	 * is dirty. Some points of a rotated frame are not landed on by any base point; those that are dirty are then copied forward onto the
+	 * base point they map to, so that every dirty point inside the base frame is written before it is marked clean.
+	 * @param discardOutside True to clear dirty points which fall outside of the base frame, false to leave them dirty
+	 */
+	private void writeBackDirty(boolean discardOutside){
+		if(this.dirty.size() == 0) return;
+		TransformCalculator transform = baseTransform();
+		boolean axisAligned = transform.isAxisAligned();
+		IFrameStore baseStore = this.baseFrame.getStore();
+		int index;
+		int sx;
+		int sy;
+		int bx;
+		int by;
+		
+		if(!axisAligned) writeBackRotated(transform);
+		for(int n=this.dirty.size()-1; n>=0; n--){
+			index = this.dirty.get(n);
+			sx = index%this.width;
+			sy = index/this.width;
+			bx = transform.transformLocalToBaseX(frameX(sx), frameY(sy));
+			by = transform.transformLocalToBaseY(frameX(sx), frameY(sy));
+			if(this.baseFrame.checkBounds(bx, by)){
+				if(axisAligned || !this.written.isDirty(index)){
+					baseStore.copyCell(bx, by, this.store, sx, sy);
+					this.baseFrame.firePointChanged(bx, by);
 				}
 			}
+			else if(discardOutside){
+				this.store.clearCell(sx, sy);
+				firePointChanged(frameX(sx), frameY(sy));
+			}
+			else continue;
+			this.dirty.remove(n);
 		}
+		if(!axisAligned) this.written.clear();
+	}
+	
+	/**
+	 * Copies the dirty points of a rotated frame into the base frame by walking the base points under the frame, see writeBackDirty().
+	 * Each dirty point which is copied is marked in written
+	 * @param transform transform from the frame to the base frame
+	 */
+	private void writeBackRotated(TransformCalculator transform){
+		if(this.written == null) this.written = new DirtyCellSet(this.height*this.width);
+		IFrameStore baseStore = this.baseFrame.getStore();
+		int[] bounds = ensureRowScratch(4);			//The bounds are read out before the scratch rows are reused for the walk
+		transform.boundsLocalToBase(this.width, this.height, bounds);
+		int startX = Math.max(bounds[0], 0);
+		int endX = Math.min(bounds[2]+1, this.baseFrame.getWidth());
+		int startY = Math.max(bounds[1], 0);
+		int endY = Math.min(bounds[3]+1, this.baseFrame.getHeight());
+		if(startX >= endX) return;
+		int[] localX = ensureRowScratch(endX-startX);
+		int[] localY = this.rowY;
+		int sx;
+		int sy;
+		
+		for(int by=startY; by<endY; by++){
+			transform.transformRowBaseToLocal(by, startX, endX-startX, localX, localY);
+			for(int i=0; i<endX-startX; i++){
+				if(!checkBounds(localX[i], localY[i])) continue;
+				sx = storeX(localX[i]);
+				sy = storeY(localY[i]);
+				if(this.dirty.isDirty(sy*this.width+sx)){
+					baseStore.copyCell(startX+i, by, this.store, sx, sy);
+					this.baseFrame.firePointChanged(startX+i, by);
+					this.written.mark(sy*this.width+sx);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads a rectangular region of the frame in from the base frame, using the current translation. Points which fall outside of
+	 * the base frame are cleared.
+	 * @param startX first X coordinate of the region
+	 * @param startY first Y coordinate of the region
+	 * @param endX X coordinate one past the end of the region
+	 * @param endY Y coordinate one past the end of the region
+	 */
+	private void fetchFromBase(int startX, int startY, int endX, int endY){
+		TransformCalculator transform = baseTransform();
+		int[] baseX = ensureRowScratch(endX-startX);
+		int[] baseY = this.rowY;
+		
+		for(int y=startY;y<endY;y++){
+			transform.transformRowLocalToBase(y, startX, endX-startX, baseX, baseY);
+			for(int x=startX;x<endX;x++){
+				if(this.baseFrame.checkBounds(baseX[x-startX], baseY[x-startX])){
+					this.store.copyCell(storeX(x), storeY(y), this.baseFrame.getStore(), baseX[x-startX], baseY[x-startX]);
+				}
+				else this.store.clearCell(storeX(x), storeY(y));
+				firePointChanged(x, y);
+			}
+		}
+	}
+	
+	/**
+	 * @return The transform from the frame to its base frame at the frame's current rotation and translation
+	 */
+	private TransformCalculator baseTransform(){
+		if(this.transform == null) this.transform = new TransformCalculator(this.theta, new PreciseCoord(this.xTrans, this.yTrans));
+		else this.transform.set(this.theta, this.xTrans, this.yTrans);
+		return this.transform;
+	}
+	
+	/**
+	 * Makes sure the scratch rows can hold a number of points, growing them only when they are too short
+	 * @param length number of points the rows must hold
+	 * @return The scratch row of X coordinates, the matching row of Y coordinates is rowY
+	 */
+	private int[] ensureRowScratch(int length){
+		if(this.rowX == null || this.rowX.length < length){
+			this.rowX = new int[Math.max(length, this.width)];
+			this.rowY = new int[this.rowX.length];
+		}
+		return this.rowX;
 	}
 	
 	/**
@@ -116,7 +325,20 @@ public class Frame{
 	}
 	
 	/**
-	 * Casts a line between two points in the frame.
+	 * Casts a point onto the frame at (x,y), see castPoint(IMapPoint, MapObject)
+	 * @param x X coordinate of the point
+	 * @param y Y coordinate of the point
+	 * @param object MapObject to copy to that point
+	 */
+	public void castPoint(int x, int y, MapObject object){
+		if(checkBounds(x, y)){
+			setPoint(x, y, object);
+		}
+	}
+	
+	/**
+	 * Casts a line between two points in the frame. The line is rasterized with integer (Bresenham) steps, and each point along it is
+	 * written exactly once.
 	 * @param startPoint The coordinates of the starting point of the line
 	 * @param startPointObject The MapObject to place at the start of the line
 	 * @param endPoint The coordinates of the ending point of the line
@@ -124,56 +346,245 @@ public class Frame{
 	 * @param lineObject A MapObject to fill all of the points between the start and end point with
 	 */
 	public void castLine(IMapPoint startPoint, MapObject startPointObject, IMapPoint endPoint, MapObject endPointObject, MapObject lineObject){
-		PolarCoord vector = new PolarCoord(new CartCoord(endPoint.getX()-startPoint.getX(),endPoint.getY()-startPoint.getY()));
-		double tempX;
-		double tempY;
-		double step;
+		castLine(startPoint.getX(), startPoint.getY(), startPointObject, endPoint.getX(), endPoint.getY(), endPointObject, lineObject);
+	}
+	
+	/**
+	 * Casts a line between (x,y) and (endX,endY), see castLine(IMapPoint, MapObject, IMapPoint, MapObject, MapObject)
+	 * @param x X coordinate of the starting point of the line
+	 * @param y Y coordinate of the starting point of the line
+	 * @param startPointObject The MapObject to place at the start of the line
+	 * @param endX X coordinate of the ending point of the line
+	 * @param endY Y coordinate of the ending point of the line
+	 * @param endPointObject The MapObject to place at the end of the line
+	 * @param lineObject A MapObject to fill all of the points between the start and end point with
+	 */
+	public void castLine(int x, int y, MapObject startPointObject, int endX, int endY, MapObject endPointObject, MapObject lineObject){
+		traceLine(x, y, endX, endY, startPointObject, lineObject, null);
+		if(checkBounds(endX,endY)) setPoint(endX, endY, endPointObject);
+	}
+	
+	/**
+	 * Walks the points of a line from (x,y) up to, but not including, (endX,endY) with integer (Bresenham) steps, visiting each point once.
+	 * Each point inside the frame is either written with a MapObject, or has a miss applied to it by an OccupancyModel.
+	 * @param startPointObject The MapObject to place at the first point of the line
+	 * @param lineObject The MapObject to place at every other point of the line
+	 * @param model OccupancyModel to apply a miss to every point with instead of writing MapObjects, or null to write the MapObjects
+	 */
+	private void traceLine(int x, int y, int endX, int endY, MapObject startPointObject, MapObject lineObject, OccupancyModel model){
+		int deltaX = Math.abs(endX-x);
+		int deltaY = -Math.abs(endY-y);
+		int stepX = x<endX ? 1 : -1;
+		int stepY = y<endY ? 1 : -1;
+		int error = deltaX+deltaY;
+		int error2;
+		MapObject object = startPointObject;
 		
-		for(int n=0; n<=vector.getRange();n++){
-			step = n/(vector.getRange());
-			tempX = Math.round(vector.getRange()*step*Math.cos(vector.getTheta()))+(double)startPoint.getX();
-			tempY = Math.round(vector.getRange()*step*Math.sin(vector.getTheta()))+(double)startPoint.getY();
-			if(checkBounds((int)tempX,(int)tempY)){
-				setPoint(new CartCoord((int)tempX,(int)tempY),lineObject);
+		while(x!=endX || y!=endY){
+			if(checkBounds(x,y)){
+				if(model!=null) updateOccupancy(x, y, model.getMissLogOdds(), model);
+				else setPoint(x, y, object);
+			}
+			object = lineObject;
+			error2 = 2*error;
+			if(error2>=deltaY){
+				error += deltaY;
+				x += stepX;
+			}
+			if(error2<=deltaX){
+				error += deltaX;
+				y += stepY;
 			}
-			if(checkBounds(startPoint.getX(),startPoint.getY()))  setPoint(startPoint,startPointObject);
-			if(checkBounds(endPoint.getX(),endPoint.getY()))  setPoint(endPoint,endPointObject);
 		}
+	}
+	
+	/**
+	 * Casts a range scan into the frame. Every point along each beam is marked with freeObject, then the end point of each beam which
+	 * hit something is marked with hitObject. Hits are written after all of the free space so that a beam passing through the end point
+	 * of a neighbouring beam cannot erase it. The sensor orientation is applied to the table's beam angles with the angle sum identities,
+	 * so no trigonometry is done per beam, and nothing is allocated.
+	 * @param originX X coordinate of the sensor in the frame
+	 * @param originY Y coordinate of the sensor in the frame
+	 * @param orientation orientation of the sensor in radians, counter clockwise from the X axis of the frame
+	 * @param table ScanTable holding the beam angles of the scan
+	 * @param ranges range of each beam, in points. Beams with a range that is not positive (or not a number) are skipped
+	 * @param maxRange beams at or beyond this range hit nothing, and mark free space out to maxRange
+	 * @param freeObject MapObject to place along each beam
+	 * @param hitObject MapObject to place at the end of each beam that hit something
+	 */
+	public void castScan(int originX, int originY, double orientation, ScanTable table, double[] ranges, double maxRange, MapObject freeObject, MapObject hitObject){
+		castScan(originX, originY, orientation, table, ranges, maxRange, freeObject, hitObject, null);
+	}
+	
+	/**
+	 * Casts a range scan into the frame as occupancy evidence. Every point along each beam has a miss applied to its log-odds, then the end
+	 * point of each beam which hit something has a hit applied, with both clamped by the model. The log-odds are updated in place in the
+	 * frame's store, and the state of each point follows the model's thresholds. See castScan(int, int, double, ScanTable, double[], double, MapObject, MapObject)
+	 * @param originX X coordinate of the sensor in the frame
+	 * @param originY Y coordinate of the sensor in the frame
+	 * @param orientation orientation of the sensor in radians, counter clockwise from the X axis of the frame
+	 * @param table ScanTable holding the beam angles of the scan
+	 * @param ranges range of each beam, in points. Beams with a range that is not positive (or not a number) are skipped
+	 * @param maxRange beams at or beyond this range hit nothing, and count as misses out to maxRange
+	 * @param model OccupancyModel defining the hit and miss updates
+	 */
+	public void castScan(int originX, int originY, double orientation, ScanTable table, double[] ranges, double maxRange, OccupancyModel model){
+		castScan(originX, originY, orientation, table, ranges, maxRange, null, null, model);
+	}
+	
+	/**
+	 * Casts a range scan from a sensor which sits between the points of the frame. The end point of each beam is found from the exact
+	 * origin, and rounded to a point only once, so the error of a scan does not grow with its range. See
+	 * castScan(int, int, double, ScanTable, double[], double, MapObject, MapObject)
+	 * @param originX exact X coordinate of the sensor in the frame
+	 * @param originY exact Y coordinate of the sensor in the frame
+	 * @param orientation orientation of the sensor in radians, counter clockwise from the X axis of the frame
+	 * @param table ScanTable holding the beam angles of the scan
+	 * @param ranges range of each beam, in points. Beams with a range that is not positive (or not a number) are skipped
+	 * @param maxRange beams at or beyond this range hit nothing, and mark free space out to maxRange
+	 * @param freeObject MapObject to place along each beam
+	 * @param hitObject MapObject to place at the end of each beam that hit something
+	 */
+	public void castScan(double originX, double originY, double orientation, ScanTable table, double[] ranges, double maxRange, MapObject freeObject, MapObject hitObject){
+		castScan(originX, originY, orientation, table, ranges, maxRange, freeObject, hitObject, null);
+	}
+	
+	/**
+	 * Casts a range scan from a sensor which sits between the points of the frame as occupancy evidence. See
+	 * castScan(double, double, double, ScanTable, double[], double, MapObject, MapObject) and
+	 * castScan(int, int, double, ScanTable, double[], double, OccupancyModel)
+	 * @param originX exact X coordinate of the sensor in the frame
+	 * @param originY exact Y coordinate of the sensor in the frame
+	 * @param orientation orientation of the sensor in radians, counter clockwise from the X axis of the frame
+	 * @param table ScanTable holding the beam angles of the scan
+	 * @param ranges range of each beam, in points. Beams with a range that is not positive (or not a number) are skipped
+	 * @param maxRange beams at or beyond this range hit nothing, and count as misses out to maxRange
+	 * @param model OccupancyModel defining the hit and miss updates
+	 */
+	public void castScan(double originX, double originY, double orientation, ScanTable table, double[] ranges, double maxRange, OccupancyModel model){
+		castScan(originX, originY, orientation, table, ranges, maxRange, null, null, model);
+	}
+	
+	/**
+	 * Casts a range scan into the frame, either writing MapObjects or applying an OccupancyModel when one is given. Beams are traced from
+	 * the point nearest the origin
+	 */
+	private void castScan(double originX, double originY, double orientation, ScanTable table, double[] ranges, double maxRange, MapObject freeObject, MapObject hitObject, OccupancyModel model){
+		double cosO = Math.cos(orientation);
+		double sinO = Math.sin(orientation);
+		int[] endX = table.getEndX();
+		int[] endY = table.getEndY();
+		int startX = (int)Math.round(originX);
+		int startY = (int)Math.round(originY);
+		int hits = 0;
+		double range;
+		boolean hit;
+		int x;
+		int y;
 		
+		for(int beam=0; beam<table.size(); beam++){
+			range = ranges[beam];
+			if(!(range>0)) continue;
+			hit = range<maxRange;
+			if(!hit) range = maxRange;
+			x = (int)Math.round(originX+range*(cosO*table.getCos(beam)-sinO*table.getSin(beam)));
+			y = (int)Math.round(originY+range*(sinO*table.getCos(beam)+cosO*table.getSin(beam)));
+			traceLine(startX, startY, x, y, freeObject, freeObject, model);
+			if(hit){
+				endX[hits] = x;
+				endY[hits] = y;
+				hits++;
+			}
+			else if(checkBounds(x,y)){
+				if(model!=null) updateOccupancy(x, y, model.getMissLogOdds(), model);
+				else setPoint(x, y, freeObject);
+			}
+		}
+		for(int n=0; n<hits; n++){
+			if(checkBounds(endX[n],endY[n])){
+				if(model!=null) updateOccupancy(endX[n], endY[n], model.getHitLogOdds(), model);
+				else setPoint(endX[n], endY[n], hitObject);
+			}
+		}
 	}
 	
 	/**
-	 * Draws a rectangle in the local frame between a top left and bottom right point
+	 * Draws a rectangle in the local frame between a top left and bottom right point. Only the part of the rectangle which falls inside
+	 * the frame is visited, and each point is written exactly once.
 	 * @param topLeft Coordinates of the top left of the rectangle
 	 * @param bottomRight Coordinates of the bottom right of the rectangle
 	 * @param object MapObject to fill the rectangle with
 	 * @param fill True if the rectangle should be solid, false for edge only
 	 */
 	public void castRec(IMapPoint topLeft, IMapPoint bottomRight, MapObject object, boolean fill){
+		castRec(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(), object, fill);
+	}
+	
+	/**
+	 * Draws a rectangle in the local frame between (left,top) and (right,bottom), see castRec(IMapPoint, IMapPoint, MapObject, boolean)
+	 * @param left X coordinate of the top left of the rectangle
+	 * @param top Y coordinate of the top left of the rectangle
+	 * @param right X coordinate of the bottom right of the rectangle
+	 * @param bottom Y coordinate of the bottom right of the rectangle
+	 * @param object MapObject to fill the rectangle with
+	 * @param fill True if the rectangle should be solid, false for edge only
+	 */
+	public void castRec(int left, int top, int right, int bottom, MapObject object, boolean fill){
 		if(fill){
-			int deltaX = Math.abs(bottomRight.getX()-topLeft.getX());
-			int deltaY = Math.abs(topLeft.getY()-bottomRight.getY());
-			int newX;
-			int newY;
+			//Solid rectangles cover deltaX columns to the right of, and deltaY rows down from, the top left point
+			int startX = Math.max(left, 0);
+			int endX = Math.min(left+Math.abs(right-left), this.width);
+			int startY = Math.max(top-Math.abs(top-bottom)+1, 0);
+			int endY = Math.min(top+1, this.height);
 			
-			for(int y=0; y<deltaY; y++){
-				for(int x=0; x<deltaX; x++){
-					newX = x+topLeft.getX();
-					newY = topLeft.getY()-y;
-					if(checkBounds(newX,newY)){
-						setPoint(new CartCoord(newX,newY), object);
-					}
+			for(int y=startY; y<endY; y++){
+				for(int x=startX; x<endX; x++){
+					setPoint(x, y, object);
 				}
 			}
 		}
 		else{
-			CartCoord topRight = new CartCoord(bottomRight.getX(),topLeft.getY());
-			CartCoord bottomLeft = new CartCoord(topLeft.getX(),bottomRight.getY());
-			//System.out.println("Coords: TL: "+topLeft+" TR: "+topRight+" BL: "+bottomLeft+" BR: "+bottomRight);
-			castLine(topLeft, object, topRight, object, object);
-			castLine(topLeft, object, bottomLeft, object, object);
-			castLine(bottomRight, object, bottomLeft, object, object);
-			castLine(bottomRight, object, topRight, object, object);
+			int minX = Math.min(left, right);
+			int maxX = Math.max(left, right);
+			int minY = Math.min(top, bottom);
+			int maxY = Math.max(top, bottom);
+			
+			castRow(maxY, minX, maxX, object);
+			if(minY!=maxY) castRow(minY, minX, maxX, object);
+			castColumn(minX, minY+1, maxY-1, object);
+			if(minX!=maxX) castColumn(maxX, minY+1, maxY-1, object);
+		}
+	}
+	
+	/**
+	 * Writes an object to a horizontal run of points, clipped to the frame
+	 * @param y Y coordinate of the run
+	 * @param startX first X coordinate of the run
+	 * @param endX last X coordinate of the run (inclusive)
+	 * @param object MapObject to fill the run with
+	 */
+	private void castRow(int y, int startX, int endX, MapObject object){
+		if(y<0 || y>=this.height) return;
+		startX = Math.max(startX, 0);
+		endX = Math.min(endX, this.width-1);
+		for(int x=startX; x<=endX; x++){
+			setPoint(x, y, object);
+		}
+	}
+	
+	/**
+	 * Writes an object to a vertical run of points, clipped to the frame
+	 * @param x X coordinate of the run
+	 * @param startY first Y coordinate of the run
+	 * @param endY last Y coordinate of the run (inclusive)
+	 * @param object MapObject to fill the run with
+	 */
+	private void castColumn(int x, int startY, int endY, MapObject object){
+		if(x<0 || x>=this.width) return;
+		startY = Math.max(startY, 0);
+		endY = Math.min(endY, this.height-1);
+		for(int y=startY; y<=endY; y++){
+			setPoint(x, y, object);
 		}
 	}
 	
@@ -183,6 +594,8 @@ public class Frame{
 	 * Positive radius, negative angle: clockwise from positive x axis
 	 * Negative radius, positive angle: clockwise from negative x axis
 	 * Negative radius, negative angle: counter clockwise from negative x axis
+	 * Edge only circles are rasterized with the integer midpoint circle algorithm, solid circles are filled one row at a time. In both
+	 * cases each point is written exactly once.
 	 * @param center The coordinates of the center of the circle
 	 * @param radius The radius of the circle 
 	 * @param degrees The arc of the circle (E.X. 90 for quarter circle, 180 for half, 360 for full)
@@ -190,41 +603,218 @@ public class Frame{
 	 * @param fill True for a solid circle, false for an edge only circle
 	 */
 	public void castCircle(IMapPoint center, int radius, int degrees, MapObject object, boolean fill) {
-		PolarCoord vector = new PolarCoord(0, (double) radius);
-		CartCoord nextPoint = new CartCoord(vector.getX()+center.getX(),vector.getY() + center.getY());
-		
-		if(radius<0)degrees = -degrees;
+		castCircle(center.getX(), center.getY(), radius, degrees, object, fill);
+	}
+	
+	/**
+	 * Draws a circle (or fraction there of) in the frame around (centerX,centerY), see castCircle(IMapPoint, int, int, MapObject, boolean)
+	 * @param centerX X coordinate of the center of the circle
+	 * @param centerY Y coordinate of the center of the circle
+	 * @param radius The radius of the circle 
+	 * @param degrees The arc of the circle (E.X. 90 for quarter circle, 180 for half, 360 for full)
+	 * @param object MapObject to fill the circle with
+	 * @param fill True for a solid circle, false for an edge only circle
+	 */
+	public void castCircle(int centerX, int centerY, int radius, int degrees, MapObject object, boolean fill) {
+		if(this.sector == null) this.sector = new ArcSector();
+		ArcSector sector = this.sector.set(radius<0 ? 180 : 0, radius<0 ? -degrees : degrees);
+		radius = Math.abs(radius);
 		
-			if (degrees > 0) {
-				for(int step = 0; step-1 <= degrees; step++) {
-					if (checkBounds(nextPoint)) {
-						if (fill) {
-							castLine(center, object, nextPoint, object, object);
-						} else setPoint(nextPoint, object);
-					}
-					vector = new PolarCoord(step, radius);
-					nextPoint = new CartCoord(vector.getX()+center.getX(), vector.getY()+center.getY());
-				}
+		if(fill){
+			//Half width of each row, shrunk as the rows move away from the center. r*r+r matches the points chosen by the midpoint edge
+			int halfWidth = radius;
+			int limit = radius*radius+radius;
+			for(int dy=0; dy<=radius; dy++){
+				while(halfWidth*halfWidth+dy*dy>limit) halfWidth--;
+				castArcRow(centerX, centerY, dy, halfWidth, sector, object);
+				if(dy!=0) castArcRow(centerX, centerY, -dy, halfWidth, sector, object);
 			}
-			else {
-				for(int step = 360; step+1 >= (360 + degrees); step--) {
-					if (checkBounds(nextPoint)) {
-						if (fill) {
-							castLine(center, object, nextPoint, object, object);
-						} else
-							setPoint(nextPoint, object);
-					}
-					vector = new PolarCoord(step, radius);
-					nextPoint = new CartCoord(vector.getX()+center.getX(), vector.getY()+center.getY());
+		}
+		else{
+			int x = radius;
+			int y = 0;
+			int error = 1-radius;
+			while(x>=y){
+				castOctants(centerX, centerY, x, y, sector, object);
+				y++;
+				if(error<0) error += 2*y+1;
+				else{
+					x--;
+					error += 2*(y-x)+1;
 				}
 			}
+		}
+	}
+	
+	/**
+	 * Writes the points of one row of a solid circle which fall inside the circle's arc, clipped to the frame
+	 */
+	private void castArcRow(int centerX, int centerY, int dy, int halfWidth, ArcSector sector, MapObject object){
+		int y = centerY+dy;
+		if(y<0 || y>=this.height) return;
+		int startX = Math.max(centerX-halfWidth, 0);
+		int endX = Math.min(centerX+halfWidth, this.width-1);
+		for(int x=startX; x<=endX; x++){
+			if(sector.contains(x-centerX, dy)) setPoint(x, y, object);
+		}
+	}
+	
+	/**
+	 * Writes the (up to) eight points of a circle's edge that mirror the offset (x,y) across the axes and diagonals, skipping the mirrors
+	 * which land on the same point so that each is only written once
+	 */
+	private void castOctants(int centerX, int centerY, int x, int y, ArcSector sector, MapObject object){
+		castArcPoint(centerX, centerY, x, y, sector, object);
+		castArcPoint(centerX, centerY, -x, -y, sector, object);
+		castArcPoint(centerX, centerY, -y, x, sector, object);
+		castArcPoint(centerX, centerY, y, -x, sector, object);
+		if(y!=0){
+			castArcPoint(centerX, centerY, x, -y, sector, object);
+			castArcPoint(centerX, centerY, -x, y, sector, object);
+		}
+		if(x!=y && y!=0){
+			castArcPoint(centerX, centerY, y, x, sector, object);
+			castArcPoint(centerX, centerY, -y, -x, sector, object);
+		}
+	}
+	
+	/**
+	 * Writes a single point of a circle's edge if it falls inside the circle's arc and inside the frame
+	 */
+	private void castArcPoint(int centerX, int centerY, int dx, int dy, ArcSector sector, MapObject object){
+		if(checkBounds(centerX+dx, centerY+dy) && sector.contains(dx, dy)) setPoint(centerX+dx, centerY+dy, object);
+	}
+	
+	/**
+	 * Describes the arc of a circle as a sector around the circle's center, so that points can be tested against it with a pair of cross
+	 * products instead of computing their angle
+	 */
+	private static class ArcSector{
+		private boolean full;
+		private boolean reflex;
+		private double startX;
+		private double startY;
+		private double endX;
+		private double endY;
+		
+		/**
+		 * Moves the sector to a new arc, so that one sector can be reused for every circle
+		 * @param startDegrees angle at which the arc starts, counter clockwise from the positive x axis
+		 * @param sweepDegrees angle swept by the arc, positive counter clockwise
+		 * @return This sector
+		 */
+		ArcSector set(int startDegrees, int sweepDegrees){
+			if(sweepDegrees<0){
+				startDegrees += sweepDegrees;
+				sweepDegrees = -sweepDegrees;
+			}
+			this.full = sweepDegrees>=360;
+			this.reflex = sweepDegrees>180;
+			this.startX = Math.cos(Math.toRadians(startDegrees));
+			this.startY = Math.sin(Math.toRadians(startDegrees));
+			this.endX = Math.cos(Math.toRadians(startDegrees+sweepDegrees));
+			this.endY = Math.sin(Math.toRadians(startDegrees+sweepDegrees));
+			return this;
+		}
+		
+		/**
+		 * @return True if the offset (dx,dy) from the center of the circle lies within the arc
+		 */
+		boolean contains(int dx, int dy){
+			if(this.full) return true;
+			boolean afterStart = this.startX*dy-this.startY*dx >= -1e-9;
+			boolean beforeEnd = dx*this.endY-dy*this.endX >= -1e-9;
+			if(this.reflex) return afterStart || beforeEnd;
+			return afterStart && beforeEnd;
+		}
 	}
 	
 	/**
-	 * @return The MapObject in the frame at (x,y)
+	 * @return The MapObjects in the frame, indexed [y][x]. Whether these are the live objects of the frame or views of its data
+	 * depends on the frame's store
 	 */
 	public MapObject[][] getPoints(){
-		return this.points;
+		if(this.ringX == 0 && this.ringY == 0) return this.store.getPoints();
+		MapObject[][] points = new MapObject[this.height][this.width];
+		for(int y=0;y<this.height;y++){
+			for(int x=0;x<this.width;x++){
+				points[y][x] = getPoint(x, y);
+			}
+		}
+		return points;
+	}
+	
+	/**
+	 * Retrieves a single MapObject from the frame. NOTE: There is no bounds checking, calling function must ensure that the location is within bounds
+	 * @param x X coordinate of the point
+	 * @param y Y coordinate of the point
+	 * @return The MapObject in the frame at (x,y), or null if that point has never been set
+	 */
+	public MapObject getPoint(int x, int y){
+		return this.store.getPoint(storeX(x), storeY(y));
+	}
+	
+	/**
+	 * Takes an immutable snapshot of the frame's points. A frame held in a TiledFrameStore shares its tiles with the snapshot, so the
+	 * snapshot costs nothing to take and the frame copies each tile the first time it writes to it afterwards, see TiledFrameStore.snapshot().
+	 * Frames held in any other store are copied into a new tiled store.
+	 * @return A frame over the snapshot, with no base frame. Writing to it throws an UnsupportedOperationException
+	 */
+	public Frame snapshot(){
+		if(this.store instanceof TiledFrameStore && this.ringX == 0 && this.ringY == 0) return new Frame(((TiledFrameStore)this.store).snapshot());
+		TiledFrameStore copy = new TiledFrameStore(this.height, this.width);
+		short[] states = new short[this.width];
+		float[] logOdds = new float[this.width];
+		for(int y=0; y<this.height; y++){
+			readRow(y, states, logOdds);
+			copy.writeRow(0, y, this.width, states, logOdds, 0);
+		}
+		return new Frame(copy.snapshot());
+	}
+	
+	/**
+	 * @return The store holding the frame's data
+	 */
+	public IFrameStore getStore(){
+		return this.store;
+	}
+	
+	/**
+	 * @return The number of points changed by casting since the frame was built or last copied into its base frame. Always 0 for frames
+	 * which are not derived from a base frame, as they do not track changes
+	 */
+	public int getDirtyCount(){
+		if(this.dirty == null) return 0;
+		return this.dirty.size();
+	}
+	
+	/**
+	 * Gets the X coordinate of a changed point. Together with getDirtyY() this allows renderers and loggers to walk the same set of changes
+	 * that will be copied into the base frame, without scanning the whole frame.
+	 * @param n Which changed point to get, from 0 to getDirtyCount()-1
+	 * @return X coordinate in the frame of the nth changed point
+	 */
+	public int getDirtyX(int n){
+		return frameX(this.dirty.get(n)%this.width);
+	}
+	
+	/**
+	 * Gets the Y coordinate of a changed point, see getDirtyX()
+	 * @param n Which changed point to get, from 0 to getDirtyCount()-1
+	 * @return Y coordinate in the frame of the nth changed point
+	 */
+	public int getDirtyY(int n){
+		return frameY(this.dirty.get(n)/this.width);
+	}
+	
+	/**
+	 * @param x The X value to check
+	 * @param y The Y value to check
+	 * @return True if the point at (x,y) has changed since the frame was built or last copied into its base frame
+	 */
+	public boolean isDirty(int x, int y){
+		if(this.dirty == null) return false;
+		return this.dirty.isDirty(storeY(y)*this.width+storeX(x));
 	}
 	
 	/**
@@ -235,16 +825,30 @@ public class Frame{
 	}
 	
 	/**
-	 * @return translation along the X axis of the base frame
+	 * @return translation along the X axis of the base frame, rounded to the nearest point
 	 */
 	public int getXTrans(){
-		return this.xTrans;
+		return (int)Math.round(this.xTrans);
 	}
 	
 	/**
-	 * @return translation along the Y axis of the base frame
+	 * @return translation along the Y axis of the base frame, rounded to the nearest point
 	 */
 	public int getYTrans(){
+		return (int)Math.round(this.yTrans);
+	}
+	
+	/**
+	 * @return exact translation along the X axis of the base frame
+	 */
+	public double getPreciseXTrans(){
+		return this.xTrans;
+	}
+	
+	/**
+	 * @return exact translation along the Y axis of the base frame
+	 */
+	public double getPreciseYTrans(){
 		return this.yTrans;
 	}
 	
@@ -275,8 +879,321 @@ public class Frame{
 	 * @param object MapObject to copy data from
 	 */
 	private void setPoint(IMapPoint point, MapObject object){
-		if(points[point.getY()][point.getX()] == null) points[point.getY()][point.getX()] = new MapObject(object);
-		else points[point.getY()][point.getX()].replace(object);
+		setPoint(point.getX(), point.getY(), object);
+	}
+	
+	/**
+	 * Copies the data from a given MapObject into the frame at (x,y), see setPoint(IMapPoint, MapObject). NOTE: There is no bounds checking,
+	 * calling function must ensure that the location is within bounds
+	 * @param x X coordinate of the point
+	 * @param y Y coordinate of the point
+	 * @param object MapObject to copy data from
+	 */
+	private void setPoint(int x, int y, MapObject object){
+		int sx = storeX(x);
+		int sy = storeY(y);
+		this.store.setPoint(sx, sy, object);
+		if(this.dirty != null) this.dirty.mark(sy*this.width+sx);
+		firePointChanged(x, y);
+	}
+	
+	/**
+	 * Applies a change to the occupancy log-odds of a point in place, clamped by the model, and updates the state of the point to match.
+	 * NOTE: There is no bounds checking, calling function must ensure that the location is within bounds
+	 * @param x X coordinate of the point
+	 * @param y Y coordinate of the point
+	 * @param delta change in log-odds
+	 * @param model OccupancyModel to clamp and threshold the log-odds with
+	 */
+	private void updateOccupancy(int x, int y, float delta, OccupancyModel model){
+		int sx = storeX(x);
+		int sy = storeY(y);
+		float logOdds = model.clamp(this.store.getLogOdds(sx, sy)+delta);
+		this.store.setCell(sx, sy, model.getState(logOdds, this.store.getState(sx, sy)), logOdds);
+		if(this.dirty != null) this.dirty.mark(sy*this.width+sx);
+		firePointChanged(x, y);
+	}
+	
+	/**
+	 * @return The occupancy log-odds of the point at (x,y). NOTE: There is no bounds checking, calling function must ensure that the location is within bounds
+	 */
+	public float getLogOdds(int x, int y){
+		return this.store.getLogOdds(storeX(x), storeY(y));
+	}
+	
+	/**
+	 * Adds a listener to be told about every point written in the frame
+	 * @param listener IFrameListener to add
+	 */
+	public void addListener(IFrameListener listener){
+		if(this.listeners == null) this.listeners = new ArrayList<IFrameListener>();
+		this.listeners.add(listener);
+	}
+	
+	/**
+	 * Removes a listener added with addListener()
+	 * @param listener IFrameListener to remove
+	 */
+	public void removeListener(IFrameListener listener){
+		if(this.listeners == null) return;
+		this.listeners.remove(listener);
+		if(this.listeners.isEmpty()) this.listeners = null;
+	}
+	
+	/**
+	 * Tells the listeners that a point has been written
+	 * @param x X coordinate of the point in the frame
+	 * @param y Y coordinate of the point in the frame
+	 */
+	void firePointChanged(int x, int y){
+		if(this.listeners == null) return;
+		for(int i=0; i<this.listeners.size(); i++){
+			this.listeners.get(i).pointChanged(this, x, y);
+		}
+	}
+	
+	/**
+	 * Fills a rectangle of the frame with the state and log-odds of a MapObject. The rectangle is clipped to the frame
+	 * @param minX X coordinate of the left edge of the rectangle
+	 * @param minY Y coordinate of the top edge of the rectangle
+	 * @param maxX X coordinate of the right edge of the rectangle, inclusive
+	 * @param maxY Y coordinate of the bottom edge of the rectangle, inclusive
+	 * @param data MapObject to fill the rectangle with, or null to clear it
+	 */
+	public void fill(int minX, int minY, int maxX, int maxY, MapObject data){
+		minX = Math.max(minX, 0);
+		minY = Math.max(minY, 0);
+		maxX = Math.min(maxX, this.width-1);
+		maxY = Math.min(maxY, this.height-1);
+		if(minX > maxX || minY > maxY) return;
+		short state = data == null ? MapStateRegistry.UNSET : data.getStateId();
+		float logOdds = data == null ? 0 : data.getLogOdds();
+		short[] rowStates = new short[this.width];
+		float[] rowLogOdds = new float[this.width];
+		for(int y=minY; y<=maxY; y++){
+			readRow(y, rowStates, rowLogOdds);
+			Arrays.fill(rowStates, minX, maxX+1, state);
+			Arrays.fill(rowLogOdds, minX, maxX+1, logOdds);
+			writeRow(y, rowStates, rowLogOdds, 0);
+		}
+	}
+	
+	/**
+	 * Merges the occupancy evidence of another frame of the same size into this one: the log-odds of each point of the other frame,
+	 * scaled by a weight, is added to the log-odds of the point in this frame and clamped by the model, and the point takes the state the
+	 * model gives it. Points which have never been set in the other frame are left alone, and points which have never been set in this
+	 * frame start from the state of the other frame.
+	 * @param other Frame to merge into this one
+	 * @param weight weight of the other frame's evidence, 1 to add it as it is
+	 * @param model OccupancyModel to clamp the log-odds and choose the states with
+	 * @throws IllegalArgumentException if the frames are not the same size
+	 */
+	public void blend(Frame other, float weight, OccupancyModel model){
+		checkSameSize(other);
+		float min = model.getMinLogOdds();
+		float max = model.getMaxLogOdds();
+		short[] rowStates = new short[this.width];
+		float[] rowLogOdds = new float[this.width];
+		short[] otherStates = new short[this.width];
+		float[] otherLogOdds = new float[this.width];
+		float sum;
+		for(int y=0; y<this.height; y++){
+			readRow(y, rowStates, rowLogOdds);
+			other.readRow(y, otherStates, otherLogOdds);
+			for(int x=0; x<this.width; x++){
+				sum = Math.min(Math.max(rowLogOdds[x]+weight*otherLogOdds[x], min), max);
+				rowLogOdds[x] = otherStates[x] == MapStateRegistry.UNSET ? rowLogOdds[x] : sum;
+			}
+			for(int x=0; x<this.width; x++){
+				if(otherStates[x] == MapStateRegistry.UNSET) continue;
+				rowStates[x] = model.getState(rowLogOdds[x], rowStates[x] == MapStateRegistry.UNSET ? otherStates[x] : rowStates[x]);
+			}
+			writeRow(y, rowStates, rowLogOdds, 0);
+		}
+	}
+	
+	/**
+	 * Sorts every point of the frame which has been set into one of two states by its log-odds. The log-odds themselves are left as they are
+	 * @param threshold log-odds at or above which a point is given the occupied state
+	 * @param occupied MapObject whose state is given to points at or above the threshold
+	 * @param free MapObject whose state is given to points below the threshold
+	 */
+	public void threshold(float threshold, MapObject occupied, MapObject free){
+		short occupiedState = occupied.getStateId();
+		short freeState = free.getStateId();
+		short[] rowStates = new short[this.width];
+		float[] rowLogOdds = new float[this.width];
+		for(int y=0; y<this.height; y++){
+			readRow(y, rowStates, rowLogOdds);
+			for(int x=0; x<this.width; x++){
+				if(rowStates[x] != MapStateRegistry.UNSET) rowStates[x] = rowLogOdds[x] >= threshold ? occupiedState : freeState;
+			}
+			writeRow(y, rowStates, rowLogOdds, 0);
+		}
+	}
+	
+	/**
+	 * Counts the points of the frame holding a state
+	 * @param state MapObject whose state to count, or null to count the points which have never been set
+	 * @return The number of points holding the state
+	 */
+	public int count(MapObject state){
+		short code = state == null ? MapStateRegistry.UNSET : state.getStateId();
+		short[] rowStates = new short[this.width];
+		float[] rowLogOdds = new float[this.width];
+		int count = 0;
+		for(int y=0; y<this.height; y++){
+			readRow(y, rowStates, rowLogOdds);
+			for(int x=0; x<this.width; x++){
+				count += rowStates[x] == code ? 1 : 0;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Intersects the points of this frame holding a state with those of a mask frame of the same size: every point which holds the
+	 * state in this frame but not in the mask is given another state
+	 * @param mask Frame to intersect with
+	 * @param state MapObject whose state to intersect
+	 * @param cleared MapObject to write into points which lose the state, or null to clear them
+	 * @throws IllegalArgumentException if the frames are not the same size
+	 */
+	public void maskAnd(Frame mask, MapObject state, MapObject cleared){
+		checkSameSize(mask);
+		short code = state.getStateId();
+		short clearedState = cleared == null ? MapStateRegistry.UNSET : cleared.getStateId();
+		float clearedLogOdds = cleared == null ? 0 : cleared.getLogOdds();
+		short[] rowStates = new short[this.width];
+		float[] rowLogOdds = new float[this.width];
+		short[] maskStates = new short[this.width];
+		float[] maskLogOdds = new float[this.width];
+		boolean lost;
+		for(int y=0; y<this.height; y++){
+			readRow(y, rowStates, rowLogOdds);
+			mask.readRow(y, maskStates, maskLogOdds);
+			for(int x=0; x<this.width; x++){
+				lost = rowStates[x] == code && maskStates[x] != code;
+				rowStates[x] = lost ? clearedState : rowStates[x];
+				rowLogOdds[x] = lost ? clearedLogOdds : rowLogOdds[x];
+			}
+			writeRow(y, rowStates, rowLogOdds, 0);
+		}
+	}
+	
+	/**
+	 * Unites the points of this frame holding a state with those of a mask frame of the same size: every point which holds the state in
+	 * the mask is given the state and log-odds it has in the mask
+	 * @param mask Frame to unite with
+	 * @param state MapObject whose state to unite
+	 * @throws IllegalArgumentException if the frames are not the same size
+	 */
+	public void maskOr(Frame mask, MapObject state){
+		checkSameSize(mask);
+		short code = state.getStateId();
+		short[] rowStates = new short[this.width];
+		float[] rowLogOdds = new float[this.width];
+		short[] maskStates = new short[this.width];
+		float[] maskLogOdds = new float[this.width];
+		for(int y=0; y<this.height; y++){
+			readRow(y, rowStates, rowLogOdds);
+			mask.readRow(y, maskStates, maskLogOdds);
+			for(int x=0; x<this.width; x++){
+				rowStates[x] = maskStates[x] == code ? code : rowStates[x];
+				rowLogOdds[x] = maskStates[x] == code ? maskLogOdds[x] : rowLogOdds[x];
+			}
+			writeRow(y, rowStates, rowLogOdds, 0);
+		}
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if another frame is not the same size as this one
+	 */
+	private void checkSameSize(Frame other){
+		if(other.width != this.width || other.height != this.height){
+			throw new IllegalArgumentException("Frames must be the same size, "+this.width+"x"+this.height+" does not match "+other.width+"x"+other.height);
+		}
+	}
+	
+	/**
+	 * Reads the state codes and log-odds of a full row of the frame, in frame order
+	 * @param y Y coordinate of the row
+	 * @param states array to read the state codes into, at least getWidth() long
+	 * @param logOdds array to read the log-odds into, at least getWidth() long
+	 */
+	void readRow(int y, short[] states, float[] logOdds){
+		int storeY = storeY(y);
+		this.store.readRow(this.ringX, storeY, this.width-this.ringX, states, logOdds, 0);
+		if(this.ringX != 0) this.store.readRow(0, storeY, this.ringX, states, logOdds, this.width-this.ringX);
+	}
+	
+	/**
+	 * Writes the state codes and log-odds of a full row of the frame, in frame order. Only the points which change are written, and
+	 * marked as changed
+	 * @param y Y coordinate of the row
+	 * @param states array holding the state codes to write
+	 * @param logOdds array holding the log-odds to write
+	 * @param offset index in the arrays of the first point of the row
+	 */
+	void writeRow(int y, short[] states, float[] logOdds, int offset){
+		if(this.currentStates == null || this.currentStates.length != this.width){
+			this.currentStates = new short[this.width];
+			this.currentLogOdds = new float[this.width];
+		}
+		readRow(y, this.currentStates, this.currentLogOdds);
+		int storeY = storeY(y);
+		int storeX;
+		for(int x=0; x<this.width; x++){
+			if(this.currentStates[x] == states[offset+x] && this.currentLogOdds[x] == logOdds[offset+x]) continue;
+			storeX = storeX(x);
+			this.store.setCell(storeX, storeY, states[offset+x], logOdds[offset+x]);
+			if(this.dirty != null) this.dirty.mark(storeY*this.width+storeX);
+			firePointChanged(x, y);
+		}
+	}
+	
+	/**
+	 * Reads the state of a point without creating a MapObject for it
+	 * @return The state code of the point at (x,y), see MapStateRegistry, or MapStateRegistry.UNSET if it has never been set. NOTE: There is no bounds checking, calling function must ensure that the location is within bounds
+	 */
+	public short getState(int x, int y){
+		return this.store.getState(storeX(x), storeY(y));
+	}
+	
+	/**
+	 * @param x X coordinate in the frame
+	 * @return The X coordinate of the point in the frame's store
+	 */
+	private int storeX(int x){
+		x += this.ringX;
+		return x>=this.width ? x-this.width : x;
+	}
+	
+	/**
+	 * @param y Y coordinate in the frame
+	 * @return The Y coordinate of the point in the frame's store
+	 */
+	private int storeY(int y){
+		y += this.ringY;
+		return y>=this.height ? y-this.height : y;
+	}
+	
+	/**
+	 * @param x X coordinate in the frame's store
+	 * @return The X coordinate of the point in the frame
+	 */
+	private int frameX(int x){
+		x -= this.ringX;
+		return x<0 ? x+this.width : x;
+	}
+	
+	/**
+	 * @param y Y coordinate in the frame's store
+	 * @return The Y coordinate of the point in the frame
+	 */
+	private int frameY(int y){
+		y -= this.ringY;
+		return y<0 ? y+this.height : y;
 	}
 	
 	/**
@@ -291,18 +1208,34 @@ public class Frame{
 		return new CartCoord(offsetPoint.getX()+point.getX(),offsetPoint.getY()+point.getY());
 	}
 	
+	/**
+	 * Calculates the coordinates of a point measured from an offset point into a coordinate kept by the caller, without allocating. See
+	 * calcOffset(IMapPoint, IMapPoint)
+	 * @param offsetPoint Coordinates of the offset point relative to the frame
+	 * @param point Coordinates of the actual point, relative to the offset point
+	 * @param result coordinate to write the coordinates of the actual point, relative to the frame, into
+	 * @return result, holding the coordinates of the actual point
+	 */
+	public MutableCoord calcOffset(IMapPoint offsetPoint, IMapPoint point, MutableCoord result){
+		return result.set(offsetPoint.getX()+point.getX(), offsetPoint.getY()+point.getY());
+	}
+	
 	/**
 	 * Prints out a text representation of the frame
 	 */
 	public String toString(){
-		String framePrint = "";
+		StringBuilder framePrint = new StringBuilder(this.height*(this.width+1));
+		short[] states = new short[this.width];
+		float[] logOdds = new float[this.width];
 		for(int y=height-1; y>=0; y--){
+			readRow(y, states, logOdds);
 			for(int x=0; x<this.width; x++){
-				framePrint = framePrint + points[y][x].toString();
+				if(states[x] == MapStateRegistry.UNSET) framePrint.append(' ');
+				else framePrint.append(MapStateRegistry.getState(states[x]));
 			}
-			framePrint = framePrint+"\n";
+			framePrint.append('\n');
 		}
-		return framePrint;
+		return framePrint.toString();
 	}
 	
 	/**
@@ -324,8 +1257,23 @@ public class Frame{
 	 * @param points point map array
 	 */
 	public void setPoints(MapObject[][] points) {
-		this.points = points;
+		this.store.setPoints(points);
 		this.width = points[0].length;
 		this.height = points.length;
+		this.ringX = 0;
+		this.ringY = 0;
+		if(this.dirty != null){
+			this.dirty = new DirtyCellSet(this.height*this.width);
+			for(int index=0; index<this.height*this.width; index++){
+				this.dirty.mark(index);
+			}
+		}
+		if(this.listeners != null){
+			for(int y=0; y<this.height; y++){
+				for(int x=0; x<this.width; x++){
+					firePointChanged(x, y);
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,206 @@
+package jenova.mappingsystem;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class for building rotated and translated frames out of a base frame by inverse mapping. Every point of the new frame is transformed
+ * back into the base frame and sampled there, so each point is written exactly once and none are left as holes, whatever the rotation.
+ * Points can be sampled with nearest neighbour interpolation, which copies the closest base point, or bilinear interpolation, which
+ * blends the occupancy probabilities of the four surrounding base points. Large frames are split into strips of rows which are
+ * resampled in parallel on a fork-join pool.
+ * @author Adam Panzica
+ *
+ */
+public class FrameResampler {
+	/**
+	 * Enum representing the ways a point can be sampled out of the base frame
+	 *
+	 */
+	public static enum Interpolation{
+		NEAREST ("Nearest"),
+		BILINEAR ("Bilinear");
+
+		private final String typeName;
+		Interpolation(String typeName){
+			this.typeName = typeName;
+		}
+
+		public String toString(){
+			return this.typeName;
+		}
+	};
+
+	private static final int PARALLEL_THRESHOLD = 1<<16;		//Frames with fewer points than this are resampled on the calling thread
+	private static final int CELLS_PER_TASK = 1<<13;			//Rough number of points resampled by each parallel task
+
+	private final Interpolation interpolation;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Constructor for creating a resampler which runs on its own fork-join pool, with one thread per processor
+	 * @param interpolation How to sample points out of the base frame
+	 */
+	public FrameResampler(Interpolation interpolation){
+		this(interpolation, new ForkJoinPool());
+	}
+
+	/**
+	 * Constructor for creating a resampler which runs on an existing fork-join pool
+	 * @param interpolation How to sample points out of the base frame
+	 * @param pool Pool to resample large frames on
+	 */
+	public FrameResampler(Interpolation interpolation, ForkJoinPool pool){
+		this.interpolation = interpolation;
+		this.pool = pool;
+	}
+
+	/**
+	 * @return How points are sampled out of the base frame
+	 */
+	public Interpolation getInterpolation(){
+		return this.interpolation;
+	}
+
+	/**
+	 * Creates a frame based on a rotation and translation from some base frame, see Frame(int, int, Frame, double, IMapPoint). Points which
+	 * fall outside of the base frame are left unset.
+	 * @param height height of the frame
+	 * @param width width of the frame
+	 * @param baseFrame base frame to pull data out of
+	 * @param theta rotation from the base frame, positive clockwise from the Y axis of the base frame
+	 * @param translation CartCoord containing the X and Y translation from baseFrame of the frame
+	 * @return The new frame
+	 */
+	public Frame resample(int height, int width, Frame baseFrame, double theta, IMapPoint translation){
+		IFrameStore store = baseFrame.getStore().spawn(height, width);
+		TransformCalculator transform = new TransformCalculator(theta, translation);
+		RowTask task = new RowTask(store, baseFrame.getStore(), transform, 0, height, Math.max(1, CELLS_PER_TASK/width));
+		if((long)height*width < PARALLEL_THRESHOLD) task.compute();
+		else this.pool.invoke(task);
+		return new Frame(store, baseFrame, theta, translation);
+	}
+
+	/**
+	 * Resamples a strip of rows, splitting it in half until it is small enough to resample directly
+	 */
+	private class RowTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		private final IFrameStore store;
+		private final IFrameStore baseStore;
+		private final TransformCalculator transform;
+		private final int startY;
+		private final int endY;
+		private final int minRows;
+
+		RowTask(IFrameStore store, IFrameStore baseStore, TransformCalculator transform, int startY, int endY, int minRows){
+			this.store = store;
+			this.baseStore = baseStore;
+			this.transform = transform;
+			this.startY = startY;
+			this.endY = endY;
+			this.minRows = minRows;
+		}
+
+		@Override
+		protected void compute(){
+			if(this.endY-this.startY > this.minRows){
+				int midY = (this.startY+this.endY)>>>1;
+				invokeAll(new RowTask(this.store, this.baseStore, this.transform, this.startY, midY, this.minRows),
+						  new RowTask(this.store, this.baseStore, this.transform, midY, this.endY, this.minRows));
+				return;
+			}
+			int width = this.store.getWidth();
+			short[] states = new short[width];
+			float[] logOdds = new float[width];
+			if(interpolation == Interpolation.NEAREST){
+				int[] baseX = new int[width];
+				int[] baseY = new int[width];
+				for(int y=this.startY; y<this.endY; y++){
+					this.transform.transformRowLocalToBase(y, 0, width, baseX, baseY);
+					sampleNearest(this.baseStore, baseX, baseY, states, logOdds);
+					this.store.writeRow(0, y, width, states, logOdds, 0);
+				}
+			}
+			else{
+				double[] baseX = new double[width];
+				double[] baseY = new double[width];
+				for(int y=this.startY; y<this.endY; y++){
+					this.transform.transformRowLocalToBase(y, 0, width, baseX, baseY);
+					sampleBilinear(this.baseStore, baseX, baseY, states, logOdds);
+					this.store.writeRow(0, y, width, states, logOdds, 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Samples the base point nearest to each position, leaving positions outside of the base unset
+	 */
+	private static void sampleNearest(IFrameStore baseStore, int[] baseX, int[] baseY, short[] states, float[] logOdds){
+		int baseWidth = baseStore.getWidth();
+		int baseHeight = baseStore.getHeight();
+		for(int i=0; i<states.length; i++){
+			if(baseX[i]>=0 && baseX[i]<baseWidth && baseY[i]>=0 && baseY[i]<baseHeight){
+				states[i] = baseStore.getState(baseX[i], baseY[i]);
+				logOdds[i] = baseStore.getLogOdds(baseX[i], baseY[i]);
+			}
+			else{
+				states[i] = MapStateRegistry.UNSET;
+				logOdds[i] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Samples each position by blending the occupancy probabilities of the four base points around it, weighted by how close each one
+	 * is. The state is taken from the nearest base point, as states cannot be blended. Surrounding points which are unset or outside of
+	 * the base are left out of the blend, and positions whose nearest point is unset or outside of the base are left unset.
+	 */
+	private static void sampleBilinear(IFrameStore baseStore, double[] baseX, double[] baseY, short[] states, float[] logOdds){
+		int baseWidth = baseStore.getWidth();
+		int baseHeight = baseStore.getHeight();
+		int x0;
+		int y0;
+		int x;
+		int y;
+		double fracX;
+		double fracY;
+		double weight;
+		double weightSum;
+		double probSum;
+		float first;
+		boolean uniform;
+		for(int i=0; i<states.length; i++){
+			x = (int)Math.floor(baseX[i]+0.5);
+			y = (int)Math.floor(baseY[i]+0.5);
+			if(x<0 || x>=baseWidth || y<0 || y>=baseHeight || baseStore.getState(x, y) == MapStateRegistry.UNSET){
+				states[i] = MapStateRegistry.UNSET;
+				logOdds[i] = 0;
+				continue;
+			}
+			states[i] = baseStore.getState(x, y);
+			x0 = (int)Math.floor(baseX[i]);
+			y0 = (int)Math.floor(baseY[i]);
+			fracX = baseX[i]-x0;
+			fracY = baseY[i]-y0;
+			weightSum = 0;
+			probSum = 0;
+			first = baseStore.getLogOdds(x, y);
+			uniform = true;
+			for(int corner=0; corner<4; corner++){
+				x = x0+(corner&1);
+				y = y0+(corner>>1);
+				if(x<0 || x>=baseWidth || y<0 || y>=baseHeight || baseStore.getState(x, y) == MapStateRegistry.UNSET) continue;
+				weight = ((corner&1)==0 ? 1-fracX : fracX)*((corner>>1)==0 ? 1-fracY : fracY);
+				if(weight == 0) continue;
+				if(baseStore.getLogOdds(x, y) != first) uniform = false;
+				weightSum += weight;
+				probSum += weight*OccupancyModel.toProbability(baseStore.getLogOdds(x, y));
+			}
+			//Blending equal values gives the same value back, and doing it directly keeps log-odds which have no evidence at exactly 0
+			if(uniform || weightSum == 0) logOdds[i] = first;
+			else logOdds[i] = OccupancyModel.toLogOdds(Math.min(Math.max(probSum/weightSum, 1e-6), 1-1e-6));
+		}
+	}
+}
@@ -0,0 +1,355 @@
+package jenova.mappingsystem;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Class for writing Frames to, and reading them back from, a compact versioned binary snapshot. Snapshots are streamed through a fixed
+ * size buffer over NIO channels, so a map of any size can be checkpointed to a file, socket or pipe without building it up in memory.
+ *
+ * A snapshot is little endian, and starts with the magic number, the format version, and the kind of snapshot (a Frame or a HawkEye,
+ * see HawkEye.writeSnapshot()). A frame is written as its width, height and background cell, followed by the cells in row major order
+ * as runs of identical cells. Each run holds its length, the snapshot's code for its state, and its log-odds. States are given codes
+ * in the order they are first seen, and the String for a state follows the first run to use it, so no table of states needs to be
+ * built before writing begins.
+ * @author Adam Panzica
+ *
+ */
+public class FrameSnapshot {
+	/**
+	 * Magic number at the start of every snapshot ("JHSN")
+	 */
+	public static final int MAGIC = 0x4A48534E;
+	/**
+	 * Version of the snapshot format written by this class. Version 1 snapshots, which hold the location of a HawkEye's local frame in
+	 * whole points, can still be read
+	 */
+	public static final int VERSION = 2;
+
+	static final byte FRAME_SNAPSHOT = 0;
+	static final byte HAWKEYE_SNAPSHOT = 1;
+	private static final int BUFFER_SIZE = 65536;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private FrameSnapshot(){
+	}
+
+	/**
+	 * Writes a snapshot of a frame
+	 * @param frame Frame to write
+	 * @param channel channel to write the snapshot to. The channel is not closed
+	 * @throws IOException if the channel cannot be written to
+	 */
+	public static void write(Frame frame, WritableByteChannel channel) throws IOException{
+		Output out = new Output(channel);
+		writeHeader(out, FRAME_SNAPSHOT);
+		writeFrame(out, frame);
+		out.flush();
+	}
+
+	/**
+	 * Reads a frame back from a snapshot
+	 * @param channel channel to read the snapshot from. The channel is not closed
+	 * @param storeType The type of store to create the frame in
+	 * @return The frame held in the snapshot
+	 * @throws IOException if the channel cannot be read, or does not hold a frame snapshot of a supported version
+	 */
+	public static Frame read(ReadableByteChannel channel, FrameStoreFactory.StoreType storeType) throws IOException{
+		Input in = new Input(channel);
+		if(readHeader(in) != FRAME_SNAPSHOT) throw new IOException("Snapshot does not hold a Frame");
+		return readFrame(in, storeType);
+	}
+
+	/**
+	 * Writes the snapshot header
+	 * @param kind kind of snapshot which follows the header
+	 */
+	static void writeHeader(Output out, byte kind) throws IOException{
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		out.put(kind);
+	}
+
+	/**
+	 * Reads and checks the snapshot header, the version read is kept by the input
+	 * @return the kind of snapshot which follows the header
+	 */
+	static byte readHeader(Input in) throws IOException{
+		if(in.getInt() != MAGIC) throw new IOException("Not a map snapshot");
+		int version = in.getInt();
+		if(version < 1 || version > VERSION) throw new IOException("Snapshot version "+version+" is not supported, only versions 1 to "+VERSION+" are");
+		in.version = version;
+		return in.get();
+	}
+
+	/**
+	 * Writes the cells of a frame as runs of identical cells
+	 */
+	static void writeFrame(Output out, Frame frame) throws IOException{
+		IFrameStore store = frame.getStore();
+		int width = frame.getWidth();
+		int height = frame.getHeight();
+		short[] states = new short[width];
+		float[] logOdds = new float[width];
+		int[] codes = new int[16];				//Registry state code -> snapshot code + 1, 0 if the state has not been written yet
+		int nextCode = 0;
+
+		//The background is what a reader should fill a sparse store with; for tiled stores it is exact, otherwise take a corner
+		short backgroundState;
+		float backgroundLogOdds;
+		if(store instanceof TiledFrameStore){
+			backgroundState = ((TiledFrameStore)store).getBackgroundState();
+			backgroundLogOdds = ((TiledFrameStore)store).getBackgroundLogOdds();
+		}
+		else{
+			backgroundState = store.getState(0, 0);
+			backgroundLogOdds = store.getLogOdds(0, 0);
+		}
+		out.putInt(width);
+		out.putInt(height);
+		out.putState(backgroundState);
+		out.putFloat(backgroundLogOdds);
+
+		short runState = 0;
+		float runLogOdds = 0;
+		int runLength = 0;
+		boolean define;
+		for(int y=0; y<height; y++){
+			frame.readRow(y, states, logOdds);
+			for(int x=0; x<width; x++){
+				if(runLength > 0 && states[x] == runState && Float.floatToIntBits(logOdds[x]) == Float.floatToIntBits(runLogOdds)){
+					runLength++;
+					continue;
+				}
+				if(runLength > 0){
+					if(runState >= codes.length) codes = Arrays.copyOf(codes, Math.max(codes.length*2, runState+1));
+					define = codes[runState] == 0;
+					if(define) codes[runState] = ++nextCode;
+					out.putRun(runLength, codes[runState]-1, define, runState, runLogOdds);
+				}
+				runState = states[x];
+				runLogOdds = logOdds[x];
+				runLength = 1;
+			}
+		}
+		if(runLength > 0){
+			if(runState >= codes.length) codes = Arrays.copyOf(codes, Math.max(codes.length*2, runState+1));
+			define = codes[runState] == 0;
+			if(define) codes[runState] = ++nextCode;
+			out.putRun(runLength, codes[runState]-1, define, runState, runLogOdds);
+		}
+	}
+
+	/**
+	 * Reads the cells of a frame written by writeFrame() into a new frame
+	 */
+	static Frame readFrame(Input in, FrameStoreFactory.StoreType storeType) throws IOException{
+		int width = in.getInt();
+		int height = in.getInt();
+		if(width <= 0 || height <= 0) throw new IOException("Snapshot holds a frame of invalid size "+width+"x"+height);
+		short backgroundState = in.getState();
+		float backgroundLogOdds = in.getFloat();
+		MapObject background = null;
+		if(backgroundState != MapStateRegistry.UNSET){
+			background = new MapObject(backgroundState);
+			if(backgroundLogOdds != 0) background.addProbData(new LogOddsProbability(backgroundLogOdds));
+		}
+		IFrameStore store = FrameStoreFactory.spawnStore(storeType, height, width, background);
+
+		short[] states = new short[width];
+		float[] logOdds = new float[width];
+		short[] codes = new short[16];			//Snapshot code -> registry state code
+		int knownCodes = 0;
+		int x = 0;
+		int y = 0;
+		int runLength;
+		int code;
+		short state;
+		float runLogOdds;
+		int span;
+		while(y < height){
+			runLength = in.getVarInt();
+			code = in.getVarInt();
+			if(code == knownCodes){
+				if(knownCodes == codes.length) codes = Arrays.copyOf(codes, codes.length*2);
+				codes[knownCodes++] = in.getState();
+			}
+			else if(code > knownCodes) throw new IOException("Snapshot is corrupt, state code "+code+" used before it was defined");
+			state = codes[code];
+			runLogOdds = in.getFloat();
+			if(runLength <= 0 || (long)y*width+x+runLength > (long)width*height) throw new IOException("Snapshot is corrupt, run overflows the frame");
+			while(runLength > 0){
+				span = Math.min(runLength, width-x);
+				Arrays.fill(states, x, x+span, state);
+				Arrays.fill(logOdds, x, x+span, runLogOdds);
+				x += span;
+				runLength -= span;
+				if(x == width){
+					store.writeRow(0, y, width, states, logOdds, 0);
+					x = 0;
+					y++;
+				}
+			}
+		}
+		return new Frame(store);
+	}
+
+	/**
+	 * Buffered little endian output to a channel
+	 */
+	static class Output{
+		private final WritableByteChannel channel;
+		private final ByteBuffer buffer;
+
+		Output(WritableByteChannel channel){
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		private void ensure(int bytes) throws IOException{
+			if(this.buffer.remaining() < bytes) flush();
+		}
+
+		void put(byte value) throws IOException{
+			ensure(1);
+			this.buffer.put(value);
+		}
+
+		void putInt(int value) throws IOException{
+			ensure(4);
+			this.buffer.putInt(value);
+		}
+
+		void putFloat(float value) throws IOException{
+			ensure(4);
+			this.buffer.putFloat(value);
+		}
+
+		void putDouble(double value) throws IOException{
+			ensure(8);
+			this.buffer.putDouble(value);
+		}
+
+		/**
+		 * Writes an unsigned integer in 7 bit groups, least significant first, so that small values take a single byte
+		 */
+		void putVarInt(int value) throws IOException{
+			ensure(5);
+			while((value & ~0x7F) != 0){
+				this.buffer.put((byte)((value & 0x7F)|0x80));
+				value >>>= 7;
+			}
+			this.buffer.put((byte)value);
+		}
+
+		/**
+		 * Writes a state as its String, length prefixed, with a length of 0 for the unset state and the length+1 for any other
+		 */
+		void putState(short state) throws IOException{
+			if(state == MapStateRegistry.UNSET){
+				putVarInt(0);
+				return;
+			}
+			byte[] bytes = MapStateRegistry.getState(state).getBytes(UTF8);
+			putVarInt(bytes.length+1);
+			for(int i=0; i<bytes.length; i++) put(bytes[i]);
+		}
+
+		/**
+		 * Writes a run of identical cells
+		 * @param define True if this is the first run using the code, in which case the state String follows the code
+		 */
+		void putRun(int length, int code, boolean define, short state, float logOdds) throws IOException{
+			putVarInt(length);
+			putVarInt(code);
+			if(define) putState(state);
+			putFloat(logOdds);
+		}
+
+		/**
+		 * Writes everything buffered out to the channel
+		 */
+		void flush() throws IOException{
+			this.buffer.flip();
+			while(this.buffer.hasRemaining()) this.channel.write(this.buffer);
+			this.buffer.clear();
+		}
+	}
+
+	/**
+	 * Buffered little endian input from a channel
+	 */
+	static class Input{
+		private final ReadableByteChannel channel;
+		private final ByteBuffer buffer;
+		int version;						//Format version of the snapshot, once its header has been read
+
+		Input(ReadableByteChannel channel){
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+			this.buffer.flip();
+		}
+
+		private void require(int bytes) throws IOException{
+			if(this.buffer.remaining() >= bytes) return;
+			this.buffer.compact();
+			while(this.buffer.position() < bytes){
+				if(this.channel.read(this.buffer) < 0) throw new EOFException("Snapshot ended unexpectedly");
+			}
+			this.buffer.flip();
+		}
+
+		byte get() throws IOException{
+			require(1);
+			return this.buffer.get();
+		}
+
+		int getInt() throws IOException{
+			require(4);
+			return this.buffer.getInt();
+		}
+
+		float getFloat() throws IOException{
+			require(4);
+			return this.buffer.getFloat();
+		}
+
+		double getDouble() throws IOException{
+			require(8);
+			return this.buffer.getDouble();
+		}
+
+		int getVarInt() throws IOException{
+			int value = 0;
+			int shift = 0;
+			byte next;
+			do{
+				if(shift > 28) throw new IOException("Snapshot is corrupt, integer is too long");
+				next = get();
+				value |= (next & 0x7F)<<shift;
+				shift += 7;
+			}while((next & 0x80) != 0);
+			return value;
+		}
+
+		/**
+		 * Reads a state written by Output.putState()
+		 * @return the registry code of the state
+		 */
+		short getState() throws IOException{
+			int length = getVarInt()-1;
+			if(length < 0) return MapStateRegistry.UNSET;
+			byte[] bytes = new byte[length];
+			for(int i=0; i<length; i++) bytes[i] = get();
+			return MapStateRegistry.intern(new String(bytes, UTF8));
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package jenova.mappingsystem;
+
+/**
+ * Factory for producing the backing stores used by Frames
+ * @author Adam Panzica
+ *
+ */
+public class FrameStoreFactory {
+	/**
+	 * Enum representing the various types of frame stores producible by the FrameStoreFactory
+	 *
+	 */
+	public static enum StoreType{
+		OBJECT ("Object"),
+		PACKED ("Packed"),
+		TILED ("Tiled");
+
+		private final String typeName;
+		StoreType(String typeName){
+			this.typeName = typeName;
+		}
+
+		public String toString(){
+			return this.typeName;
+		}
+	};
+
+	/**
+	 * Creates a new frame store
+	 * @param type The type of store to create
+	 * @param height height of the store
+	 * @param width width of the store
+	 * @param baseObj Base MapObject to initialize all cells in the store to, or null to leave all cells unset
+	 * @return The new store
+	 */
+	public static IFrameStore spawnStore(StoreType type, int height, int width, MapObject baseObj){
+		switch(type){
+		case TILED:
+			if(baseObj == null) return new TiledFrameStore(height, width);
+			return new TiledFrameStore(height, width, baseObj);
+		case PACKED:
+			if(baseObj == null) return new PackedFrameStore(height, width);
+			return new PackedFrameStore(height, width, baseObj);
+		default:
+			if(baseObj == null) return new ObjectFrameStore(height, width);
+			return new ObjectFrameStore(height, width, baseObj);
+		}
+	}
+}
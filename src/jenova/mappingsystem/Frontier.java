@@ -0,0 +1,49 @@
+package jenova.mappingsystem;
+
+/**
+ * Class for holding a summary of one frontier of a map, a connected group of free points bordering unknown points, as reported by a
+ * FrontierTracker.
+ * @author Adam Panzica
+ *
+ */
+public class Frontier {
+	private final double centroidX;
+	private final double centroidY;
+	private final int size;
+
+	/**
+	 * @param centroidX mean X coordinate of the points of the frontier
+	 * @param centroidY mean Y coordinate of the points of the frontier
+	 * @param size number of points in the frontier
+	 */
+	Frontier(double centroidX, double centroidY, int size){
+		this.centroidX = centroidX;
+		this.centroidY = centroidY;
+		this.size = size;
+	}
+
+	/**
+	 * @return The mean X coordinate of the points of the frontier, in points of the frame it was found in
+	 */
+	public double getCentroidX(){
+		return this.centroidX;
+	}
+
+	/**
+	 * @return The mean Y coordinate of the points of the frontier, in points of the frame it was found in
+	 */
+	public double getCentroidY(){
+		return this.centroidY;
+	}
+
+	/**
+	 * @return The number of points in the frontier
+	 */
+	public int getSize(){
+		return this.size;
+	}
+
+	public String toString(){
+		return "("+this.centroidX+","+this.centroidY+") size "+this.size;
+	}
+}
@@ -0,0 +1,392 @@
+package jenova.mappingsystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Class for keeping track of the frontiers of a frame: the free points which border an unknown point, grouped into frontiers of points
+ * which touch each other (including diagonally). The tracker listens to the frame, and changed points are queued as they happen; update()
+ * then re-checks only those points and their neighbours. Frontiers are held in a union-find forest, with the size and centroid of each
+ * frontier kept at its root, so a point joining the frontiers costs close to constant time however large the frontiers it joins. A point
+ * leaving the frontiers may split its frontier, which union-find cannot undo, so the remaining points of each frontier which lost a point
+ * are regrouped by a flood fill; the cost of an update is therefore the number of changes plus the size of the frontiers which shrank.
+ * Once updated, the frontiers are listed in time proportional to their number.
+ * The tracker holds an int and a byte per point of the frame.
+ * @author Adam Panzica
+ *
+ */
+public class FrontierTracker implements IFrameListener {
+	private static final int[] NEIGHBOUR_X = {-1, 0, 1, -1, 1, -1, 0, 1};
+	private static final int[] NEIGHBOUR_Y = {-1, -1, -1, 0, 0, 1, 1, 1};
+
+	private static final byte FRONTIER = 1;			//The point is part of a frontier
+	private static final byte QUEUED = 2;			//The point has changed since the last update
+	private static final byte ADDED = 4;			//The point joined the frontiers in this update and has not been grouped yet
+	private static final byte VISITED = 8;			//The point has been regrouped by a flood fill in this update
+
+	private final Frame frame;
+	private final short freeState;
+	private final short unknownState;
+	private final int width;
+	private final int height;
+	private final byte[] flags;
+	private final int[] parent;						//Parent of each frontier point, or -(slot+1) of its frontier if it is a root
+	private final IntList queued;
+	private final IntList added;
+	private final IntList removed;
+	private final IntList broken;					//Roots of the frontiers which lost a point in this update
+	private final IntList stack;
+
+	private int count;								//Number of frontiers, each held in a slot of the arrays below
+	private int[] rootOf;
+	private int[] sizeOf;
+	private long[] sumX;
+	private long[] sumY;
+
+	/**
+	 * Constructor for creating a frontier tracker over a frame. The frontiers are found from the points of the frame, and the tracker
+	 * registers itself as a listener on the frame to follow later changes
+	 * @param frame Frame to track frontiers in. The frame must not change size
+	 * @param free MapObject whose state marks a point as free
+	 * @param unknown MapObject whose state marks a point as unknown, such as the initial state of a HawkEye, or null if only points which
+	 * have never been set are unknown
+	 */
+	public FrontierTracker(Frame frame, MapObject free, MapObject unknown){
+		this.frame = frame;
+		this.freeState = free.getStateId();
+		this.unknownState = unknown == null ? MapStateRegistry.UNSET : unknown.getStateId();
+		this.width = frame.getWidth();
+		this.height = frame.getHeight();
+		this.flags = new byte[this.width*this.height];
+		this.parent = new int[this.width*this.height];
+		this.queued = new IntList();
+		this.added = new IntList();
+		this.removed = new IntList();
+		this.broken = new IntList();
+		this.stack = new IntList();
+		this.rootOf = new int[64];
+		this.sizeOf = new int[64];
+		this.sumX = new long[64];
+		this.sumY = new long[64];
+
+		//Read three rows at a time, so each point can be checked against the points above and below it
+		short[] above = new short[this.width];
+		short[] row = new short[this.width];
+		short[] below = new short[this.width];
+		float[] logOdds = new float[this.width];
+		short[] swap;
+		Arrays.fill(above, this.freeState);
+		if(this.height > 0) frame.readRow(0, row, logOdds);
+		for(int y=0; y<this.height; y++){
+			if(y+1 < this.height) frame.readRow(y+1, below, logOdds);
+			else Arrays.fill(below, this.freeState);
+			for(int x=0; x<this.width; x++){
+				if(row[x] != this.freeState) continue;
+				if(isUnknown(above[x]) || isUnknown(below[x]) || (x > 0 && isUnknown(row[x-1])) || (x+1 < this.width && isUnknown(row[x+1]))){
+					this.flags[y*this.width+x] = FRONTIER;
+				}
+			}
+			swap = above;
+			above = row;
+			row = below;
+			below = swap;
+		}
+		for(int index=0; index<this.flags.length; index++){
+			if(this.flags[index] == FRONTIER) regroup(index);
+		}
+		clearVisited();
+		frame.addListener(this);
+	}
+
+	/**
+	 * Stops the tracker following changes to its frame
+	 */
+	public void detach(){
+		this.frame.removeListener(this);
+	}
+
+	@Override
+	public void pointChanged(Frame frame, int x, int y) {
+		if(x<0 || x>=this.width || y<0 || y>=this.height) return;
+		int index = y*this.width+x;
+		if((this.flags[index]&QUEUED) != 0) return;
+		this.flags[index] |= QUEUED;
+		this.queued.add(index);
+	}
+
+	/**
+	 * @return True if there are changes which have not been applied to the frontiers by update()
+	 */
+	public boolean isPending(){
+		return this.queued.size() > 0;
+	}
+
+	/**
+	 * Applies every change made to the frame since the last update to the frontiers
+	 */
+	public void update(){
+		//Re-check each changed point and the points beside it, whose frontier status depends on it
+		int index;
+		int x;
+		int y;
+		for(int n=0; n<this.queued.size(); n++){
+			index = this.queued.get(n);
+			this.flags[index] &= ~QUEUED;
+			x = index%this.width;
+			y = index/this.width;
+			recheck(x, y);
+			if(x > 0) recheck(x-1, y);
+			if(x+1 < this.width) recheck(x+1, y);
+			if(y > 0) recheck(x, y-1);
+			if(y+1 < this.height) recheck(x, y+1);
+		}
+		this.queued.clear();
+
+		//Release the frontiers which lost points, and regroup what is left of them
+		int root;
+		for(int n=0; n<this.broken.size(); n++){
+			root = this.broken.get(n);
+			if(this.parent[root] < 0) release(-this.parent[root]-1);
+		}
+		for(int n=0; n<this.removed.size(); n++){
+			index = this.removed.get(n);
+			x = index%this.width;
+			y = index/this.width;
+			for(int neighbour=0; neighbour<NEIGHBOUR_X.length; neighbour++){
+				int nx = x+NEIGHBOUR_X[neighbour];
+				int ny = y+NEIGHBOUR_Y[neighbour];
+				if(nx<0 || nx>=this.width || ny<0 || ny>=this.height) continue;
+				int next = ny*this.width+nx;
+				if((this.flags[next]&(FRONTIER|ADDED|VISITED)) == FRONTIER) regroup(next);
+			}
+		}
+		clearVisited();
+
+		//Join the new points to the frontiers around them
+		for(int n=0; n<this.added.size(); n++){
+			index = this.added.get(n);
+			if((this.flags[index]&ADDED) == 0) continue;
+			this.flags[index] &= ~ADDED;
+			this.parent[index] = -claim(index, index%this.width, index/this.width, 1)-1;
+			x = index%this.width;
+			y = index/this.width;
+			for(int neighbour=0; neighbour<NEIGHBOUR_X.length; neighbour++){
+				int nx = x+NEIGHBOUR_X[neighbour];
+				int ny = y+NEIGHBOUR_Y[neighbour];
+				if(nx<0 || nx>=this.width || ny<0 || ny>=this.height) continue;
+				int next = ny*this.width+nx;
+				if((this.flags[next]&(FRONTIER|ADDED)) == FRONTIER) union(index, next);
+			}
+		}
+		this.added.clear();
+		this.removed.clear();
+		this.broken.clear();
+	}
+
+	/**
+	 * Checks whether a point is part of a frontier, and records it if that has changed
+	 */
+	private void recheck(int x, int y){
+		int index = y*this.width+x;
+		boolean isFrontier = checkFrontier(x, y);
+		boolean wasFrontier = (this.flags[index]&FRONTIER) != 0;
+		if(isFrontier && !wasFrontier){
+			this.flags[index] |= FRONTIER|ADDED;
+			this.added.add(index);
+		}
+		else if(!isFrontier && wasFrontier){
+			if((this.flags[index]&ADDED) == 0){
+				this.broken.add(find(index));
+				this.removed.add(index);
+			}
+			this.flags[index] &= ~(FRONTIER|ADDED);
+		}
+	}
+
+	private boolean checkFrontier(int x, int y){
+		if(this.frame.getState(x, y) != this.freeState) return false;
+		return (x > 0 && isUnknown(this.frame.getState(x-1, y))) || (x+1 < this.width && isUnknown(this.frame.getState(x+1, y)))
+				|| (y > 0 && isUnknown(this.frame.getState(x, y-1))) || (y+1 < this.height && isUnknown(this.frame.getState(x, y+1)));
+	}
+
+	private boolean isUnknown(short state){
+		return state == this.unknownState || state == MapStateRegistry.UNSET;
+	}
+
+	/**
+	 * Groups every frontier point reachable from a point into a new frontier, rooted at the point, without crossing points added in this
+	 * update. The points reached are marked as visited until clearVisited()
+	 */
+	private void regroup(int start){
+		int slot = claim(start, 0, 0, 0);
+		this.parent[start] = -slot-1;
+		this.flags[start] |= VISITED;
+		int base = this.stack.size();
+		this.stack.add(start);
+		int index;
+		int x;
+		int y;
+		for(int n=base; n<this.stack.size(); n++){
+			index = this.stack.get(n);
+			x = index%this.width;
+			y = index/this.width;
+			if(index != start) this.parent[index] = start;
+			this.sizeOf[slot]++;
+			this.sumX[slot] += x;
+			this.sumY[slot] += y;
+			for(int neighbour=0; neighbour<NEIGHBOUR_X.length; neighbour++){
+				int nx = x+NEIGHBOUR_X[neighbour];
+				int ny = y+NEIGHBOUR_Y[neighbour];
+				if(nx<0 || nx>=this.width || ny<0 || ny>=this.height) continue;
+				int next = ny*this.width+nx;
+				if((this.flags[next]&(FRONTIER|ADDED|VISITED)) != FRONTIER) continue;
+				this.flags[next] |= VISITED;
+				this.stack.add(next);
+			}
+		}
+	}
+
+	private void clearVisited(){
+		for(int n=0; n<this.stack.size(); n++){
+			this.flags[this.stack.get(n)] &= ~VISITED;
+		}
+		this.stack.clear();
+	}
+
+	/**
+	 * @return The root of the frontier holding a point, halving the path to it on the way
+	 */
+	private int find(int index){
+		int next;
+		while(this.parent[index] >= 0){
+			next = this.parent[index];
+			if(this.parent[next] >= 0) this.parent[index] = this.parent[next];
+			index = next;
+		}
+		return index;
+	}
+
+	/**
+	 * Merges the frontiers holding two points, keeping the root of the larger
+	 */
+	private void union(int a, int b){
+		int rootA = find(a);
+		int rootB = find(b);
+		if(rootA == rootB) return;
+		int slotA = -this.parent[rootA]-1;
+		int slotB = -this.parent[rootB]-1;
+		if(this.sizeOf[slotA] < this.sizeOf[slotB]){
+			int swap = rootA;
+			rootA = rootB;
+			rootB = swap;
+			swap = slotA;
+			slotA = slotB;
+			slotB = swap;
+		}
+		this.sizeOf[slotA] += this.sizeOf[slotB];
+		this.sumX[slotA] += this.sumX[slotB];
+		this.sumY[slotA] += this.sumY[slotB];
+		this.parent[rootB] = rootA;
+		release(slotB);
+	}
+
+	/**
+	 * @return The slot of a new frontier rooted at a point
+	 */
+	private int claim(int root, long sumX, long sumY, int size){
+		if(this.count == this.rootOf.length){
+			this.rootOf = Arrays.copyOf(this.rootOf, this.count*2);
+			this.sizeOf = Arrays.copyOf(this.sizeOf, this.count*2);
+			this.sumX = Arrays.copyOf(this.sumX, this.count*2);
+			this.sumY = Arrays.copyOf(this.sumY, this.count*2);
+		}
+		int slot = this.count++;
+		this.rootOf[slot] = root;
+		this.sizeOf[slot] = size;
+		this.sumX[slot] = sumX;
+		this.sumY[slot] = sumY;
+		return slot;
+	}
+
+	/**
+	 * Frees the slot of a frontier, moving the last slot into it so that the slots stay packed
+	 */
+	private void release(int slot){
+		int last = --this.count;
+		int root = this.rootOf[slot];
+		if(this.parent[root] == -slot-1) this.parent[root] = root;
+		if(slot == last) return;
+		this.rootOf[slot] = this.rootOf[last];
+		this.sizeOf[slot] = this.sizeOf[last];
+		this.sumX[slot] = this.sumX[last];
+		this.sumY[slot] = this.sumY[last];
+		this.parent[this.rootOf[slot]] = -slot-1;
+	}
+
+	/**
+	 * @return True if the point at (x,y) was part of a frontier as of the last update(). NOTE: There is no bounds checking, calling
+	 * function must ensure that the location is within bounds
+	 */
+	public boolean isFrontier(int x, int y){
+		return (this.flags[y*this.width+x]&FRONTIER) != 0 && (this.flags[y*this.width+x]&ADDED) == 0;
+	}
+
+	/**
+	 * @return The number of frontiers as of the last update()
+	 */
+	public int getFrontierCount(){
+		return this.count;
+	}
+
+	/**
+	 * @param minSize fewest points a frontier must have to be listed
+	 * @return The frontiers as of the last update() with at least the given number of points, in no particular order
+	 */
+	public ArrayList<Frontier> getFrontiers(int minSize){
+		ArrayList<Frontier> frontiers = new ArrayList<Frontier>();
+		for(int slot=0; slot<this.count; slot++){
+			if(this.sizeOf[slot] < minSize) continue;
+			frontiers.add(new Frontier((double)this.sumX[slot]/this.sizeOf[slot], (double)this.sumY[slot]/this.sizeOf[slot], this.sizeOf[slot]));
+		}
+		return frontiers;
+	}
+
+	/**
+	 * @return The width of the frame being tracked
+	 */
+	public int getWidth(){
+		return this.width;
+	}
+
+	/**
+	 * @return The height of the frame being tracked
+	 */
+	public int getHeight(){
+		return this.height;
+	}
+
+	/**
+	 * Growable list of point indices
+	 */
+	private static class IntList{
+		private int[] values = new int[64];
+		private int size;
+
+		void add(int value){
+			if(this.size == this.values.length) this.values = Arrays.copyOf(this.values, this.size*2);
+			this.values[this.size++] = value;
+		}
+
+		int get(int index){
+			return this.values[index];
+		}
+
+		int size(){
+			return this.size;
+		}
+
+		void clear(){
+			this.size = 0;
+		}
+	}
+}
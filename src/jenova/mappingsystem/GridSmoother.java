@@ -0,0 +1,140 @@
+package jenova.mappingsystem;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ISmoother which runs a sequence of IGridKernels over the occupancy log-odds of a frame. The log-odds are read out of the frame once
+ * into a pair of flat float grids, and each pass of each kernel reads one grid and writes the other, so no MapObjects are created and no
+ * memory is allocated once the grids are large enough for the frame. Each pass is split into strips of rows which are run in parallel on
+ * a fork-join pool. When the smoother has an OccupancyModel, the state of every point is updated to follow its new log-odds, so a
+ * MorphologyKernel dilation inflates obstacles by its radius.
+ * The grids are reused between calls, so a GridSmoother must only be used by one thread at a time.
+ * @author Adam Panzica
+ *
+ */
+public class GridSmoother implements ISmoother {
+	private static final int PARALLEL_THRESHOLD = 1<<16;		//Frames with fewer points than this are smoothed on the calling thread
+	private static final int CELLS_PER_TASK = 1<<13;			//Rough number of points each parallel task works on
+
+	private final IGridKernel[] kernels;
+	private final OccupancyModel model;
+	private final ForkJoinPool pool;
+	private float[] front;										//Grid holding the current log-odds
+	private float[] back;										//Grid the next pass is written into
+	private short[] states;
+
+	/**
+	 * Constructor for creating a smoother which runs on its own fork-join pool, with one thread per processor
+	 * @param model OccupancyModel which the state of each point follows after smoothing, or null to leave states unchanged
+	 * @param kernels Kernels to run, in order
+	 */
+	public GridSmoother(OccupancyModel model, IGridKernel... kernels){
+		this(model, new ForkJoinPool(), kernels);
+	}
+
+	/**
+	 * Constructor for creating a smoother which runs on an existing fork-join pool
+	 * @param model OccupancyModel which the state of each point follows after smoothing, or null to leave states unchanged
+	 * @param pool Pool to run the kernels on
+	 * @param kernels Kernels to run, in order
+	 */
+	public GridSmoother(OccupancyModel model, ForkJoinPool pool, IGridKernel... kernels){
+		this.kernels = kernels.clone();
+		this.model = model;
+		this.pool = pool;
+		this.front = new float[0];
+		this.back = new float[0];
+		this.states = new short[0];
+	}
+
+	/**
+	 * Smooths a frame in place. Only the points whose state or log-odds change are written back, and marked as changed in the frame
+	 * @param frame Frame to smooth
+	 */
+	public void smooth(Frame frame){
+		int width = frame.getWidth();
+		int height = frame.getHeight();
+		int size = width*height;
+		if(this.front.length < size){
+			this.front = new float[size];
+			this.back = new float[size];
+			this.states = new short[size];
+		}
+		short[] rowStates = new short[width];
+		float[] rowLogOdds = new float[width];
+		for(int y=0; y<height; y++){
+			frame.readRow(y, rowStates, rowLogOdds);
+			System.arraycopy(rowStates, 0, this.states, y*width, width);
+			System.arraycopy(rowLogOdds, 0, this.front, y*width, width);
+		}
+
+		float[] swap;
+		for(int k=0; k<this.kernels.length; k++){
+			for(int pass=0; pass<this.kernels[k].getPasses(); pass++){
+				PassTask task = new PassTask(this.kernels[k], pass, width, height, 0, height, Math.max(1, CELLS_PER_TASK/width));
+				if(size < PARALLEL_THRESHOLD) task.compute();
+				else this.pool.invoke(task);
+				swap = this.front;
+				this.front = this.back;
+				this.back = swap;
+			}
+		}
+
+		if(this.model != null){
+			for(int index=0; index<size; index++){
+				this.states[index] = this.model.getState(this.front[index], this.states[index]);
+			}
+		}
+		for(int y=0; y<height; y++){
+			frame.writeRow(y, this.states, this.front, y*width);
+		}
+	}
+
+	/**
+	 * Smooths a grid of MapObjects, see smooth(Frame). The grid is copied into a PackedFrameStore to be smoothed.
+	 * @return new smoothed map
+	 */
+	@Override
+	public MapObject[][] smooth(MapObject[][] map) {
+		Frame frame = new Frame(new PackedFrameStore(map.length, map[0].length));
+		frame.setPoints(map);
+		smooth(frame);
+		return frame.getPoints();
+	}
+
+	/**
+	 * Runs one pass of a kernel over a strip of rows, splitting it in half until it is small enough to run directly
+	 */
+	private class PassTask extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		private final IGridKernel kernel;
+		private final int pass;
+		private final int width;
+		private final int height;
+		private final int startY;
+		private final int endY;
+		private final int minRows;
+
+		PassTask(IGridKernel kernel, int pass, int width, int height, int startY, int endY, int minRows){
+			this.kernel = kernel;
+			this.pass = pass;
+			this.width = width;
+			this.height = height;
+			this.startY = startY;
+			this.endY = endY;
+			this.minRows = minRows;
+		}
+
+		@Override
+		protected void compute(){
+			if(this.endY-this.startY > this.minRows){
+				int midY = (this.startY+this.endY)>>>1;
+				invokeAll(new PassTask(this.kernel, this.pass, this.width, this.height, this.startY, midY, this.minRows),
+						  new PassTask(this.kernel, this.pass, this.width, this.height, midY, this.endY, this.minRows));
+				return;
+			}
+			this.kernel.apply(this.pass, front, back, this.width, this.height, this.startY, this.endY);
+		}
+	}
+}
@@ -1,10 +1,16 @@
 package jenova.mappingsystem;
 
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Class for representing the HawkEye mapping system. Provides functionality for tracking a global map of arbitrary size as well as a
  * local frame which can be adjusted relative to the global frame. Data is entered into the local frame, and then copied back into the
  * global map with either a change in the orientation of the local frame, or with a specified synchronize command.
+ * By default a HawkEye must only be used from one thread. Once concurrent access has been enabled, one thread may write to it while any
+ * number of others read from it through read(), without either blocking the other, see enableConcurrentAccess().
  * @author Adam Panzica
  * @version 0.1
  */
@@ -14,13 +20,23 @@ public class HawkEye implements IMapSystem{
 	private Frame globalMap;					//Frame for storing the global map data
 	private Frame localMap;						//Frame for storing the local map data
 	private ObjectLocationData localLocation;	//Location of the local frame relative to the global frame
+	private MutableCoord localPosition;			//Position held by localLocation, updated in place by updateLocation()
 	private CartCoord localOffset;				//Origin offset inside the local frame
 	private CartCoord globalOffset;				//Origin offset inside the global frame
+	private boolean slidingWindow;				//True if the local frame should be slid rather than rebuilt when possible
+	private ScanTable scanTable;				//Beam trigonometry for the most recently cast scan
+	private FrameResampler resampler;			//Resampler used to rebuild the local frame, null to use the Frame transform constructor
+	private DistanceField distanceField;		//Distance from each point of the global map to the nearest obstacle, null if not kept
+	private MapPyramid mapPyramid;				//Multi-resolution occupancy of the global map, null if not kept
+	private FrontierTracker frontierTracker;	//Frontiers between free and unknown points of the global map, null if not kept
+	private StampedLock lock;					//Lock held by each change to the mapping system, null unless concurrent access is enabled
+	private final ThreadLocal<Boolean> reading = new ThreadLocal<Boolean>();	//Set on each thread while it runs a reader
 	
 	/************************************************* CONSTRUCTORS **********************************************************/
 	
 	/**
-	 * Constructor for creating a new HawkEye mapping system
+	 * Constructor for creating a new HawkEye mapping system. The global map is held in a sparse TiledFrameStore, so only the parts of it
+	 * which are actually mapped take up memory
 	 * @param globalMapWidth The total width of the global map (x-axis)
 	 * @param globalMapHeight The total height of the global map (y-axis)
 	 * @param localMapWidth The total width of the local map (x-axis)
@@ -31,77 +47,779 @@ public class HawkEye implements IMapSystem{
 	 * @param initialState Initial MapObject to fill all points in the global and local map with
 	 */
 	public HawkEye(int globalMapWidth, int globalMapHeight, int localMapWidth, int localMapHeight, CartCoord globalOrigin, CartCoord localOrigin, ObjectLocationData initialLocalOrientation, MapObject initialState){
-		this.globalMap = new Frame(globalMapHeight, globalMapWidth, initialState);
+		this(globalMapWidth, globalMapHeight, localMapWidth, localMapHeight, globalOrigin, localOrigin, initialLocalOrientation, initialState, FrameStoreFactory.StoreType.TILED);
+	}
+	
+	/**
+	 * Constructor for creating a new HawkEye mapping system which holds its map data in a specific type of frame store. The local map is
+	 * given whichever kind of store the global map's store spawns.
+	 * @param globalMapWidth The total width of the global map (x-axis)
+	 * @param globalMapHeight The total height of the global map (y-axis)
+	 * @param localMapWidth The total width of the local map (x-axis)
+	 * @param localMapHeight The total height of the local map (y-axis)
+	 * @param globalOrigin The location of the origin of the global map. For instance, to have a 200x200 map that goes from -100->100 in both axis, this should be (100,100)
+	 * @param localOrigin The location of the origin of the local map. For instance, to have a 200x200 map that goes from -100->100 in both axis, this should be (100,100)
+	 * @param initialLocalOrientation The initial position and rotation of the local map relative to the global map
+	 * @param initialState Initial MapObject to fill all points in the global and local map with
+	 * @param storeType The type of store to hold the map data in. PACKED avoids keeping a MapObject per cell on large maps, TILED only
+	 * allocates memory for the parts of the global map which are written to
+	 */
+	public HawkEye(int globalMapWidth, int globalMapHeight, int localMapWidth, int localMapHeight, CartCoord globalOrigin, CartCoord localOrigin, ObjectLocationData initialLocalOrientation, MapObject initialState, FrameStoreFactory.StoreType storeType){
+		this.globalMap = new Frame(globalMapHeight, globalMapWidth, initialState, storeType);
 		this.localOffset = localOrigin;
 		this.globalOffset = globalOrigin;
-		localLocation = new ObjectLocationData(new CartCoord(initialLocalOrientation.getX()+globalOrigin.getX(), initialLocalOrientation.getY()+globalOrigin.getY()), initialLocalOrientation.getOrientation());
+		localPosition = new MutableCoord(initialLocalOrientation.getPreciseX()+globalOrigin.getX(), initialLocalOrientation.getPreciseY()+globalOrigin.getY());
+		localLocation = new ObjectLocationData(localPosition, initialLocalOrientation.getOrientation());
 		localMap = new Frame(localMapHeight, localMapWidth, globalMap, localLocation.getOrientation(), localLocation.getPosition());
 	}
 	
+	/**
+	 * Constructor for creating a HawkEye mapping system over a global map kept in a memory mapped file. The size and origin of the global
+	 * map are taken from the file, so a map saved by a previous run picks up where it left off.
+	 * @param globalStore MappedFrameStore holding the global map, see MappedFrameStore.create() and MappedFrameStore.open()
+	 * @param localMapWidth The total width of the local map (x-axis)
+	 * @param localMapHeight The total height of the local map (y-axis)
+	 * @param localOrigin The location of the origin of the local map. For instance, to have a 200x200 map that goes from -100->100 in both axis, this should be (100,100)
+	 * @param initialLocalOrientation The initial position and rotation of the local map relative to the global map
+	 */
+	public HawkEye(MappedFrameStore globalStore, int localMapWidth, int localMapHeight, CartCoord localOrigin, ObjectLocationData initialLocalOrientation){
+		this.globalMap = new Frame(globalStore);
+		this.localOffset = localOrigin;
+		this.globalOffset = globalStore.getOrigin();
+		localPosition = new MutableCoord(initialLocalOrientation.getPreciseX()+globalOffset.getX(), initialLocalOrientation.getPreciseY()+globalOffset.getY());
+		localLocation = new ObjectLocationData(localPosition, initialLocalOrientation.getOrientation());
+		localMap = new Frame(localMapHeight, localMapWidth, globalMap, localLocation.getOrientation(), localLocation.getPosition());
+	}
+	
+	/**
+	 * Constructor for rebuilding a HawkEye mapping system around an existing global map, see readSnapshot()
+	 */
+	private HawkEye(Frame globalMap, int localMapWidth, int localMapHeight, CartCoord globalOrigin, CartCoord localOrigin, double localTheta, IMapPoint localTranslation){
+		this.globalMap = globalMap;
+		this.localOffset = localOrigin;
+		this.globalOffset = globalOrigin;
+		localPosition = new MutableCoord().set(localTranslation);
+		localLocation = new ObjectLocationData(localPosition, localTheta);
+		localMap = new Frame(localMapHeight, localMapWidth, globalMap, localTheta, localPosition);
+	}
+	
 	/************************************************ LOCATION UPDATING METHODS ******************************************************/
 	
 	@Override
 	public void updateLocation(ObjectLocationData newLocation){
-		ObjectLocationData trueLocation = calcOffsetFromGlobal(newLocation);
-		localMap.copyToBaseFrame();
-		localMap = new Frame(localMap.getHeight(), localMap.getWidth(), globalMap, trueLocation.getOrientation(), trueLocation.getPosition());
+		long stamp = beginWrite();
+		try{
+			calcOffsetFromGlobal(newLocation);
+			if(!slidingWindow || !localMap.slideTo(localLocation.getOrientation(), localPosition)){
+				localMap.copyToBaseFrame();
+				if(resampler != null) localMap = resampler.resample(localMap.getHeight(), localMap.getWidth(), globalMap, localLocation.getOrientation(), localPosition);
+				else localMap = new Frame(localMap.getHeight(), localMap.getWidth(), globalMap, localLocation.getOrientation(), localPosition);
+			}
+			followGlobalMap();
+		}
+		finally{
+			endWrite(stamp);
+		}
+	}
+	
+	/**
+	 * @return The origin relative location of the local frame in the global frame, as of the last updateLocation()
+	 */
+	public ObjectLocationData getLocalLocation(){
+		return new ObjectLocationData(new PreciseCoord(localLocation.getPreciseX()-globalOffset.getX(), localLocation.getPreciseY()-globalOffset.getY()), localLocation.getOrientation());
+	}
+
+	/**
+	 * @return The location of the origin inside the global frame
+	 */
+	public CartCoord getGlobalOrigin(){
+		return this.globalOffset;
+	}
+
+	/**
+	 * @return The location of the origin inside the local frame
+	 */
+	public CartCoord getLocalOrigin(){
+		return this.localOffset;
+	}
+
+	/**
+	 * Sets whether the local frame is moved as a sliding window. When enabled, an updateLocation which only translates the local frame
+	 * (and leaves it aligned with the global frame axes) writes back only the dirty points of the local frame and reads in only the rows
+	 * and columns it newly covers, instead of copying back and rebuilding the whole local frame. Rotations always rebuild the local frame.
+	 * @param slidingWindow True to enable the sliding window, false to always rebuild the local frame
+	 */
+	public void setSlidingWindow(boolean slidingWindow){
+		this.slidingWindow = slidingWindow;
+	}
+	
+	/**
+	 * Sets the resampler used to rebuild the local frame when it is moved. A resampler with bilinear interpolation gives smoother local
+	 * frames at headings which are not aligned with the global frame, and large local frames are rebuilt in parallel.
+	 * @param resampler FrameResampler to rebuild the local frame with, or null to rebuild it with nearest neighbour sampling on the calling thread
+	 */
+	public void setResampler(FrameResampler resampler){
+		this.resampler = resampler;
 	}
 	
 	@Override
 	public void saveToGolbal(){
-		localMap.copyToBaseFrame();
+		long stamp = beginWrite();
+		try{
+			localMap.copyToBaseFrame();
+			followGlobalMap();
+		}
+		finally{
+			endWrite(stamp);
+		}
+	}
+	
+	/**
+	 * Brings the maps derived from the global map which do not follow it as it changes up to date with it, so that they can be read
+	 * without saving the local map. Must be called whenever the global map is written to.
+	 */
+	private void followGlobalMap(){
+		if(distanceField != null) distanceField.update();
+	}
+	
+	/************************************************ SNAPSHOT METHODS *************************************************************/
+	
+	/**
+	 * Writes a snapshot of the mapping system, see FrameSnapshot. The local map is saved into the global map first, so the snapshot holds
+	 * the global map along with the origins, size and pose needed to rebuild the local map over it.
+	 * @param channel channel to write the snapshot to. The channel is not closed
+	 * @throws IOException if the channel cannot be written to
+	 */
+	public void writeSnapshot(WritableByteChannel channel) throws IOException{
+		long stamp = beginWrite();
+		try{
+			localMap.copyToBaseFrame();
+			followGlobalMap();
+			FrameSnapshot.Output out = new FrameSnapshot.Output(channel);
+			FrameSnapshot.writeHeader(out, FrameSnapshot.HAWKEYE_SNAPSHOT);
+			out.putInt(globalOffset.getX());
+			out.putInt(globalOffset.getY());
+			out.putInt(localOffset.getX());
+			out.putInt(localOffset.getY());
+			out.putInt(localMap.getWidth());
+			out.putInt(localMap.getHeight());
+			out.putDouble(localMap.getPreciseXTrans());
+			out.putDouble(localMap.getPreciseYTrans());
+			out.putDouble(localMap.getTheta());
+			out.put(slidingWindow ? (byte)1 : (byte)0);
+			FrameSnapshot.writeFrame(out, globalMap);
+			out.flush();
+		}
+		finally{
+			endWrite(stamp);
+		}
+	}
+	
+	/**
+	 * Rebuilds a mapping system from a snapshot written by writeSnapshot()
+	 * @param channel channel to read the snapshot from. The channel is not closed
+	 * @param storeType The type of store to hold the global map in
+	 * @return The mapping system held in the snapshot
+	 * @throws IOException if the channel cannot be read, or does not hold a HawkEye snapshot of a supported version
+	 */
+	public static HawkEye readSnapshot(ReadableByteChannel channel, FrameStoreFactory.StoreType storeType) throws IOException{
+		FrameSnapshot.Input in = new FrameSnapshot.Input(channel);
+		if(FrameSnapshot.readHeader(in) != FrameSnapshot.HAWKEYE_SNAPSHOT) throw new IOException("Snapshot does not hold a HawkEye");
+		CartCoord globalOrigin = new CartCoord(in.getInt(), in.getInt());
+		CartCoord localOrigin = new CartCoord(in.getInt(), in.getInt());
+		int localMapWidth = in.getInt();
+		int localMapHeight = in.getInt();
+		IMapPoint localPosition;
+		if(in.version == 1) localPosition = new CartCoord(in.getInt(), in.getInt());
+		else localPosition = new PreciseCoord(in.getDouble(), in.getDouble());
+		double localTheta = in.getDouble();
+		boolean slidingWindow = in.get() != 0;
+		Frame globalMap = FrameSnapshot.readFrame(in, storeType);
+		HawkEye hawkEye = new HawkEye(globalMap, localMapWidth, localMapHeight, globalOrigin, localOrigin, localTheta, localPosition);
+		hawkEye.setSlidingWindow(slidingWindow);
+		return hawkEye;
+	}
+	
+	/**
+	 * Takes an immutable view of the mapping system, see MapView. The local map is saved into the global map first, and the view shares
+	 * every tile of the global map with the live map, so taking it costs only the save of the points changed since the last save; the
+	 * live map then copies each tile the first time it writes to it. Global maps which are not held in a TiledFrameStore are copied whole.
+	 * @return A view of the global map and the location of the local frame as they are now
+	 */
+	public MapView snapshot(){
+		long stamp = beginWrite();
+		try{
+			localMap.copyToBaseFrame();
+			followGlobalMap();
+			return new MapView(globalMap.snapshot(), globalOffset, getLocalLocation());
+		}
+		finally{
+			endWrite(stamp);
+		}
 	}
 	
 	/************************************************ OFFSET CALCULATION METHODS *****************************************************/
 	
 	/**
-	 * Used to calculate a true location (positive only) from an origin relative location in the base frame
+	 * Used to calculate a true location (positive only) from an origin relative location in the base frame. The true location is written
+	 * into localLocation in place, so moving the local frame allocates nothing
 	 * @param location origin relative location in the base frame
-	 * @return true location in the base frame
 	 */
-	private ObjectLocationData calcOffsetFromGlobal(ObjectLocationData location){
-		return new ObjectLocationData(new CartCoord(location.getX()+globalOffset.getX(), location.getY()+globalOffset.getY()), location.getOrientation());
+	private void calcOffsetFromGlobal(ObjectLocationData location){
+		localPosition.set(location.getPreciseX()+globalOffset.getX(), location.getPreciseY()+globalOffset.getY());
+		localLocation.updateLocation(localPosition, location.getOrientation());
+	}
+	
+	/**
+	 * Used to calculate a true X value (positive only) from an origin relative X value in the local frame
+	 * @param x origin relative X value in the local frame
+	 * @return true X value in the local frame
+	 */
+	private int calcOffsetFromLocalX(int x){
+		return x+localOffset.getX();
 	}
 	
 	/**
-	 * Used to calculate a true point (positive only) from an origin relative point in the local frame
-	 * @param point origin relative point in the local frame
-	 * @return true point in the local frame
+	 * Used to calculate a true Y value (positive only) from an origin relative Y value in the local frame
+	 * @param y origin relative Y value in the local frame
+	 * @return true Y value in the local frame
 	 */
-	private CartCoord calcOffsetFromLocal(IMapPoint point){
-		return new CartCoord(point.getX()+localOffset.getX(), point.getY()+localOffset.getY());
+	private int calcOffsetFromLocalY(int y){
+		return y+localOffset.getY();
 	}
 	
 	/************************************************ SHAPE CASTING METHODS **********************************************************/
 	
 	@Override
 	public void castPoint(IMapPoint point, MapObject data){
-		localMap.castPoint(calcOffsetFromLocal(point), data);
+		castPoint(point.getX(), point.getY(), data);
+	}
+	
+	@Override
+	public void castPoint(int x, int y, MapObject data){
+		long stamp = beginWrite();
+		try{
+			localMap.castPoint(calcOffsetFromLocalX(x), calcOffsetFromLocalY(y), data);
+		}
+		finally{
+			endWrite(stamp);
+		}
 	}
 	
 	@Override
 	public void castLine(IMapPoint startPoint, MapObject startPointObject, IMapPoint endPoint, MapObject endPointObject, MapObject lineObject){
-		localMap.castLine(calcOffsetFromLocal(startPoint), startPointObject, calcOffsetFromLocal(endPoint), endPointObject, lineObject);
+		castLine(startPoint.getX(), startPoint.getY(), startPointObject, endPoint.getX(), endPoint.getY(), endPointObject, lineObject);
+	}
+	
+	@Override
+	public void castLine(int startX, int startY, MapObject startPointObject, int endX, int endY, MapObject endPointObject, MapObject lineObject){
+		long stamp = beginWrite();
+		try{
+			localMap.castLine(calcOffsetFromLocalX(startX), calcOffsetFromLocalY(startY), startPointObject, calcOffsetFromLocalX(endX), calcOffsetFromLocalY(endY), endPointObject, lineObject);
+		}
+		finally{
+			endWrite(stamp);
+		}
 	}
 	
 	
 	@Override
 	public void castRect(IMapPoint topLeft, IMapPoint bottomRight, MapObject data, boolean fill){
-		localMap.castRec(calcOffsetFromLocal(topLeft), calcOffsetFromLocal(bottomRight), data, fill);
+		castRect(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(), data, fill);
+	}
+	
+	@Override
+	public void castRect(int left, int top, int right, int bottom, MapObject data, boolean fill){
+		long stamp = beginWrite();
+		try{
+			localMap.castRec(calcOffsetFromLocalX(left), calcOffsetFromLocalY(top), calcOffsetFromLocalX(right), calcOffsetFromLocalY(bottom), data, fill);
+		}
+		finally{
+			endWrite(stamp);
+		}
 	}
 	
 	@Override
 	public void castCiricle(IMapPoint center, int radius, int degrees, MapObject data, boolean fill){
-		localMap.castCircle(calcOffsetFromLocal(center), radius, degrees, data, fill);
+		castCiricle(center.getX(), center.getY(), radius, degrees, data, fill);
+	}
+	
+	@Override
+	public void castCiricle(int centerX, int centerY, int radius, int degrees, MapObject data, boolean fill){
+		long stamp = beginWrite();
+		try{
+			localMap.castCircle(calcOffsetFromLocalX(centerX), calcOffsetFromLocalY(centerY), radius, degrees, data, fill);
+		}
+		finally{
+			endWrite(stamp);
+		}
+	}
+	
+	@Override
+	public void castScan(ObjectLocationData sensorPose, double[] angles, double[] ranges, double maxRange, MapObject freeData, MapObject hitData){
+		long stamp = beginWrite();
+		try{
+			if(scanTable == null || !scanTable.matches(angles)) scanTable = new ScanTable(angles);
+			localMap.castScan(sensorPose.getPreciseX()+localOffset.getX(), sensorPose.getPreciseY()+localOffset.getY(), sensorPose.getOrientation(), scanTable, ranges, maxRange, freeData, hitData);
+		}
+		finally{
+			endWrite(stamp);
+		}
+	}
+	
+	@Override
+	public void castScan(ObjectLocationData sensorPose, double[] angles, double[] ranges, double maxRange, OccupancyModel model){
+		long stamp = beginWrite();
+		try{
+			if(scanTable == null || !scanTable.matches(angles)) scanTable = new ScanTable(angles);
+			localMap.castScan(sensorPose.getPreciseX()+localOffset.getX(), sensorPose.getPreciseY()+localOffset.getY(), sensorPose.getOrientation(), scanTable, ranges, maxRange, model);
+		}
+		finally{
+			endWrite(stamp);
+		}
 	}
 	
 	/******************************************************* SMOOTHING METHODS *******************************************************/
 	
 	@Override
 	public void smooth(ISmoother smoothFunction){
-		this.localMap.setPoints(smoothFunction.smooth(this.localMap.getPoints()));
+		long stamp = beginWrite();
+		try{
+			if(smoothFunction instanceof GridSmoother) ((GridSmoother)smoothFunction).smooth(this.localMap);
+			else this.localMap.setPoints(smoothFunction.smooth(this.localMap.getPoints()));
+		}
+		finally{
+			endWrite(stamp);
+		}
+	}
+	
+	
+	/*************************************************** DISTANCE FIELD METHODS ****************************************************/
+	
+	/**
+	 * Starts keeping the distance from every point of the global map to its nearest obstacle, see DistanceField. The field follows the
+	 * global map as the local map is saved into it.
+	 * @param obstacle MapObject whose state marks a point as an obstacle
+	 * @param maxDistance distance beyond which distances are not tracked, in points
+	 * @return The new distance field
+	 */
+	public DistanceField enableDistanceField(MapObject obstacle, double maxDistance){
+		long stamp = beginWrite();
+		try{
+			if(distanceField != null) distanceField.detach();
+			distanceField = new DistanceField(globalMap, obstacle, maxDistance);
+			return distanceField;
+		}
+		finally{
+			endWrite(stamp);
+		}
+	}
+	
+	/**
+	 * Saves the local map into the global map and applies the changes to the distance field, so that it can be read directly in constant time
+	 * @return The distance field, or null if it has not been enabled
+	 */
+	public DistanceField updateDistanceField(){
+		long stamp = beginWrite();
+		try{
+			if(distanceField == null) return null;
+			localMap.copyToBaseFrame();
+			followGlobalMap();
+			return distanceField;
+		}
+		finally{
+			endWrite(stamp);
+		}
+	}
+	
+	/**
+	 * Gets the distance from a point to its nearest obstacle, as of the last time the local map was saved into the global map. This only
+	 * reads, so it may be called from any thread and from inside read(). NOTE: There is no bounds checking, calling function must ensure
+	 * that the location is within the global map
+	 * @param point origin relative point in the global map
+	 * @return The distance in points, capped at the maximum distance of the field
+	 * @throws IllegalStateException if the distance field has not been enabled
+	 */
+	public double getObstacleDistance(IMapPoint point){
+		int x = point.getX()+globalOffset.getX();
+		int y = point.getY()+globalOffset.getY();
+		double distance = 0;
+		long stamp;
+		do{
+			stamp = beginRead();
+			try{
+				distance = checkDistanceField().getDistance(x, y);
+			}
+			catch(RuntimeException e){
+				if(endRead(stamp)) throw e;
+			}
+		}while(!endRead(stamp));
+		return distance;
+	}
+	
+	/**
+	 * Gets the distance field, without saving the local map
+	 * @throws IllegalStateException if the distance field has not been enabled
+	 */
+	private DistanceField checkDistanceField(){
+		DistanceField field = distanceField;
+		if(field == null) throw new IllegalStateException("The distance field has not been enabled");
+		return field;
+	}
+	
+	/***************************************************** MAP PYRAMID METHODS ******************************************************/
+	
+	/**
+	 * Starts keeping a multi-resolution summary of the occupancy of the global map, see MapPyramid. The pyramid follows the global map
+	 * as the local map is saved into it.
+	 * @param occupied MapObject whose state marks a point as occupied
+	 * @return The new pyramid
+	 */
+	public MapPyramid enableMapPyramid(MapObject occupied){
+		long stamp = beginWrite();
+		try{
+			if(mapPyramid != null) mapPyramid.detach();
+			mapPyramid = new MapPyramid(globalMap, occupied);
+			return mapPyramid;
+		}
+		finally{
+			endWrite(stamp);
+		}
+	}
+	
+	/**
+	 * Saves the local map into the global map, so that the pyramid reflects everything cast so far
+	 * @return The pyramid, or null if it has not been enabled
+	 */
+	public MapPyramid updateMapPyramid(){
+		if(mapPyramid == null) return null;
+		saveToGolbal();
+		return mapPyramid;
+	}
+	
+	/**
+	 * Gets the pyramid for a region query, without saving the local map
+	 * @throws IllegalStateException if the pyramid has not been enabled
+	 */
+	private MapPyramid checkMapPyramid(){
+		MapPyramid pyramid = mapPyramid;
+		if(pyramid == null) throw new IllegalStateException("The map pyramid has not been enabled");
+		return pyramid;
+	}
+	
+	/************************************************** REGION QUERY METHODS ********************************************************/
+	
+	/*
+	 * The region queries only read the pyramid, which the global map keeps up to date as the local map is saved into it, so they answer
+	 * for the global map as of the last save and may be called from any thread and from inside read(). Each is run optimistically in the
+	 * same way as read().
+	 */
+	
+	/**
+	 * {@inheritDoc} Points are occupied if they hold the state given to enableMapPyramid().
+	 * @throws IllegalStateException if the map pyramid has not been enabled
+	 */
+	@Override
+	public int countOccupied(IMapPoint corner, IMapPoint oppositeCorner){
+		int minX = Math.min(corner.getX(), oppositeCorner.getX())+globalOffset.getX();
+		int minY = Math.min(corner.getY(), oppositeCorner.getY())+globalOffset.getY();
+		int maxX = Math.max(corner.getX(), oppositeCorner.getX())+globalOffset.getX();
+		int maxY = Math.max(corner.getY(), oppositeCorner.getY())+globalOffset.getY();
+		int count = 0;
+		long stamp;
+		do{
+			stamp = beginRead();
+			try{
+				count = checkMapPyramid().countOccupied(minX, minY, maxX, maxY);
+			}
+			catch(RuntimeException e){
+				if(endRead(stamp)) throw e;
+			}
+		}while(!endRead(stamp));
+		return count;
+	}
+	
+	/**
+	 * {@inheritDoc} Points are occupied if they hold the state given to enableMapPyramid().
+	 * @throws IllegalStateException if the map pyramid has not been enabled
+	 */
+	@Override
+	public boolean isRegionClear(IMapPoint corner, IMapPoint oppositeCorner){
+		int minX = Math.min(corner.getX(), oppositeCorner.getX())+globalOffset.getX();
+		int minY = Math.min(corner.getY(), oppositeCorner.getY())+globalOffset.getY();
+		int maxX = Math.max(corner.getX(), oppositeCorner.getX())+globalOffset.getX();
+		int maxY = Math.max(corner.getY(), oppositeCorner.getY())+globalOffset.getY();
+		boolean clear = false;
+		long stamp;
+		do{
+			stamp = beginRead();
+			try{
+				clear = checkMapPyramid().isClear(minX, minY, maxX, maxY);
+			}
+			catch(RuntimeException e){
+				if(endRead(stamp)) throw e;
+			}
+		}while(!endRead(stamp));
+		return clear;
+	}
+	
+	/**
+	 * {@inheritDoc} Points are occupied if they hold the state given to enableMapPyramid().
+	 * @throws IllegalStateException if the map pyramid has not been enabled
+	 */
+	@Override
+	public int countOccupied(IMapPoint center, double radius){
+		int x = center.getX()+globalOffset.getX();
+		int y = center.getY()+globalOffset.getY();
+		int count = 0;
+		long stamp;
+		do{
+			stamp = beginRead();
+			try{
+				count = checkMapPyramid().countOccupied(x, y, radius);
+			}
+			catch(RuntimeException e){
+				if(endRead(stamp)) throw e;
+			}
+		}while(!endRead(stamp));
+		return count;
+	}
+	
+	/**
+	 * {@inheritDoc} Points are occupied if they hold the state given to enableMapPyramid().
+	 * @throws IllegalStateException if the map pyramid has not been enabled
+	 */
+	@Override
+	public boolean isRegionClear(IMapPoint center, double radius){
+		int x = center.getX()+globalOffset.getX();
+		int y = center.getY()+globalOffset.getY();
+		boolean clear = false;
+		long stamp;
+		do{
+			stamp = beginRead();
+			try{
+				clear = checkMapPyramid().isClear(x, y, radius);
+			}
+			catch(RuntimeException e){
+				if(endRead(stamp)) throw e;
+			}
+		}while(!endRead(stamp));
+		return clear;
+	}
+	
+	/**
+	 * {@inheritDoc} Points are occupied if they hold the state given to enableMapPyramid().
+	 * @throws IllegalStateException if the map pyramid has not been enabled
+	 */
+	@Override
+	public int countOccupied(ObjectLocationData pose, IMapPoint[] footprint){
+		double[] xs = new double[footprint.length];
+		double[] ys = new double[footprint.length];
+		placeFootprint(pose, footprint, xs, ys);
+		int count = 0;
+		long stamp;
+		do{
+			stamp = beginRead();
+			try{
+				count = checkMapPyramid().countOccupied(xs, ys);
+			}
+			catch(RuntimeException e){
+				if(endRead(stamp)) throw e;
+			}
+		}while(!endRead(stamp));
+		return count;
+	}
+	
+	/**
+	 * {@inheritDoc} Points are occupied if they hold the state given to enableMapPyramid().
+	 * @throws IllegalStateException if the map pyramid has not been enabled
+	 */
+	@Override
+	public boolean isRegionClear(ObjectLocationData pose, IMapPoint[] footprint){
+		double[] xs = new double[footprint.length];
+		double[] ys = new double[footprint.length];
+		placeFootprint(pose, footprint, xs, ys);
+		boolean clear = false;
+		long stamp;
+		do{
+			stamp = beginRead();
+			try{
+				clear = checkMapPyramid().isClear(xs, ys);
+			}
+			catch(RuntimeException e){
+				if(endRead(stamp)) throw e;
+			}
+		}while(!endRead(stamp));
+		return clear;
+	}
+	
+	/**
+	 * Rotates and moves the corners of a footprint to a pose, giving their true coordinates in the global map
+	 */
+	private void placeFootprint(ObjectLocationData pose, IMapPoint[] footprint, double[] xs, double[] ys){
+		double cos = Math.cos(pose.getOrientation());
+		double sin = Math.sin(pose.getOrientation());
+		for(int corner=0; corner<footprint.length; corner++){
+			xs[corner] = pose.getPreciseX()+globalOffset.getX()+cos*footprint[corner].getPreciseX()-sin*footprint[corner].getPreciseY();
+			ys[corner] = pose.getPreciseY()+globalOffset.getY()+sin*footprint[corner].getPreciseX()+cos*footprint[corner].getPreciseY();
+		}
+	}
+	
+	/*************************************************** FRONTIER TRACKING METHODS **************************************************/
+	
+	/**
+	 * Starts keeping track of the frontiers of the global map, see FrontierTracker. The tracker follows the global map as the local map
+	 * is saved into it.
+	 * @param free MapObject whose state marks a point as free
+	 * @param unknown MapObject whose state marks a point as unknown, usually the initial state of the map, or null if only points which
+	 * have never been set are unknown
+	 * @return The new tracker
+	 */
+	public FrontierTracker enableFrontierTracker(MapObject free, MapObject unknown){
+		long stamp = beginWrite();
+		try{
+			if(frontierTracker != null) frontierTracker.detach();
+			frontierTracker = new FrontierTracker(globalMap, free, unknown);
+			return frontierTracker;
+		}
+		finally{
+			endWrite(stamp);
+		}
 	}
 	
+	/**
+	 * Saves the local map into the global map and applies the changes to the frontier tracker, so that its frontiers can be listed
+	 * @return The tracker, or null if it has not been enabled
+	 */
+	public FrontierTracker updateFrontierTracker(){
+		long stamp = beginWrite();
+		try{
+			if(frontierTracker == null) return null;
+			localMap.copyToBaseFrame();
+			followGlobalMap();
+			frontierTracker.update();
+			return frontierTracker;
+		}
+		finally{
+			endWrite(stamp);
+		}
+	}
+	
+	/*************************************************** CONCURRENT ACCESS METHODS **************************************************/
+	
+	/**
+	 * Enables concurrent access to the mapping system. Every method which changes the mapping system then holds a write lock while it
+	 * runs, and other threads read from it through read(), which does not take the lock: each read is run optimistically and checked
+	 * afterwards, and is run again if a change was made while it ran. Readers therefore never hold up the writer or each other, and never
+	 * see a change part way through; an updateLocation(), for instance, is seen either wholly or not at all. A read which keeps losing to
+	 * changes is simply run again until it runs between two of them.
+	 * Once enabled, concurrent access stays enabled. This must be called before the mapping system is shared with other threads.
+	 */
+	public void enableConcurrentAccess(){
+		if(lock == null) lock = new StampedLock();
+	}
+	
+	/**
+	 * Reads from the mapping system. If concurrent access is enabled this may be called from any thread, and the reader sees the mapping
+	 * system as it was between two changes to it; otherwise the reader is simply run
+	 * @param reader IMapReader to run
+	 * @return The result of the reader
+	 */
+	public <T> T read(IMapReader<T> reader){
+		if(lock == null) return reader.read(this);
+		Boolean outer = reading.get();
+		reading.set(Boolean.TRUE);
+		try{
+			long stamp;
+			T result = null;
+			do{
+				stamp = beginRead();
+				try{
+					result = reader.read(this);
+				}
+				catch(RuntimeException e){
+					//A reader which runs into a change part way through may fail in any way, only its failures on an unchanged map are real
+					if(endRead(stamp)) throw e;
+				}
+			}while(!endRead(stamp));
+			return result;
+		}
+		finally{
+			if(outer == null) reading.remove();
+		}
+	}
+	
+	/**
+	 * Reads a copy of the local map, see read()
+	 * @return Copies of the MapObjects in the local map, indexed [y][x], with null for points which have never been set
+	 */
+	public MapObject[][] readLocalPoints(){
+		return read(new IMapReader<MapObject[][]>(){
+			@Override
+			public MapObject[][] read(HawkEye map) {
+				Frame frame = map.getLocalMap();
+				MapObject[][] points = new MapObject[frame.getHeight()][frame.getWidth()];
+				MapObject point;
+				for(int y=0; y<frame.getHeight(); y++){
+					for(int x=0; x<frame.getWidth(); x++){
+						point = frame.getPoint(x, y);
+						if(point != null) points[y][x] = new MapObject(point);
+					}
+				}
+				return points;
+			}
+		});
+	}
+	
+	/**
+	 * Reads the location of the local frame, see read() and getLocalLocation()
+	 * @return The origin relative location of the local frame in the global frame
+	 */
+	public ObjectLocationData readLocalLocation(){
+		return read(new IMapReader<ObjectLocationData>(){
+			@Override
+			public ObjectLocationData read(HawkEye map) {
+				return map.getLocalLocation();
+			}
+		});
+	}
+	
+	/**
+	 * Takes the write lock, if concurrent access is enabled
+	 * @return The stamp to release the lock with
+	 * @throws IllegalStateException if called from inside read(), since the reader would wait on its own read forever
+	 */
+	private long beginWrite(){
+		if(lock == null) return 0;
+		if(reading.get() != null) throw new IllegalStateException("The mapping system cannot be changed or saved from inside read()");
+		return lock.writeLock();
+	}
+	
+	/**
+	 * Releases the write lock taken by beginWrite()
+	 */
+	private void endWrite(long stamp){
+		if(stamp != 0) lock.unlockWrite(stamp);
+	}
+	
+	/**
+	 * Starts an optimistic read, waiting out any change being made, if concurrent access is enabled
+	 * @return The stamp to check the read with
+	 */
+	private long beginRead(){
+		if(lock == null) return 0;
+		long stamp;
+		while((stamp = lock.tryOptimisticRead()) == 0) Thread.yield();
+		return stamp;
+	}
+	
+	/**
+	 * Checks an optimistic read started by beginRead()
+	 * @return True if no change was made while the read ran, so that its result may be used
+	 */
+	private boolean endRead(long stamp){
+		return lock == null || lock.validate(stamp);
+	}
 	
 	/*********************************************************** MISC METHODS ********************************************************/
 	public String toString(){
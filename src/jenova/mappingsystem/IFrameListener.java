@@ -0,0 +1,17 @@
+package jenova.mappingsystem;
+/**
+ * Interface for creating objects which are told when the points of a Frame change. A frame reports every point it writes through its own
+ * methods, including points copied into it from frames derived from it, so a listener on the global map of a HawkEye sees every change
+ * made to the map as the local frame is saved into it. Changes made directly to the frame's store are not reported.
+ * @author Adam Panzica
+ *
+ */
+public interface IFrameListener {
+	/**
+	 * Called after a point in the frame has been written. The point may have been written with the value it already held
+	 * @param frame Frame holding the point
+	 * @param x X coordinate of the point in the frame
+	 * @param y Y coordinate of the point in the frame
+	 */
+	public void pointChanged(Frame frame, int x, int y);
+}
@@ -0,0 +1,119 @@
+package jenova.mappingsystem;
+
+/**
+ * Interface for defining the backing storage of a Frame. A store holds the data for every cell in the frame, and is responsible
+ * for producing MapObjects for cells when a caller asks for them. Stores are free to keep data in whatever form they like, so long
+ * as a MapObject written to a cell can be read back with the same state.
+ * NOTE: There is no bounds checking on any of the cell methods, the calling function must ensure that the location is within bounds
+ * @author Adam Panzica
+ *
+ */
+public interface IFrameStore {
+
+	/**
+	 * @return The width of the store (x-axis)
+	 */
+	public int getWidth();
+
+	/**
+	 * @return The height of the store (y-axis)
+	 */
+	public int getHeight();
+
+	/**
+	 * Retrieves the MapObject at (x,y). Depending on the store this may be the live object in the store, or a view created for this call
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @return The MapObject at (x,y), or null if the cell has never been set
+	 */
+	public MapObject getPoint(int x, int y);
+
+	/**
+	 * Copies the data from a given MapObject into the cell at (x,y)
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @param object MapObject to copy data from
+	 */
+	public void setPoint(int x, int y, MapObject object);
+
+	/**
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @return The state code of the cell at (x,y), or 0 if the cell has never been set
+	 */
+	public short getState(int x, int y);
+
+	/**
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @return The occupancy log-odds of the cell at (x,y)
+	 */
+	public float getLogOdds(int x, int y);
+
+	/**
+	 * Copies a single cell from another store into this store. Cells which have never been set in the source store are skipped.
+	 * @param x X coordinate of the cell in this store
+	 * @param y Y coordinate of the cell in this store
+	 * @param source Store to copy the cell from
+	 * @param sourceX X coordinate of the cell in the source store
+	 * @param sourceY Y coordinate of the cell in the source store
+	 */
+	public void copyCell(int x, int y, IFrameStore source, int sourceX, int sourceY);
+
+	/**
+	 * Sets the state code and log-odds of a cell directly, without going through a MapObject
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 * @param state state code for the cell. Setting a state of 0 clears the cell
+	 * @param logOdds occupancy log-odds for the cell
+	 */
+	public void setCell(int x, int y, short state, float logOdds);
+
+	/**
+	 * Reads a run of cells from one row of the store
+	 * @param x X coordinate of the first cell
+	 * @param y Y coordinate of the row
+	 * @param length number of cells to read
+	 * @param states array to receive the state codes of the cells
+	 * @param logOdds array to receive the log-odds of the cells
+	 * @param offset index in the arrays at which to place the first cell
+	 */
+	public void readRow(int x, int y, int length, short[] states, float[] logOdds, int offset);
+
+	/**
+	 * Writes a run of cells into one row of the store, as if each cell had been written with setCell()
+	 * @param x X coordinate of the first cell
+	 * @param y Y coordinate of the row
+	 * @param length number of cells to write
+	 * @param states state codes of the cells
+	 * @param logOdds log-odds of the cells
+	 * @param offset index in the arrays of the first cell
+	 */
+	public void writeRow(int x, int y, int length, short[] states, float[] logOdds, int offset);
+
+	/**
+	 * Returns a cell to the unset state, as if it had never been written to
+	 * @param x X coordinate of the cell
+	 * @param y Y coordinate of the cell
+	 */
+	public void clearCell(int x, int y);
+
+	/**
+	 * @return A grid of the MapObjects in the store, indexed [y][x]
+	 */
+	public MapObject[][] getPoints();
+
+	/**
+	 * Replaces the contents of the store with the given point map, resizing the store if needed
+	 * @param points point map array, indexed [y][x]
+	 */
+	public void setPoints(MapObject[][] points);
+
+	/**
+	 * Creates a new, empty store of the kind best suited to hold a frame derived from this one
+	 * @param height height of the new store
+	 * @param width width of the new store
+	 * @return the new store
+	 */
+	public IFrameStore spawn(int height, int width);
+}
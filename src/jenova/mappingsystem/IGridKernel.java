@@ -0,0 +1,26 @@
+package jenova.mappingsystem;
+/**
+ * Interface for creating kernels which are run over a grid of values by a GridSmoother. The grid is held as a flat array in row major
+ * order. A kernel is made up of one or more passes; each pass reads the whole of one grid and writes into another, so a pass may read
+ * any point, but only the rows it is given are written. Rows may be given to the kernel in any order and from several threads at once.
+ * @author Adam Panzica
+ *
+ */
+public interface IGridKernel {
+	/**
+	 * @return The number of passes which make up the kernel
+	 */
+	public int getPasses();
+	
+	/**
+	 * Runs one pass of the kernel over a strip of rows
+	 * @param pass which pass to run, from 0 to getPasses()-1
+	 * @param source grid to read from
+	 * @param dest grid to write into
+	 * @param width width of the grid
+	 * @param height height of the grid
+	 * @param startY first row to write
+	 * @param endY row one past the last row to write
+	 */
+	public void apply(int pass, float[] source, float[] dest, int width, int height, int startY, int endY);
+}
@@ -13,6 +13,14 @@ public interface IMapPoint {
 	 * @return The Y value of the IMapPoint in Cartesian coordinates
 	 */
 	int getY();
+	/**
+	 * @return The X value of the IMapPoint in Cartesian coordinates, without rounding to a point of the map
+	 */
+	double getPreciseX();
+	/**
+	 * @return The Y value of the IMapPoint in Cartesian coordinates, without rounding to a point of the map
+	 */
+	double getPreciseY();
 	/**
 	 * @return The angle to the IMapPoint in polar coordinates
 	 */
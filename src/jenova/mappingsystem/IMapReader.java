@@ -0,0 +1,22 @@
+package jenova.mappingsystem;
+/**
+ * Interface for creating reads of a HawkEye which may run on a different thread to the one writing to it, see HawkEye.read().
+ * A reader may be run more than once, and may see the maps part way through a change on runs whose result is thrown away, so it must only
+ * read from the mapping system, and must copy out whatever it returns rather than keeping references to the maps' data.
+ * A reader may call the get methods, getObstacleDistance(), and the region queries countOccupied() and isRegionClear(), all of which only
+ * read and see the global map as of the last time the local map was saved into it. It must not call any method which changes or saves
+ * the mapping system, nor the set methods. The cast and smooth methods, updateLocation(), saveToGolbal(), snapshot(), writeSnapshot(), the
+ * enable methods, and updateDistanceField(), updateMapPyramid() and updateFrontierTracker() all throw an IllegalStateException when
+ * called from a reader while concurrent access is enabled, rather than waiting on the reader's own read forever.
+ * @author Adam Panzica
+ *
+ * @param <T> type of the result of the read
+ */
+public interface IMapReader<T> {
+	/**
+	 * Reads from the mapping system
+	 * @param map mapping system to read from
+	 * @return The result of the read
+	 */
+	public T read(HawkEye map);
+}
@@ -27,6 +27,14 @@ public interface IMapSystem {
 	 */
 	public void castPoint(IMapPoint point, MapObject data);
 	
+	/**
+	 * Casts a point on the local map at (x,y), without needing a point to be made for it
+	 * @param x X coordinate of the point on the local map, relative to the local origin
+	 * @param y Y coordinate of the point on the local map, relative to the local origin
+	 * @param data MapObject data to place at the given point
+	 */
+	public void castPoint(int x, int y, MapObject data);
+	
 	/**
 	 * Casts a line on the local map
 	 * @param startPoint Starting point of the line, relative to the local origin
@@ -37,6 +45,18 @@ public interface IMapSystem {
 	 */
 	public void castLine(IMapPoint startPoint, MapObject startPointObject, IMapPoint endPoint, MapObject endPointObject, MapObject lineObject);
 	
+	/**
+	 * Casts a line on the local map between (startX,startY) and (endX,endY), see castLine(IMapPoint, MapObject, IMapPoint, MapObject, MapObject)
+	 * @param startX X coordinate of the start point of the line, relative to the local origin
+	 * @param startY Y coordinate of the start point of the line, relative to the local origin
+	 * @param startPointObject MapObject data to place at the start point of the line
+	 * @param endX X coordinate of the end point of the line, relative to the local origin
+	 * @param endY Y coordinate of the end point of the line, relative to the local origin
+	 * @param endPointObject MapObject data to place at the end point of the line
+	 * @param lineObject MapObject data to fill at each point along the line
+	 */
+	public void castLine(int startX, int startY, MapObject startPointObject, int endX, int endY, MapObject endPointObject, MapObject lineObject);
+	
 	/**
 	 * Cast a rectangle on the local map
 	 * @param topLeft Top left point of the rectangle relative to the local origin
@@ -46,6 +66,17 @@ public interface IMapSystem {
 	 */
 	public void castRect(IMapPoint topLeft, IMapPoint bottomRight, MapObject data, boolean fill);
 	
+	/**
+	 * Cast a rectangle on the local map between (left,top) and (right,bottom), see castRect(IMapPoint, IMapPoint, MapObject, boolean)
+	 * @param left X coordinate of the top left point of the rectangle, relative to the local origin
+	 * @param top Y coordinate of the top left point of the rectangle, relative to the local origin
+	 * @param right X coordinate of the bottom right point of the rectangle, relative to the local origin
+	 * @param bottom Y coordinate of the bottom right point of the rectangle, relative to the local origin
+	 * @param data MapObject data to fill the rectangle with
+	 * @param fill True for a solid rectangle, false for edges only
+	 */
+	public void castRect(int left, int top, int right, int bottom, MapObject data, boolean fill);
+	
 	/**
 	 * Draws a circle (or fraction there of) in the frame from a center point. Follows the following rotation guide:
 	 * Positive radius, positive angle: counter clockwise from positive x axis
@@ -60,12 +91,94 @@ public interface IMapSystem {
 	 */
 	public void castCiricle(IMapPoint center, int radius, int degrees, MapObject data, boolean fill);
 	
+	/**
+	 * Draws a circle (or fraction there of) in the frame around (centerX,centerY), see castCiricle(IMapPoint, int, int, MapObject, boolean)
+	 * @param centerX X coordinate of the center of the circle relative to the local frame
+	 * @param centerY Y coordinate of the center of the circle relative to the local frame
+	 * @param radius The radius of the circle 
+	 * @param degrees The arc of the circle (E.X. 90 for quarter circle, 180 for half, 360 for full)
+	 * @param data MapObject to fill the circle with
+	 * @param fill True for a solid circle, false for an edge only circle
+	 */
+	public void castCiricle(int centerX, int centerY, int radius, int degrees, MapObject data, boolean fill);
+	
+	/**
+	 * Casts a full sweep of range readings from a scanning sensor on the local map. Every point along each beam is marked as free space,
+	 * and the end point of each beam that hit something is marked as occupied.
+	 * @param sensorPose position of the sensor relative to the local origin, and its orientation in radians counter clockwise from the local X axis
+	 * @param angles angle of each beam relative to the sensor orientation, in radians counter clockwise
+	 * @param ranges range of each beam. Beams with a range that is not positive (or not a number) are skipped
+	 * @param maxRange beams at or beyond this range are treated as having hit nothing
+	 * @param freeData MapObject data to place along each beam
+	 * @param hitData MapObject data to place at the end of each beam that hit something
+	 */
+	public void castScan(ObjectLocationData sensorPose, double[] angles, double[] ranges, double maxRange, MapObject freeData, MapObject hitData);
+	
+	/**
+	 * Casts a full sweep of range readings from a scanning sensor on the local map as occupancy evidence. Every point along each beam
+	 * has a miss applied to its occupancy log-odds, and the end point of each beam that hit something has a hit applied.
+	 * @param sensorPose position of the sensor relative to the local origin, and its orientation in radians counter clockwise from the local X axis
+	 * @param angles angle of each beam relative to the sensor orientation, in radians counter clockwise
+	 * @param ranges range of each beam. Beams with a range that is not positive (or not a number) are skipped
+	 * @param maxRange beams at or beyond this range are treated as having hit nothing
+	 * @param model OccupancyModel defining the hit and miss updates
+	 */
+	public void castScan(ObjectLocationData sensorPose, double[] angles, double[] ranges, double maxRange, OccupancyModel model);
+	
 	/**
 	 * Performs a smoothing operation on the points in the local map
 	 * @param smoothFunction ISmoother defining the smoothing operation to perform upon the local map
 	 */
 	public void smooth(ISmoother smoothFunction);
 	
+	/**
+	 * Counts the occupied points of the global map in a rectangle
+	 * @param corner one corner of the rectangle, relative to the global origin
+	 * @param oppositeCorner the opposite corner of the rectangle, relative to the global origin
+	 * @return The number of occupied points in the rectangle, including its edges
+	 */
+	public int countOccupied(IMapPoint corner, IMapPoint oppositeCorner);
+	
+	/**
+	 * Checks that no point of the global map in a rectangle is occupied
+	 * @param corner one corner of the rectangle, relative to the global origin
+	 * @param oppositeCorner the opposite corner of the rectangle, relative to the global origin
+	 * @return True if no point in the rectangle, including its edges, is occupied
+	 */
+	public boolean isRegionClear(IMapPoint corner, IMapPoint oppositeCorner);
+	
+	/**
+	 * Counts the occupied points of the global map within a distance of a center
+	 * @param center center of the circle, relative to the global origin
+	 * @param radius radius of the circle, inclusive
+	 * @return The number of occupied points in the circle
+	 */
+	public int countOccupied(IMapPoint center, double radius);
+	
+	/**
+	 * Checks that no point of the global map within a distance of a center is occupied
+	 * @param center center of the circle, relative to the global origin
+	 * @param radius radius of the circle, inclusive
+	 * @return True if no point in the circle is occupied
+	 */
+	public boolean isRegionClear(IMapPoint center, double radius);
+	
+	/**
+	 * Counts the occupied points of the global map under a robot's footprint
+	 * @param pose position of the robot relative to the global origin, and its orientation in radians counter clockwise from the global X axis
+	 * @param footprint corners of the footprint relative to the robot, in order around it. The footprint must be convex
+	 * @return The number of occupied points under the footprint, including its edges
+	 */
+	public int countOccupied(ObjectLocationData pose, IMapPoint[] footprint);
+	
+	/**
+	 * Checks that no point of the global map under a robot's footprint is occupied
+	 * @param pose position of the robot relative to the global origin, and its orientation in radians counter clockwise from the global X axis
+	 * @param footprint corners of the footprint relative to the robot, in order around it. The footprint must be convex
+	 * @return True if no point under the footprint, including its edges, is occupied
+	 */
+	public boolean isRegionClear(ObjectLocationData pose, IMapPoint[] footprint);
+	
 	/**
 	 * @return The width of the local map
 	 */
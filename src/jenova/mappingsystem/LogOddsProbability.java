@@ -0,0 +1,76 @@
+package jenova.mappingsystem;
+
+/**
+ * IProbabilityData representing the probability that a point is occupied, held as log-odds (log(p/(1-p))) so that independent pieces
+ * of evidence can be fused by simple addition
+ * @author Adam Panzica
+ *
+ */
+public class LogOddsProbability implements IProbabilityData {
+	private float logOdds;
+	private boolean updated;
+
+	/**
+	 * Constructor for creating occupancy data from a log-odds value
+	 * @param logOdds log-odds that the point is occupied
+	 */
+	public LogOddsProbability(float logOdds){
+		this.logOdds = logOdds;
+		this.updated = true;
+	}
+
+	@Override
+	public String getType() {
+		return "Occupancy";
+	}
+
+	@Override
+	public double getProb() {
+		return OccupancyModel.toProbability(this.logOdds);
+	}
+
+	/**
+	 * Updates the data probability. The change is applied to the probability, and the result converted back into log-odds
+	 * @param delta amount to change probability by
+	 * @return new probability value
+	 */
+	@Override
+	public double updateProb(double delta) {
+		double prob = Math.min(Math.max(getProb()+delta, 0.001), 0.999);
+		this.logOdds = OccupancyModel.toLogOdds(prob);
+		this.updated = true;
+		return prob;
+	}
+
+	/**
+	 * @return log-odds that the point is occupied
+	 */
+	public float getLogOdds(){
+		return this.logOdds;
+	}
+
+	/**
+	 * Sets the log-odds that the point is occupied
+	 * @param logOdds new log-odds
+	 */
+	public void setLogOdds(float logOdds){
+		if(logOdds != this.logOdds) this.updated = true;
+		this.logOdds = logOdds;
+	}
+
+	@Override
+	public boolean updated() {
+		boolean wasUpdated = this.updated;
+		this.updated = false;
+		return wasUpdated;
+	}
+
+	@Override
+	public LogOddsProbability clone(){
+		return new LogOddsProbability(this.logOdds);
+	}
+
+	public String toString(){
+		return getType()+": "+getProb();
+	}
+}
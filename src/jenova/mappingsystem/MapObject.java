@@ -9,16 +9,19 @@ import java.util.Iterator;
  * It is not intended to be a persistent object: for each refresh of the map, the MapObject should be filled with probability
  * data, and then this data should be red, interpreted, then the MapObject should be replaced by a new MapObject's worth of data using the
  * replace() method at the next map refresh.
+ * The state is held as the small integer code it is registered under in the MapStateRegistry, so MapObjects with the same state share
+ * a single copy of the state String, and comparing states is an integer compare, see getStateId(). The list of probability data is
+ * only created once there is some data to hold.
  * @author Adam Panzica
  *
  */
 public class MapObject{
 	/**
-	 * String representation of the state of the MapObject. In its simplest form, can be used to create a simple text based map from an array of map objects
+	 * Registry code of the String representation of the state of the MapObject. In its simplest form, the state can be used to create a simple text based map from an array of map objects
 	 */
-	private String state;
+	private short state;
 	/**
-	 * List of data about the probability of some physical property existing at the location represented by this map object
+	 * List of data about the probability of some physical property existing at the location represented by this map object, null while there is none
 	 */
 	private ArrayList<IProbabilityData> probabilityDataList;
 	
@@ -27,8 +30,15 @@ public class MapObject{
 	 * @param state State of the MapObject
 	 */
 	public MapObject(String state){
-		this.state=state;
-		this.probabilityDataList = new ArrayList<IProbabilityData>();
+		this.state = MapStateRegistry.intern(state);
+	}
+	
+	/**
+	 * Creates a map object with a registered state code and an empty list of probability data
+	 * @param state code of the state, see MapStateRegistry
+	 */
+	MapObject(short state){
+		this.state = state;
 	}
 	
 	/**
@@ -36,7 +46,7 @@ public class MapObject{
 	 * @param probabilityDataList List of probability data to initialize the MapObject with
 	 */
 	public MapObject(ArrayList<IProbabilityData> probabilityDataList){
-		this.state = "";
+		this.state = MapStateRegistry.intern("");
 		this.probabilityDataList = probabilityDataList;
 	}
 	
@@ -45,25 +55,34 @@ public class MapObject{
 	 * @param toCopy The MapObject to be copied into the new MapObject
 	 */
 	public MapObject(MapObject toCopy){
-		this.probabilityDataList = new ArrayList<IProbabilityData>();
 		replace(toCopy);
 	}
 	
 	/**
-	 * @return The state of the MapObject
+	 * @return The code the state of the MapObject is registered under, see MapStateRegistry. Two MapObjects have the same state exactly when they have the same code
 	 */
-	private String getState() {
+	public short getStateId() {
 		return this.state;
 	}
 	
+	/**
+	 * @param other MapObject to compare with
+	 * @return True if the other MapObject has the same state as this one
+	 */
+	public boolean hasSameState(MapObject other){
+		return this.state == other.state;
+	}
+	
 	/**
 	 * Replaces the state and IProbabiltyData of this MapObject with a copy (NOT A REFERENCE) of the state and IProbabiltyData of the passed MapObject
 	 * @param replaceWith MapObject to replace this MapObject's data with
 	 */
 	public void replace(MapObject replaceWith){
-		this.state = replaceWith.getState();
-		for(Iterator<IProbabilityData> copier = replaceWith.getProbData().iterator(); copier.hasNext();){
-			this.probabilityDataList.add( copier.next().clone());
+		this.state = replaceWith.state;
+		if(this.probabilityDataList != null) this.probabilityDataList.clear();
+		if(replaceWith.probabilityDataList == null) return;
+		for(Iterator<IProbabilityData> copier = replaceWith.probabilityDataList.iterator(); copier.hasNext();){
+			getProbData().add( copier.next().clone());
 		}
 	}
 	
@@ -71,6 +90,7 @@ public class MapObject{
 	 * @return The list of IProbabiltyData for the MapObject
 	 */
 	public ArrayList<IProbabilityData> getProbData() {
+		if(this.probabilityDataList == null) this.probabilityDataList = new ArrayList<IProbabilityData>();
 		return this.probabilityDataList;
 	}
 	
@@ -79,10 +99,50 @@ public class MapObject{
 	 * @param data New IProbabiltyData to add to the MapObject
 	 */
 	public void addProbData(IProbabilityData data){
-		this.probabilityDataList.add(data);
+		getProbData().add(data);
+	}
+
+	/**
+	 * Folds the IProbabiltyData of the MapObject into a single occupancy value, treating each piece of data as independent evidence
+	 * @return The sum of the log-odds of each IProbabiltyData in the MapObject, 0 if there is no data
+	 */
+	public float getLogOdds(){
+		if(this.probabilityDataList == null) return 0;
+		double logOdds = 0;
+		double prob;
+		IProbabilityData data;
+		for(int i=0; i<this.probabilityDataList.size(); i++){
+			data = this.probabilityDataList.get(i);
+			if(data instanceof LogOddsProbability){
+				logOdds += ((LogOddsProbability)data).getLogOdds();
+			}
+			else{
+				prob = Math.min(Math.max(data.getProb(), 0.001), 0.999);
+				logOdds += Math.log(prob/(1-prob));
+			}
+		}
+		return (float)logOdds;
+	}
+	
+	/**
+	 * Sets the state of the MapObject and replaces its IProbabiltyData with a single LogOddsProbability. If that is already all the
+	 * MapObject holds, the existing LogOddsProbability is updated in place rather than replaced.
+	 * @param state code of the new state of the MapObject
+	 * @param logOdds occupancy log-odds of the MapObject
+	 */
+	void setOccupancy(short state, float logOdds){
+		this.state = state;
+		if(this.probabilityDataList == null) this.probabilityDataList = new ArrayList<IProbabilityData>(1);
+		if(this.probabilityDataList.size() == 1 && this.probabilityDataList.get(0) instanceof LogOddsProbability){
+			((LogOddsProbability)this.probabilityDataList.get(0)).setLogOdds(logOdds);
+		}
+		else{
+			this.probabilityDataList.clear();
+			this.probabilityDataList.add(new LogOddsProbability(logOdds));
+		}
 	}
 
 	public String toString(){
-		return this.state;
+		return MapStateRegistry.getState(this.state);
 	}
 }
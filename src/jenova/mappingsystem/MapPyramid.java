@@ -0,0 +1,415 @@
+package jenova.mappingsystem;
+
+/**
+ * Class for keeping a multi-resolution summary of the occupancy of a frame. Level 0 holds every point of the frame; each point of level
+ * n+1 covers a 2x2 block of level n, and holds how many of the frame's points under it are occupied, and how many are known (have been
+ * set at all). The top level is a single point covering the whole frame.
+ * The pyramid listens to the frame, and each change to a point updates one count on each level, so keeping it costs time logarithmic in
+ * the size of the frame. Region queries descend from the top level and only open blocks which are partly inside the region, so a query
+ * over open ground, or one which finds an occupied point, touches few blocks however large the region is. Regions may be rectangles,
+ * circles, or convex polygons such as the footprint of a robot. Renderers may draw a coarse level directly instead of every point of the
+ * frame.
+ * The pyramid holds a byte per point of the frame, and two ints per block of the coarser levels.
+ * @author Adam Panzica
+ *
+ */
+public class MapPyramid implements IFrameListener {
+	private static final byte OCCUPIED = 1;
+	private static final byte KNOWN = 2;
+
+	private final Frame frame;
+	private final short occupiedState;
+	private final int width;
+	private final int height;
+	private final int levels;
+	private final byte[] flags;					//Occupied and known flags of each point of the frame
+	private final int[][] occupied;			//Number of occupied points under each block, by level (level 0 is unused)
+	private final int[][] known;				//Number of known points under each block, by level (level 0 is unused)
+
+	/**
+	 * Constructor for creating a pyramid over a frame. The pyramid is built from the points of the frame, and registers itself as a
+	 * listener on the frame to follow later changes
+	 * @param frame Frame to summarize. The frame must not change size
+	 * @param occupied MapObject whose state marks a point as occupied
+	 */
+	public MapPyramid(Frame frame, MapObject occupied){
+		this.frame = frame;
+		this.occupiedState = occupied.getStateId();
+		this.width = frame.getWidth();
+		this.height = frame.getHeight();
+		int levels = 1;
+		while((1<<(levels-1)) < Math.max(this.width, this.height)) levels++;
+		this.levels = levels;
+		this.flags = new byte[this.width*this.height];
+		this.occupied = new int[levels][];
+		this.known = new int[levels][];
+		for(int level=1; level<levels; level++){
+			this.occupied[level] = new int[getLevelWidth(level)*getLevelHeight(level)];
+			this.known[level] = new int[getLevelWidth(level)*getLevelHeight(level)];
+		}
+
+		short[] states = new short[this.width];
+		float[] logOdds = new float[this.width];
+		for(int y=0; y<this.height; y++){
+			frame.readRow(y, states, logOdds);
+			for(int x=0; x<this.width; x++){
+				this.flags[y*this.width+x] = flagsOf(states[x]);
+			}
+		}
+		build();
+		frame.addListener(this);
+	}
+
+	/**
+	 * Fills in the counts of every level from the level below it
+	 */
+	private void build(){
+		for(int level=1; level<this.levels; level++){
+			int levelWidth = getLevelWidth(level);
+			int belowWidth = getLevelWidth(level-1);
+			int belowHeight = getLevelHeight(level-1);
+			for(int y=0; y<belowHeight; y++){
+				for(int x=0; x<belowWidth; x++){
+					int block = (y>>1)*levelWidth+(x>>1);
+					this.occupied[level][block] += getOccupiedCount(level-1, x, y);
+					this.known[level][block] += getKnownCount(level-1, x, y);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the pyramid following changes to its frame
+	 */
+	public void detach(){
+		this.frame.removeListener(this);
+	}
+
+	@Override
+	public void pointChanged(Frame frame, int x, int y) {
+		if(x<0 || x>=this.width || y<0 || y>=this.height) return;
+		int index = y*this.width+x;
+		byte newFlags = flagsOf(frame.getState(x, y));
+		byte oldFlags = this.flags[index];
+		if(newFlags == oldFlags) return;
+		this.flags[index] = newFlags;
+		int occupiedChange = (newFlags&OCCUPIED)-(oldFlags&OCCUPIED);
+		int knownChange = ((newFlags&KNOWN)-(oldFlags&KNOWN))>>1;
+		for(int level=1; level<this.levels; level++){
+			int block = (y>>level)*getLevelWidth(level)+(x>>level);
+			this.occupied[level][block] += occupiedChange;
+			this.known[level][block] += knownChange;
+		}
+	}
+
+	private byte flagsOf(short state){
+		if(state == MapStateRegistry.UNSET) return 0;
+		if(state == this.occupiedState) return OCCUPIED|KNOWN;
+		return KNOWN;
+	}
+
+	/**
+	 * @return The number of levels in the pyramid, level 0 being the frame itself
+	 */
+	public int getLevels(){
+		return this.levels;
+	}
+
+	/**
+	 * @return The number of blocks across a level
+	 */
+	public int getLevelWidth(int level){
+		return ((this.width-1)>>level)+1;
+	}
+
+	/**
+	 * @return The number of blocks down a level
+	 */
+	public int getLevelHeight(int level){
+		return ((this.height-1)>>level)+1;
+	}
+
+	/**
+	 * Gets the number of occupied points under a block. NOTE: There is no bounds checking, calling function must ensure that the location is within bounds
+	 * @param level level of the block
+	 * @param x X coordinate of the block on its level
+	 * @param y Y coordinate of the block on its level
+	 * @return The number of occupied points of the frame the block covers
+	 */
+	public int getOccupiedCount(int level, int x, int y){
+		if(level == 0) return this.flags[y*this.width+x]&OCCUPIED;
+		return this.occupied[level][y*getLevelWidth(level)+x];
+	}
+
+	/**
+	 * Gets the number of known points under a block. NOTE: There is no bounds checking, calling function must ensure that the location is within bounds
+	 * @param level level of the block
+	 * @param x X coordinate of the block on its level
+	 * @param y Y coordinate of the block on its level
+	 * @return The number of points of the frame the block covers which have been set
+	 */
+	public int getKnownCount(int level, int x, int y){
+		if(level == 0) return (this.flags[y*this.width+x]&KNOWN)>>1;
+		return this.known[level][y*getLevelWidth(level)+x];
+	}
+
+	/**
+	 * @return The number of points of the frame a block covers, which is smaller than the full block along the right and bottom edges of the frame
+	 */
+	public int getBlockArea(int level, int x, int y){
+		int blockWidth = Math.min((x+1)<<level, this.width)-(x<<level);
+		int blockHeight = Math.min((y+1)<<level, this.height)-(y<<level);
+		return blockWidth*blockHeight;
+	}
+
+	/**
+	 * Counts the occupied points in a rectangle of the frame. The rectangle is clipped to the frame
+	 * @param minX X coordinate of the left edge of the rectangle
+	 * @param minY Y coordinate of the top edge of the rectangle
+	 * @param maxX X coordinate of the right edge of the rectangle, inclusive
+	 * @param maxY Y coordinate of the bottom edge of the rectangle, inclusive
+	 * @return The number of occupied points in the rectangle
+	 */
+	public int countOccupied(int minX, int minY, int maxX, int maxY){
+		return count(this.levels-1, 0, 0, new RectRegion(minX, minY, maxX, maxY), false, false);
+	}
+
+	/**
+	 * Counts the known points in a rectangle of the frame. The rectangle is clipped to the frame
+	 * @param minX X coordinate of the left edge of the rectangle
+	 * @param minY Y coordinate of the top edge of the rectangle
+	 * @param maxX X coordinate of the right edge of the rectangle, inclusive
+	 * @param maxY Y coordinate of the bottom edge of the rectangle, inclusive
+	 * @return The number of points in the rectangle which have been set
+	 */
+	public int countKnown(int minX, int minY, int maxX, int maxY){
+		return count(this.levels-1, 0, 0, new RectRegion(minX, minY, maxX, maxY), true, false);
+	}
+
+	/**
+	 * Checks that a rectangle of the frame holds no occupied points. The search stops at the first occupied block found wholly inside the
+	 * rectangle. The rectangle is clipped to the frame
+	 * @param minX X coordinate of the left edge of the rectangle
+	 * @param minY Y coordinate of the top edge of the rectangle
+	 * @param maxX X coordinate of the right edge of the rectangle, inclusive
+	 * @param maxY Y coordinate of the bottom edge of the rectangle, inclusive
+	 * @return True if no point in the rectangle is occupied
+	 */
+	public boolean isClear(int minX, int minY, int maxX, int maxY){
+		return count(this.levels-1, 0, 0, new RectRegion(minX, minY, maxX, maxY), false, true) == 0;
+	}
+
+	/**
+	 * Counts the occupied points of the frame within a distance of a center
+	 * @param centerX X coordinate of the center
+	 * @param centerY Y coordinate of the center
+	 * @param radius distance from the center, inclusive
+	 * @return The number of occupied points in the circle
+	 */
+	public int countOccupied(double centerX, double centerY, double radius){
+		return count(this.levels-1, 0, 0, new CircleRegion(centerX, centerY, radius), false, false);
+	}
+
+	/**
+	 * Checks that no point of the frame within a distance of a center is occupied. The search stops at the first occupied block found
+	 * wholly inside the circle
+	 * @param centerX X coordinate of the center
+	 * @param centerY Y coordinate of the center
+	 * @param radius distance from the center, inclusive
+	 * @return True if no point in the circle is occupied
+	 */
+	public boolean isClear(double centerX, double centerY, double radius){
+		return count(this.levels-1, 0, 0, new CircleRegion(centerX, centerY, radius), false, true) == 0;
+	}
+
+	/**
+	 * Counts the occupied points of the frame inside a convex polygon, such as the footprint of a robot placed at some pose
+	 * @param xs X coordinates of the corners of the polygon, in order around it in either direction
+	 * @param ys Y coordinates of the corners of the polygon
+	 * @return The number of occupied points in the polygon, including its edges
+	 * @throws IllegalArgumentException if the polygon has fewer than three corners or is not convex
+	 */
+	public int countOccupied(double[] xs, double[] ys){
+		return count(this.levels-1, 0, 0, new PolygonRegion(xs, ys), false, false);
+	}
+
+	/**
+	 * Checks that no point of the frame inside a convex polygon is occupied. The search stops at the first occupied block found wholly
+	 * inside the polygon
+	 * @param xs X coordinates of the corners of the polygon, in order around it in either direction
+	 * @param ys Y coordinates of the corners of the polygon
+	 * @return True if no point in the polygon, including its edges, is occupied
+	 * @throws IllegalArgumentException if the polygon has fewer than three corners or is not convex
+	 */
+	public boolean isClear(double[] xs, double[] ys){
+		return count(this.levels-1, 0, 0, new PolygonRegion(xs, ys), false, true) == 0;
+	}
+
+	/**
+	 * Counts the occupied or known points of a block which fall in a region, opening the block only if it is partly inside the region
+	 * @param stopAtFirst true to return as soon as any point is counted
+	 */
+	private int count(int level, int blockX, int blockY, Region region, boolean countKnown, boolean stopAtFirst){
+		int left = blockX<<level;
+		int top = blockY<<level;
+		int right = Math.min(((blockX+1)<<level), this.width)-1;
+		int bottom = Math.min(((blockY+1)<<level), this.height)-1;
+		int overlap = region.overlap(left, top, right, bottom);
+		if(overlap == Region.OUTSIDE) return 0;
+		int total = countKnown ? getKnownCount(level, blockX, blockY) : getOccupiedCount(level, blockX, blockY);
+		if(total == 0 || level == 0 || overlap == Region.INSIDE) return total;
+		total = 0;
+		for(int child=0; child<4; child++){
+			int childX = (blockX<<1)+(child&1);
+			int childY = (blockY<<1)+(child>>1);
+			if(childX >= getLevelWidth(level-1) || childY >= getLevelHeight(level-1)) continue;
+			total += count(level-1, childX, childY, region, countKnown, stopAtFirst);
+			if(stopAtFirst && total > 0) return total;
+		}
+		return total;
+	}
+
+	/**
+	 * Interface for the shapes the pyramid can be queried over. A shape says whether the points of a rectangular block of the frame are
+	 * all inside it, all outside it, or possibly some of each; it must never say INSIDE or OUTSIDE wrongly, and must answer exactly for a
+	 * block of a single point
+	 */
+	private interface Region{
+		static final int OUTSIDE = 0;
+		static final int INSIDE = 1;
+		static final int PARTIAL = 2;
+
+		int overlap(int left, int top, int right, int bottom);
+	}
+
+	private static class RectRegion implements Region{
+		private final int minX;
+		private final int minY;
+		private final int maxX;
+		private final int maxY;
+
+		RectRegion(int minX, int minY, int maxX, int maxY){
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+		}
+
+		@Override
+		public int overlap(int left, int top, int right, int bottom) {
+			if(left>this.maxX || right<this.minX || top>this.maxY || bottom<this.minY) return OUTSIDE;
+			if(left>=this.minX && right<=this.maxX && top>=this.minY && bottom<=this.maxY) return INSIDE;
+			return PARTIAL;
+		}
+	}
+
+	private static class CircleRegion implements Region{
+		private final double centerX;
+		private final double centerY;
+		private final double squaredRadius;
+
+		CircleRegion(double centerX, double centerY, double radius){
+			this.centerX = centerX;
+			this.centerY = centerY;
+			this.squaredRadius = radius*radius;
+		}
+
+		@Override
+		public int overlap(int left, int top, int right, int bottom) {
+			//The nearest point of the block decides whether any of it is inside, the furthest corner whether all of it is
+			double nearX = Math.max(left, Math.min(right, this.centerX))-this.centerX;
+			double nearY = Math.max(top, Math.min(bottom, this.centerY))-this.centerY;
+			if(nearX*nearX+nearY*nearY > this.squaredRadius) return OUTSIDE;
+			double farX = Math.max(this.centerX-left, right-this.centerX);
+			double farY = Math.max(this.centerY-top, bottom-this.centerY);
+			if(farX*farX+farY*farY <= this.squaredRadius) return INSIDE;
+			return PARTIAL;
+		}
+	}
+
+	private static class PolygonRegion implements Region{
+		private final double[] xs;
+		private final double[] ys;
+		private final double sign;						//1 if the corners run counter clockwise, -1 if clockwise
+		private final double minX;
+		private final double minY;
+		private final double maxX;
+		private final double maxY;
+
+		PolygonRegion(double[] xs, double[] ys){
+			if(xs.length < 3 || xs.length != ys.length) throw new IllegalArgumentException("A polygon needs at least three corners");
+			this.xs = xs;
+			this.ys = ys;
+			double sign = 0;
+			double turning = 0;							//Total of the exterior angles, 2 pi for a convex polygon
+			double minX = xs[0];
+			double minY = ys[0];
+			double maxX = xs[0];
+			double maxY = ys[0];
+			for(int corner=0; corner<xs.length; corner++){
+				int next = (corner+1)%xs.length;
+				int after = (corner+2)%xs.length;
+				double turn = (xs[next]-xs[corner])*(ys[after]-ys[next])-(ys[next]-ys[corner])*(xs[after]-xs[next]);
+				double ahead = (xs[next]-xs[corner])*(xs[after]-xs[next])+(ys[next]-ys[corner])*(ys[after]-ys[next]);
+				if(turn != 0){
+					if(sign == 0) sign = Math.signum(turn);
+					else if(Math.signum(turn) != sign) throw new IllegalArgumentException("The polygon must be convex");
+				}
+				turning += Math.atan2(turn, ahead);
+				minX = Math.min(minX, xs[corner]);
+				minY = Math.min(minY, ys[corner]);
+				maxX = Math.max(maxX, xs[corner]);
+				maxY = Math.max(maxY, ys[corner]);
+			}
+			if(sign == 0) throw new IllegalArgumentException("The polygon must enclose an area");
+			//Turning the same way at every corner is not enough: a star turns the same way but winds around more than once
+			if(Math.abs(turning) > 2*Math.PI+1e-6) throw new IllegalArgumentException("The polygon must be convex");
+			this.sign = sign;
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+		}
+
+		@Override
+		public int overlap(int left, int top, int right, int bottom) {
+			if(left>this.maxX || right<this.minX || top>this.maxY || bottom<this.minY) return OUTSIDE;
+			//The polygon is convex, so the block is inside it if all four corners are, and outside it if all four are beyond one edge
+			boolean inside = true;
+			for(int corner=0; corner<this.xs.length; corner++){
+				int next = (corner+1)%this.xs.length;
+				double edgeX = this.xs[next]-this.xs[corner];
+				double edgeY = this.ys[next]-this.ys[corner];
+				int beyond = 0;
+				if(side(edgeX, edgeY, corner, left, top) < 0) beyond++;
+				if(side(edgeX, edgeY, corner, right, top) < 0) beyond++;
+				if(side(edgeX, edgeY, corner, left, bottom) < 0) beyond++;
+				if(side(edgeX, edgeY, corner, right, bottom) < 0) beyond++;
+				if(beyond == 4) return OUTSIDE;
+				if(beyond > 0) inside = false;
+			}
+			return inside ? INSIDE : PARTIAL;
+		}
+
+		/**
+		 * @return How far a point is on the inner side of an edge, negative if it is outside
+		 */
+		private double side(double edgeX, double edgeY, int corner, double x, double y){
+			return this.sign*(edgeX*(y-this.ys[corner])-edgeY*(x-this.xs[corner]));
+		}
+	}
+
+	/**
+	 * @return The width of the frame the pyramid summarizes
+	 */
+	public int getWidth(){
+		return this.width;
+	}
+
+	/**
+	 * @return The height of the frame the pyramid summarizes
+	 */
+	public int getHeight(){
+		return this.height;
+	}
+}
@@ -0,0 +1,56 @@
+package jenova.mappingsystem;
+
+import java.util.HashMap;
+
+/**
+ * Registry for translating MapObject state Strings into compact state codes. Every MapObject holds the code of its state rather than
+ * the String, so each distinct state String is kept once however many points hold it, and stores which do not keep a MapObject per cell
+ * can still reproduce the state of each cell. Codes are handed out on first use and remain valid for the life of the process, so a
+ * caller which tests points for a state can look its code up once and compare codes from then on.
+ * @author Adam Panzica
+ *
+ */
+public final class MapStateRegistry {
+	/**
+	 * State code reserved for cells which have never been set
+	 */
+	public static final short UNSET = 0;
+
+	private static final HashMap<String, Short> codes = new HashMap<String, Short>();
+	private static volatile String[] states = new String[16];
+	private static int stateCount = 1;
+
+	private MapStateRegistry(){
+	}
+
+	/**
+	 * Looks up the code for a state, registering the state if it has not been seen before
+	 * @param state State String to look up
+	 * @return The state code for the given state
+	 */
+	public static synchronized short intern(String state){
+		Short code = codes.get(state);
+		if(code != null) return code.shortValue();
+		if(stateCount > Short.MAX_VALUE) throw new IllegalStateException("Too many distinct map states, cannot register '"+state+"'");
+
+		String[] current = states;
+		if(stateCount == current.length){
+			String[] grown = new String[current.length*2];
+			System.arraycopy(current, 0, grown, 0, current.length);
+			current = grown;
+		}
+		current[stateCount] = state;
+		states = current;
+		code = Short.valueOf((short)stateCount++);
+		codes.put(state, code);
+		return code.shortValue();
+	}
+
+	/**
+	 * @param code State code to look up
+	 * @return The state String registered under the code
+	 */
+	public static String getState(short code){
+		return states[code];
+	}
+}
@@ -0,0 +1,70 @@
+package jenova.mappingsystem;
+
+/**
+ * Class for representing an immutable view of a HawkEye as it was at some moment, see HawkEye.snapshot(). The view holds a snapshot of
+ * the global map, which shares its unchanged tiles with the live map, together with the location of the local frame at that moment,
+ * so it can be handed to a planner or logger on another thread and read for as long as needed while the live map carries on changing.
+ * @author Adam Panzica
+ *
+ */
+public class MapView {
+	private final Frame globalMap;
+	private final CartCoord globalOffset;
+	private final ObjectLocationData localLocation;
+
+	/**
+	 * @param globalMap snapshot of the global map
+	 * @param globalOffset origin offset inside the global map
+	 * @param localLocation origin relative location of the local frame in the global map
+	 */
+	MapView(Frame globalMap, CartCoord globalOffset, ObjectLocationData localLocation){
+		this.globalMap = globalMap;
+		this.globalOffset = globalOffset;
+		this.localLocation = localLocation;
+	}
+
+	/**
+	 * Retrieves a single point of the global map. NOTE: There is no bounds checking, calling function must ensure that the location is
+	 * within the global map
+	 * @param point origin relative point in the global map
+	 * @return The MapObject at the point, or null if it had never been set
+	 */
+	public MapObject getPoint(IMapPoint point){
+		return this.globalMap.getPoint(point.getX()+this.globalOffset.getX(), point.getY()+this.globalOffset.getY());
+	}
+
+	/**
+	 * @return The snapshot of the global map. Writing to it throws an UnsupportedOperationException
+	 */
+	public Frame getGlobalMap(){
+		return this.globalMap;
+	}
+
+	/**
+	 * @return The location of the origin inside the global map
+	 */
+	public CartCoord getGlobalOrigin(){
+		return this.globalOffset;
+	}
+
+	/**
+	 * @return The origin relative location of the local frame in the global map at the moment the view was taken
+	 */
+	public ObjectLocationData getLocalLocation(){
+		return this.localLocation;
+	}
+
+	/**
+	 * @return The width of the global map
+	 */
+	public int getGlobalMapWidth(){
+		return this.globalMap.getWidth();
+	}
+
+	/**
+	 * @return The height of the global map
+	 */
+	public int getGlobalMapHeight(){
+		return this.globalMap.getHeight();
+	}
+}
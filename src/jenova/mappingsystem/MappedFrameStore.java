@@ -0,0 +1,356 @@
+package jenova.mappingsystem;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Frame store which keeps its cells in a memory mapped file, so that a map survives restarts and can be shared between runs. Reopening
+ * a map only reads the header; cells are paged in by the OS as they are touched, and modified pages are written back by the OS rather
+ * than by a blocking save (call force() to write them out immediately).
+ *
+ * The file is little endian and laid out as:
+ * a HEADER_SIZE byte header holding the magic number, format version, width, height, the origin of the map, and a palette of the
+ * state Strings used in the file; then a state code (short) per cell; then an occupancy log-odds (float) per cell. Both cell lanes are
+ * in row major order. State codes are indexes into the file's palette, so they stay valid across runs no matter what codes the
+ * states are given by the running process. Palette entry 0 is always the state the map was created with, which lets a newly created,
+ * zero filled file read as the initial state without writing to every cell.
+ * @author Adam Panzica
+ *
+ */
+public class MappedFrameStore implements IFrameStore, Closeable {
+	/**
+	 * Magic number at the start of every map file ("JHMF")
+	 */
+	public static final int MAGIC = 0x4A484D46;
+	/**
+	 * Version of the map file format written by this class
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * Size of the file header in bytes, the cell lanes start immediately after it
+	 */
+	public static final int HEADER_SIZE = 16384;
+
+	private static final int MAGIC_OFFSET = 0;
+	private static final int VERSION_OFFSET = 4;
+	private static final int WIDTH_OFFSET = 8;
+	private static final int HEIGHT_OFFSET = 12;
+	private static final int ORIGIN_X_OFFSET = 16;
+	private static final int ORIGIN_Y_OFFSET = 20;
+	private static final int PALETTE_COUNT_OFFSET = 24;
+	private static final int PALETTE_END_OFFSET = 28;
+	private static final int PALETTE_OFFSET = 64;
+	private static final int SEGMENT_SHIFT = 27;			//Cells per mapped segment (as a power of 2), keeps each mapping under 2GB
+	private static final int SEGMENT_MASK = (1<<SEGMENT_SHIFT)-1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final MappedByteBuffer[] stateSegments;
+	private final MappedByteBuffer[] logOddsSegments;
+	private final int height;
+	private final int width;
+	private short[] toRegistry;						//File state code -> registry state code
+	private short[] toFile;							//Registry state code -> file state code, -1 if not in the palette yet
+	private int paletteCount;
+
+	/**
+	 * Creates a new map file, overwriting any file already at that location
+	 * @param mapFile file to create
+	 * @param height height of the map
+	 * @param width width of the map
+	 * @param origin location of the origin of the map, saved in the header for whoever reopens the map
+	 * @param baseObj Base MapObject which all cells in the map start as
+	 * @return A store over the new file
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	public static MappedFrameStore create(File mapFile, int height, int width, IMapPoint origin, MapObject baseObj) throws IOException{
+		RandomAccessFile file = new RandomAccessFile(mapFile, "rw");
+		try{
+			file.setLength(0);
+			file.setLength(HEADER_SIZE+(long)height*width*6);
+			MappedByteBuffer header = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC_OFFSET, MAGIC);
+			header.putInt(VERSION_OFFSET, VERSION);
+			header.putInt(WIDTH_OFFSET, width);
+			header.putInt(HEIGHT_OFFSET, height);
+			header.putInt(ORIGIN_X_OFFSET, origin.getX());
+			header.putInt(ORIGIN_Y_OFFSET, origin.getY());
+			header.putInt(PALETTE_COUNT_OFFSET, 0);
+			header.putInt(PALETTE_END_OFFSET, PALETTE_OFFSET);
+			MappedFrameStore store = new MappedFrameStore(file, header);
+			store.addToPalette(baseObj.getStateId());
+			float baseLogOdds = baseObj.getLogOdds();
+			if(baseLogOdds != 0){
+				for(long index=0; index<(long)height*width; index++){
+					store.logOddsSegments[(int)(index>>>SEGMENT_SHIFT)].putFloat(((int)index&SEGMENT_MASK)<<2, baseLogOdds);
+				}
+			}
+			return store;
+		}catch(IOException e){
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens an existing map file
+	 * @param mapFile file to open
+	 * @return A store over the file
+	 * @throws IOException if the file cannot be read, or is not a map file of a supported version
+	 */
+	public static MappedFrameStore open(File mapFile) throws IOException{
+		RandomAccessFile file = new RandomAccessFile(mapFile, "rw");
+		try{
+			if(file.length() < HEADER_SIZE) throw new IOException(mapFile+" is too short to be a map file");
+			MappedByteBuffer header = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if(header.getInt(MAGIC_OFFSET) != MAGIC) throw new IOException(mapFile+" is not a map file");
+			if(header.getInt(VERSION_OFFSET) != VERSION) throw new IOException(mapFile+" is map file version "+header.getInt(VERSION_OFFSET)+", only version "+VERSION+" is supported");
+			if(file.length() < HEADER_SIZE+(long)header.getInt(HEIGHT_OFFSET)*header.getInt(WIDTH_OFFSET)*6) throw new IOException(mapFile+" is truncated");
+			MappedFrameStore store = new MappedFrameStore(file, header);
+			store.loadPalette();
+			return store;
+		}catch(IOException e){
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Maps the cell lanes of a file whose header has been written
+	 */
+	private MappedFrameStore(RandomAccessFile file, MappedByteBuffer header) throws IOException{
+		this.file = file;
+		this.channel = file.getChannel();
+		this.header = header;
+		this.width = header.getInt(WIDTH_OFFSET);
+		this.height = header.getInt(HEIGHT_OFFSET);
+		long cells = (long)this.width*this.height;
+		int segments = (int)((cells+SEGMENT_MASK)>>>SEGMENT_SHIFT);
+		this.stateSegments = new MappedByteBuffer[segments];
+		this.logOddsSegments = new MappedByteBuffer[segments];
+		for(int segment=0; segment<segments; segment++){
+			long first = (long)segment<<SEGMENT_SHIFT;
+			long count = Math.min(cells-first, 1L<<SEGMENT_SHIFT);
+			this.stateSegments[segment] = this.channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE+first*2, count*2);
+			this.stateSegments[segment].order(ByteOrder.LITTLE_ENDIAN);
+			this.logOddsSegments[segment] = this.channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE+cells*2+first*4, count*4);
+			this.logOddsSegments[segment].order(ByteOrder.LITTLE_ENDIAN);
+		}
+		this.toRegistry = new short[16];
+		this.toFile = new short[16];
+		Arrays.fill(this.toFile, (short)-1);
+		this.paletteCount = 0;
+	}
+
+	/**
+	 * @return The origin of the map, as saved in the file header
+	 */
+	public CartCoord getOrigin(){
+		return new CartCoord(this.header.getInt(ORIGIN_X_OFFSET), this.header.getInt(ORIGIN_Y_OFFSET));
+	}
+
+	@Override
+	public int getWidth() {
+		return this.width;
+	}
+
+	@Override
+	public int getHeight() {
+		return this.height;
+	}
+
+	@Override
+	public MapObject getPoint(int x, int y) {
+		short state = getState(x, y);
+		if(state == MapStateRegistry.UNSET) return null;
+		MapObject view = new MapObject(state);
+		float cellLogOdds = getLogOdds(x, y);
+		if(cellLogOdds != 0) view.addProbData(new LogOddsProbability(cellLogOdds));
+		return view;
+	}
+
+	@Override
+	public void setPoint(int x, int y, MapObject object) {
+		setCell(x, y, object.getStateId(), object.getLogOdds());
+	}
+
+	@Override
+	public short getState(int x, int y) {
+		long index = (long)y*this.width+x;
+		return this.toRegistry[this.stateSegments[(int)(index>>>SEGMENT_SHIFT)].getShort(((int)index&SEGMENT_MASK)<<1)];
+	}
+
+	@Override
+	public float getLogOdds(int x, int y) {
+		long index = (long)y*this.width+x;
+		return this.logOddsSegments[(int)(index>>>SEGMENT_SHIFT)].getFloat(((int)index&SEGMENT_MASK)<<2);
+	}
+
+	@Override
+	public void copyCell(int x, int y, IFrameStore source, int sourceX, int sourceY) {
+		short state = source.getState(sourceX, sourceY);
+		if(state == MapStateRegistry.UNSET) return;
+		setCell(x, y, state, source.getLogOdds(sourceX, sourceY));
+	}
+
+	@Override
+	public void setCell(int x, int y, short state, float logOdds) {
+		if(state == MapStateRegistry.UNSET) logOdds = 0;
+		short fileState = state < this.toFile.length ? this.toFile[state] : -1;
+		if(fileState < 0) fileState = addToPalette(state);
+		long index = (long)y*this.width+x;
+		int segment = (int)(index>>>SEGMENT_SHIFT);
+		this.stateSegments[segment].putShort(((int)index&SEGMENT_MASK)<<1, fileState);
+		this.logOddsSegments[segment].putFloat(((int)index&SEGMENT_MASK)<<2, logOdds);
+	}
+
+	@Override
+	public void readRow(int x, int y, int length, short[] states, float[] logOdds, int offset) {
+		for(int i=0; i<length; i++){
+			states[offset+i] = getState(x+i, y);
+			logOdds[offset+i] = getLogOdds(x+i, y);
+		}
+	}
+
+	@Override
+	public void writeRow(int x, int y, int length, short[] states, float[] logOdds, int offset) {
+		for(int i=0; i<length; i++){
+			setCell(x+i, y, states[offset+i], logOdds[offset+i]);
+		}
+	}
+
+	@Override
+	public void clearCell(int x, int y) {
+		setCell(x, y, MapStateRegistry.UNSET, 0);
+	}
+
+	/**
+	 * @return A newly created grid of MapObject views of the store. Changes made to these MapObjects are not written back to the store.
+	 * NOTE: This creates a MapObject for every cell in the store, paging in the whole file
+	 */
+	@Override
+	public MapObject[][] getPoints() {
+		MapObject[][] points = new MapObject[this.height][this.width];
+		for(int y=0;y<this.height;y++){
+			for(int x=0;x<this.width;x++){
+				points[y][x] = getPoint(x, y);
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * The size of a mapped store is fixed by its file, so the point map must match the size of the store
+	 * @throws IllegalArgumentException if the point map is a different size from the store
+	 */
+	@Override
+	public void setPoints(MapObject[][] points) {
+		if(points.length != this.height || points[0].length != this.width){
+			throw new IllegalArgumentException("Cannot resize a mapped store from "+this.width+"x"+this.height+" to "+points[0].length+"x"+points.length);
+		}
+		for(int y=0;y<this.height;y++){
+			for(int x=0;x<this.width;x++){
+				if(points[y][x] != null) setPoint(x, y, points[y][x]);
+				else clearCell(x, y);
+			}
+		}
+	}
+
+	/**
+	 * Frames derived from a mapped store are working copies which do not need to persist, so they are given a PackedFrameStore
+	 */
+	@Override
+	public IFrameStore spawn(int height, int width) {
+		return new PackedFrameStore(height, width);
+	}
+
+	/**
+	 * Forces all changes made to the store out to the file, blocking until they have been written
+	 */
+	public void force(){
+		this.header.force();
+		for(int segment=0; segment<this.stateSegments.length; segment++){
+			this.stateSegments[segment].force();
+			this.logOddsSegments[segment].force();
+		}
+	}
+
+	/**
+	 * Forces all changes out to the file and closes it. The store must not be used after it has been closed
+	 */
+	@Override
+	public void close() throws IOException {
+		force();
+		this.file.close();
+	}
+
+	/**
+	 * Reads the palette out of the header of an existing file
+	 */
+	private void loadPalette() throws IOException{
+		int count = this.header.getInt(PALETTE_COUNT_OFFSET);
+		int offset = PALETTE_OFFSET;
+		short length;
+		String state;
+		for(int entry=0; entry<count; entry++){
+			length = this.header.getShort(offset);
+			offset += 2;
+			if(length < 0) state = null;
+			else{
+				if(offset+length > HEADER_SIZE) throw new IOException("Map file palette is corrupt");
+				byte[] bytes = new byte[length];
+				for(int i=0; i<length; i++) bytes[i] = this.header.get(offset+i);
+				state = new String(bytes, UTF8);
+				offset += length;
+			}
+			mapPaletteEntry(entry, state == null ? MapStateRegistry.UNSET : MapStateRegistry.intern(state));
+		}
+	}
+
+	/**
+	 * Appends a state to the file's palette, writing it into the header
+	 * @param state registry code of the state
+	 * @return the file code of the state
+	 */
+	private short addToPalette(short state){
+		String stateString = state == MapStateRegistry.UNSET ? null : MapStateRegistry.getState(state);
+		byte[] bytes = stateString == null ? new byte[0] : stateString.getBytes(UTF8);
+		int offset = this.header.getInt(PALETTE_END_OFFSET);
+		if(offset+2+bytes.length > HEADER_SIZE || this.paletteCount >= Short.MAX_VALUE){
+			throw new IllegalStateException("Map file palette is full, cannot add state '"+stateString+"'");
+		}
+		this.header.putShort(offset, stateString == null ? (short)-1 : (short)bytes.length);
+		for(int i=0; i<bytes.length; i++) this.header.put(offset+2+i, bytes[i]);
+		this.header.putInt(PALETTE_END_OFFSET, offset+2+bytes.length);
+		this.header.putInt(PALETTE_COUNT_OFFSET, this.paletteCount+1);
+		return mapPaletteEntry(this.paletteCount, state);
+	}
+
+	/**
+	 * Records the translation between a file code and a registry code
+	 * @return the file code
+	 */
+	private short mapPaletteEntry(int fileState, short state){
+		if(fileState >= this.toRegistry.length) this.toRegistry = Arrays.copyOf(this.toRegistry, Math.max(this.toRegistry.length*2, fileState+1));
+		if(state >= this.toFile.length){
+			int oldLength = this.toFile.length;
+			this.toFile = Arrays.copyOf(this.toFile, Math.max(oldLength*2, state+1));
+			Arrays.fill(this.toFile, oldLength, this.toFile.length, (short)-1);
+		}
+		this.toRegistry[fileState] = state;
+		if(this.toFile[state] < 0) this.toFile[state] = (short)fileState;
+		this.paletteCount = Math.max(this.paletteCount, fileState+1);
+		return (short)fileState;
+	}
+}
@@ -0,0 +1,88 @@
+package jenova.mappingsystem;
+/**
+ * IGridKernel which dilates (takes the maximum) or erodes (takes the minimum) the grid over a square window, run as a horizontal pass
+ * followed by a vertical pass. Dilating the occupancy log-odds of a map inflates its obstacles by the radius of the window, eroding them
+ * shrinks obstacles and grows free space. Points beyond the edge of the grid are ignored.
+ * @author Adam Panzica
+ *
+ */
+public class MorphologyKernel implements IGridKernel {
+	private final int radius;
+	private final boolean dilate;
+	
+	/**
+	 * Constructor for creating a morphology kernel
+	 * @param radius number of points on either side of the center which make up the window
+	 * @param dilate True to dilate, false to erode
+	 */
+	public MorphologyKernel(int radius, boolean dilate){
+		this.radius = radius;
+		this.dilate = dilate;
+	}
+	
+	/**
+	 * Creates a kernel which dilates the grid, see MorphologyKernel(int, boolean)
+	 */
+	public static MorphologyKernel dilate(int radius){
+		return new MorphologyKernel(radius, true);
+	}
+	
+	/**
+	 * Creates a kernel which erodes the grid, see MorphologyKernel(int, boolean)
+	 */
+	public static MorphologyKernel erode(int radius){
+		return new MorphologyKernel(radius, false);
+	}
+	
+	/**
+	 * @return number of points on either side of the center which make up the window
+	 */
+	public int getRadius(){
+		return this.radius;
+	}
+	
+	@Override
+	public int getPasses() {
+		return 2;
+	}
+	
+	@Override
+	public void apply(int pass, float[] source, float[] dest, int width, int height, int startY, int endY) {
+		int row;
+		int from;
+		int to;
+		float value;
+		if(pass == 0){
+			for(int y=startY; y<endY; y++){
+				row = y*width;
+				for(int x=0; x<width; x++){
+					from = Math.max(x-this.radius, 0);
+					to = Math.min(x+this.radius, width-1);
+					value = source[row+from];
+					for(int sample=from+1; sample<=to; sample++){
+						value = this.dilate ? Math.max(value, source[row+sample]) : Math.min(value, source[row+sample]);
+					}
+					dest[row+x] = value;
+				}
+			}
+		}
+		else{
+			//Combine whole rows at a time, so the inner loop runs straight along memory
+			for(int y=startY; y<endY; y++){
+				row = y*width;
+				from = Math.max(y-this.radius, 0);
+				to = Math.min(y+this.radius, height-1);
+				System.arraycopy(source, from*width, dest, row, width);
+				for(int sample=from+1; sample<=to; sample++){
+					int sampleRow = sample*width;
+					if(this.dilate){
+						for(int x=0; x<width; x++) dest[row+x] = Math.max(dest[row+x], source[sampleRow+x]);
+					}
+					else{
+						for(int x=0; x<width; x++) dest[row+x] = Math.min(dest[row+x], source[sampleRow+x]);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package jenova.mappingsystem;
+/**
+ * Class representing a Cartesian coordinate which can be changed after it is made. A MutableCoord is meant to be kept by its owner as
+ * scratch space and reused for every point it passes to, or gets back from, the map, so that a loop over many points allocates nothing.
+ * Like a PreciseCoord it keeps the exact value it is set to, and rounds to the nearest point through getX() and getY(). A MutableCoord
+ * must not be kept by anything other than its owner, since its value is only good until the owner next sets it.
+ * @author Adam Panzica
+ *
+ */
+public class MutableCoord implements IMapPoint {
+	private double xVal;
+	private double yVal;
+
+	/**
+	 * Constructor for creating a MutableCoord at (0,0)
+	 */
+	public MutableCoord(){
+		this(0, 0);
+	}
+
+	/**
+	 * Constructor for creating a MutableCoord from x and y values
+	 * @param xVal the X value of the Cartesian coordinate
+	 * @param yVal the Y value of the Cartesian coordinate
+	 */
+	public MutableCoord(double xVal, double yVal){
+		this.xVal = xVal;
+		this.yVal = yVal;
+	}
+
+	/**
+	 * Sets the value of the coordinate
+	 * @param xVal the new X value of the Cartesian coordinate
+	 * @param yVal the new Y value of the Cartesian coordinate
+	 * @return This coordinate, so that it can be passed straight on
+	 */
+	public MutableCoord set(double xVal, double yVal){
+		this.xVal = xVal;
+		this.yVal = yVal;
+		return this;
+	}
+
+	/**
+	 * Sets the value of the coordinate to that of another point, keeping as much precision as the point holds
+	 * @param point IMapPoint to copy
+	 * @return This coordinate, so that it can be passed straight on
+	 */
+	public MutableCoord set(IMapPoint point){
+		return set(point.getPreciseX(), point.getPreciseY());
+	}
+
+	@Override
+	public double getRange() {
+		return Math.sqrt(this.xVal*this.xVal+this.yVal*this.yVal);
+	}
+
+	@Override
+	public double getTheta() {
+		return Math.atan2(this.yVal, this.xVal);
+	}
+
+	@Override
+	public int getThetaD() {
+		return (int)Math.round((getTheta()*(double)180/Math.PI));
+	}
+
+	/**
+	 * @return The X value rounded to the nearest point
+	 */
+	@Override
+	public int getX() {
+		return (int)Math.round(this.xVal);
+	}
+
+	/**
+	 * @return The Y value rounded to the nearest point
+	 */
+	@Override
+	public int getY() {
+		return (int)Math.round(this.yVal);
+	}
+
+	@Override
+	public double getPreciseX() {
+		return this.xVal;
+	}
+
+	@Override
+	public double getPreciseY() {
+		return this.yVal;
+	}
+
+	public String toString(){
+		return "("+this.xVal+","+this.yVal+")";
+	}
+}
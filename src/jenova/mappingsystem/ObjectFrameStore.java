@@ -0,0 +1,134 @@
+package jenova.mappingsystem;
+
+/**
+ * Frame store which keeps a full MapObject for every cell. This preserves all IProbabilityData placed in the frame, at the cost
+ * of one heap object (plus its probability list) per cell.
+ * @author Adam Panzica
+ *
+ */
+public class ObjectFrameStore implements IFrameStore {
+	private MapObject[][] points;
+	private int height;
+	private int width;
+
+	/**
+	 * Constructor to create a store with every cell unset
+	 * @param height height of the store
+	 * @param width width of the store
+	 */
+	public ObjectFrameStore(int height, int width){
+		this.points = new MapObject[height][width];
+		this.height = height;
+		this.width = width;
+	}
+
+	/**
+	 * Constructor to create a store initialized to some base MapObject
+	 * @param height height of the store
+	 * @param width width of the store
+	 * @param baseObj Base MapObject to initialize all cells in the store to
+	 */
+	public ObjectFrameStore(int height, int width, MapObject baseObj){
+		this(height, width);
+		for(int y=0;y<height;y++){
+			for(int x=0;x<width;x++){
+				points[y][x] = new MapObject(baseObj);
+			}
+		}
+	}
+
+	@Override
+	public int getWidth() {
+		return this.width;
+	}
+
+	@Override
+	public int getHeight() {
+		return this.height;
+	}
+
+	@Override
+	public MapObject getPoint(int x, int y) {
+		return this.points[y][x];
+	}
+
+	/**
+	 * Creates a new MapObject if one does not already exist at that location, otherwise overwrites the data already at that point.
+	 */
+	@Override
+	public void setPoint(int x, int y, MapObject object) {
+		if(points[y][x] == null) points[y][x] = new MapObject(object);
+		else points[y][x].replace(object);
+	}
+
+	@Override
+	public short getState(int x, int y) {
+		if(points[y][x] == null) return MapStateRegistry.UNSET;
+		return points[y][x].getStateId();
+	}
+
+	@Override
+	public float getLogOdds(int x, int y) {
+		if(points[y][x] == null) return 0;
+		return points[y][x].getLogOdds();
+	}
+
+	@Override
+	public void copyCell(int x, int y, IFrameStore source, int sourceX, int sourceY) {
+		MapObject sourceObj = source.getPoint(sourceX, sourceY);
+		if(sourceObj != null) setPoint(x, y, sourceObj);
+	}
+
+	/**
+	 * The state and log-odds are written into the MapObject already at the cell where there is one, see MapObject.setOccupancy()
+	 */
+	@Override
+	public void setCell(int x, int y, short state, float logOdds) {
+		if(state == MapStateRegistry.UNSET){
+			points[y][x] = null;
+			return;
+		}
+		if(points[y][x] == null) points[y][x] = new MapObject(state);
+		points[y][x].setOccupancy(state, logOdds);
+	}
+
+	@Override
+	public void readRow(int x, int y, int length, short[] states, float[] logOdds, int offset) {
+		for(int i=0; i<length; i++){
+			states[offset+i] = getState(x+i, y);
+			logOdds[offset+i] = getLogOdds(x+i, y);
+		}
+	}
+
+	@Override
+	public void writeRow(int x, int y, int length, short[] states, float[] logOdds, int offset) {
+		for(int i=0; i<length; i++){
+			setCell(x+i, y, states[offset+i], logOdds[offset+i]);
+		}
+	}
+
+	@Override
+	public void clearCell(int x, int y) {
+		this.points[y][x] = null;
+	}
+
+	/**
+	 * @return The live grid of MapObjects backing the store
+	 */
+	@Override
+	public MapObject[][] getPoints() {
+		return this.points;
+	}
+
+	@Override
+	public void setPoints(MapObject[][] points) {
+		this.points = points;
+		this.height = points.length;
+		this.width = points[0].length;
+	}
+
+	@Override
+	public IFrameStore spawn(int height, int width) {
+		return new ObjectFrameStore(height, width);
+	}
+}
@@ -26,7 +26,7 @@ public class ObjectLocationData implements IMapPoint {
 	 * @param position new position of the object
 	 * @param orientation new orientation of the object
 	 */
-	public void updateLocation(CartCoord position, double orientation){
+	public void updateLocation(IMapPoint position, double orientation){
 		this.position=position;
 		this.orientation=orientation;
 	}
@@ -66,6 +66,16 @@ public class ObjectLocationData implements IMapPoint {
 	public int getY() {
 		return position.getY();
 	}
+
+	@Override
+	public double getPreciseX() {
+		return position.getPreciseX();
+	}
+
+	@Override
+	public double getPreciseY() {
+		return position.getPreciseY();
+	}
 	
 	public String toString(){
 		return "("+this.position.getX()+","+this.position.getY()+"|"+this.orientation+")";
@@ -0,0 +1,126 @@
+package jenova.mappingsystem;
+
+/**
+ * Class for describing how range readings update the occupancy of map points. Each point holds the log-odds that it is occupied;
+ * a beam passing through a point applies a miss, a beam ending on a point applies a hit, and the result is clamped so that a point
+ * never becomes so certain that new evidence cannot change it. The state of a point follows its log-odds: once past the occupied
+ * threshold the point takes the occupied state, once past the free threshold it takes the free state, and in between it keeps
+ * whatever state it had.
+ * @author Adam Panzica
+ *
+ */
+public class OccupancyModel {
+	private final float hitLogOdds;
+	private final float missLogOdds;
+	private final float minLogOdds;
+	private final float maxLogOdds;
+	private final short occupiedState;
+	private final short freeState;
+
+	/**
+	 * Constructor for creating an occupancy model
+	 * @param hitProb probability that a point is occupied given a beam ended on it (greater than 0.5)
+	 * @param missProb probability that a point is occupied given a beam passed through it (less than 0.5)
+	 * @param minProb lowest probability a point can be driven down to
+	 * @param maxProb highest probability a point can be driven up to
+	 * @param occupiedData MapObject whose state is given to points which are considered occupied
+	 * @param freeData MapObject whose state is given to points which are considered free
+	 */
+	public OccupancyModel(double hitProb, double missProb, double minProb, double maxProb, MapObject occupiedData, MapObject freeData){
+		this.hitLogOdds = toLogOdds(hitProb);
+		this.missLogOdds = toLogOdds(missProb);
+		this.minLogOdds = toLogOdds(minProb);
+		this.maxLogOdds = toLogOdds(maxProb);
+		this.occupiedState = occupiedData.getStateId();
+		this.freeState = freeData.getStateId();
+	}
+
+	/**
+	 * Constructor for creating an occupancy model with commonly used values for a laser range finder (hit 0.7, miss 0.4, clamped to
+	 * 0.12->0.97), using "1" as the occupied state and "0" as the free state
+	 */
+	public OccupancyModel(){
+		this(0.7, 0.4, 0.12, 0.97, new MapObject("1"), new MapObject("0"));
+	}
+
+	/**
+	 * @return The change in log-odds applied to a point a beam ended on
+	 */
+	public float getHitLogOdds(){
+		return this.hitLogOdds;
+	}
+
+	/**
+	 * @return The change in log-odds applied to a point a beam passed through
+	 */
+	public float getMissLogOdds(){
+		return this.missLogOdds;
+	}
+
+	/**
+	 * @param logOdds log-odds to clamp
+	 * @return The log-odds, clamped to the limits of the model
+	 */
+	public float clamp(float logOdds){
+		if(logOdds < this.minLogOdds) return this.minLogOdds;
+		if(logOdds > this.maxLogOdds) return this.maxLogOdds;
+		return logOdds;
+	}
+
+	/**
+	 * @param logOdds log-odds of a point
+	 * @return True if a point with the given log-odds is considered occupied (at least as certain as a single hit)
+	 */
+	public boolean isOccupied(float logOdds){
+		return logOdds >= this.hitLogOdds;
+	}
+
+	/**
+	 * @param logOdds log-odds of a point
+	 * @return True if a point with the given log-odds is considered free (at least as certain as a single miss)
+	 */
+	public boolean isFree(float logOdds){
+		return logOdds <= this.missLogOdds;
+	}
+
+	/**
+	 * @return The lowest log-odds a point can be driven down to
+	 */
+	public float getMinLogOdds(){
+		return this.minLogOdds;
+	}
+
+	/**
+	 * @return The highest log-odds a point can be driven up to
+	 */
+	public float getMaxLogOdds(){
+		return this.maxLogOdds;
+	}
+
+	/**
+	 * @param logOdds log-odds of a point
+	 * @param currentState current state code of the point
+	 * @return The state code the point should have given its log-odds
+	 */
+	short getState(float logOdds, short currentState){
+		if(isOccupied(logOdds)) return this.occupiedState;
+		if(isFree(logOdds)) return this.freeState;
+		return currentState;
+	}
+
+	/**
+	 * @param prob probability, between 0 and 1 exclusive
+	 * @return The probability converted to log-odds
+	 */
+	public static float toLogOdds(double prob){
+		return (float)Math.log(prob/(1-prob));
+	}
+
+	/**
+	 * @param logOdds log-odds
+	 * @return The log-odds converted to a probability
+	 */
+	public static double toProbability(float logOdds){
+		return 1-1/(1+Math.exp(logOdds));
+	}
+}
@@ -0,0 +1,152 @@
+package jenova.mappingsystem;
+
+import java.util.Arrays;
+
+/**
+ * Frame store which packs every cell into flat primitive arrays: a short state code and a float occupancy log-odds per cell.
+ * No MapObjects are kept in the store; when a caller asks for one, a view holding the cell's state is created for that call.
+ * Any IProbabilityData on a MapObject written to the store is folded into the cell's log-odds (see MapObject.getLogOdds()) rather
+ * than being kept as a list.
+ * @author Adam Panzica
+ *
+ */
+public class PackedFrameStore implements IFrameStore {
+	private short[] states;
+	private float[] logOdds;
+	private int height;
+	private int width;
+
+	/**
+	 * Constructor to create a store with every cell unset
+	 * @param height height of the store
+	 * @param width width of the store
+	 */
+	public PackedFrameStore(int height, int width){
+		this.states = new short[height*width];
+		this.logOdds = new float[height*width];
+		this.height = height;
+		this.width = width;
+	}
+
+	/**
+	 * Constructor to create a store initialized to some base MapObject
+	 * @param height height of the store
+	 * @param width width of the store
+	 * @param baseObj Base MapObject to initialize all cells in the store to
+	 */
+	public PackedFrameStore(int height, int width, MapObject baseObj){
+		this(height, width);
+		Arrays.fill(this.states, baseObj.getStateId());
+		Arrays.fill(this.logOdds, baseObj.getLogOdds());
+	}
+
+	@Override
+	public int getWidth() {
+		return this.width;
+	}
+
+	@Override
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * @return A view of the cell holding its state, along with a LogOddsProbability if the cell's log-odds are not 0
+	 */
+	@Override
+	public MapObject getPoint(int x, int y) {
+		int index = y*this.width+x;
+		if(this.states[index] == MapStateRegistry.UNSET) return null;
+		MapObject view = new MapObject(this.states[index]);
+		if(this.logOdds[index] != 0) view.addProbData(new LogOddsProbability(this.logOdds[index]));
+		return view;
+	}
+
+	@Override
+	public void setPoint(int x, int y, MapObject object) {
+		int index = y*this.width+x;
+		this.states[index] = object.getStateId();
+		this.logOdds[index] = object.getLogOdds();
+	}
+
+	@Override
+	public short getState(int x, int y) {
+		return this.states[y*this.width+x];
+	}
+
+	@Override
+	public float getLogOdds(int x, int y) {
+		return this.logOdds[y*this.width+x];
+	}
+
+	@Override
+	public void copyCell(int x, int y, IFrameStore source, int sourceX, int sourceY) {
+		short state = source.getState(sourceX, sourceY);
+		if(state == MapStateRegistry.UNSET) return;
+		int index = y*this.width+x;
+		this.states[index] = state;
+		this.logOdds[index] = source.getLogOdds(sourceX, sourceY);
+	}
+
+	@Override
+	public void setCell(int x, int y, short state, float logOdds) {
+		this.states[y*this.width+x] = state;
+		this.logOdds[y*this.width+x] = state == MapStateRegistry.UNSET ? 0 : logOdds;
+	}
+
+	@Override
+	public void readRow(int x, int y, int length, short[] states, float[] logOdds, int offset) {
+		System.arraycopy(this.states, y*this.width+x, states, offset, length);
+		System.arraycopy(this.logOdds, y*this.width+x, logOdds, offset, length);
+	}
+
+	@Override
+	public void writeRow(int x, int y, int length, short[] states, float[] logOdds, int offset) {
+		System.arraycopy(states, offset, this.states, y*this.width+x, length);
+		System.arraycopy(logOdds, offset, this.logOdds, y*this.width+x, length);
+		for(int i=y*this.width+x; i<y*this.width+x+length; i++){
+			if(this.states[i] == MapStateRegistry.UNSET) this.logOdds[i] = 0;
+		}
+	}
+
+	@Override
+	public void clearCell(int x, int y) {
+		this.states[y*this.width+x] = MapStateRegistry.UNSET;
+		this.logOdds[y*this.width+x] = 0;
+	}
+
+	/**
+	 * @return A newly created grid of MapObject views of the store. Changes made to these MapObjects are not written back to the store
+	 */
+	@Override
+	public MapObject[][] getPoints() {
+		MapObject[][] points = new MapObject[this.height][this.width];
+		for(int y=0;y<this.height;y++){
+			for(int x=0;x<this.width;x++){
+				points[y][x] = getPoint(x, y);
+			}
+		}
+		return points;
+	}
+
+	@Override
+	public void setPoints(MapObject[][] points) {
+		if(points.length != this.height || points[0].length != this.width){
+			this.height = points.length;
+			this.width = points[0].length;
+			this.states = new short[this.height*this.width];
+			this.logOdds = new float[this.height*this.width];
+		}
+		for(int y=0;y<this.height;y++){
+			for(int x=0;x<this.width;x++){
+				if(points[y][x] != null) setPoint(x, y, points[y][x]);
+				else clearCell(x, y);
+			}
+		}
+	}
+
+	@Override
+	public IFrameStore spawn(int height, int width) {
+		return new PackedFrameStore(height, width);
+	}
+}
@@ -45,12 +45,22 @@ public class PolarCoord implements IMapPoint {
 
 	@Override
 	public int getX() {
-		return (int)(Math.cos(this.getTheta())*this.getRange());
+		return (int)Math.round(getPreciseX());
 	}
 
 	@Override
 	public int getY() {
-		return (int)(Math.sin(this.getTheta())*this.getRange());
+		return (int)Math.round(getPreciseY());
+	}
+
+	@Override
+	public double getPreciseX() {
+		return Math.cos(this.getTheta())*this.getRange();
+	}
+
+	@Override
+	public double getPreciseY() {
+		return Math.sin(this.getTheta())*this.getRange();
 	}
 	
 	public String toString(){
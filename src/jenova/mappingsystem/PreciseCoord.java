@@ -0,0 +1,75 @@
+package jenova.mappingsystem;
+/**
+ * Class representing a Cartesian coordinate which falls between the points of a map. The coordinate keeps its exact value through any
+ * number of transforms, and is only rounded to the nearest point when a map is accessed with it through getX() and getY(), so a pose held
+ * as a PreciseCoord (in an ObjectLocationData) stays accurate to well within a point however coarse the map is.
+ * @author Adam Panzica
+ *
+ */
+public class PreciseCoord implements IMapPoint {
+	private double xVal;
+	private double yVal;
+
+	/**
+	 * Constructor for creating a PreciseCoord from x and y values
+	 * @param xVal the X value of the Cartesian coordinate
+	 * @param yVal the Y value of the Cartesian coordinate
+	 */
+	public PreciseCoord(double xVal, double yVal){
+		this.xVal = xVal;
+		this.yVal = yVal;
+	}
+
+	/**
+	 * Constructor for creating a PreciseCoord from any other point, keeping as much precision as the point holds
+	 * @param point IMapPoint to copy
+	 */
+	public PreciseCoord(IMapPoint point){
+		this(point.getPreciseX(), point.getPreciseY());
+	}
+
+	@Override
+	public double getRange() {
+		return Math.sqrt(this.xVal*this.xVal+this.yVal*this.yVal);
+	}
+
+	@Override
+	public double getTheta() {
+		return Math.atan2(this.yVal, this.xVal);
+	}
+
+	@Override
+	public int getThetaD() {
+		return (int)Math.round((getTheta()*(double)180/Math.PI));
+	}
+
+	/**
+	 * @return The X value rounded to the nearest point
+	 */
+	@Override
+	public int getX() {
+		return (int)Math.round(this.xVal);
+	}
+
+	/**
+	 * @return The Y value rounded to the nearest point
+	 */
+	@Override
+	public int getY() {
+		return (int)Math.round(this.yVal);
+	}
+
+	@Override
+	public double getPreciseX() {
+		return this.xVal;
+	}
+
+	@Override
+	public double getPreciseY() {
+		return this.yVal;
+	}
+
+	public String toString(){
+		return "("+this.xVal+","+this.yVal+")";
+	}
+}
@@ -0,0 +1,79 @@
+package jenova.mappingsystem;
+
+import java.util.Arrays;
+
+/**
+ * Class for holding the trigonometry needed to cast a range scan. The beam angles of a scanning sensor rarely change between sweeps,
+ * so the sine and cosine of each beam are computed once and shared by every sweep cast with the same angles. The table also holds
+ * the scratch buffers used while casting, so a ScanTable must not be used by more than one cast at a time.
+ * @author Adam Panzica
+ *
+ */
+public class ScanTable {
+	private double[] angles;
+	private double[] cosA;
+	private double[] sinA;
+	private int[] endX;
+	private int[] endY;
+
+	/**
+	 * Constructor for creating a scan table from a set of beam angles
+	 * @param angles angle of each beam relative to the sensor orientation, in radians, counter clockwise from the sensor's x axis
+	 */
+	public ScanTable(double[] angles){
+		this.angles = angles.clone();
+		this.cosA = new double[angles.length];
+		this.sinA = new double[angles.length];
+		this.endX = new int[angles.length];
+		this.endY = new int[angles.length];
+		for(int i=0; i<angles.length; i++){
+			this.cosA[i] = Math.cos(angles[i]);
+			this.sinA[i] = Math.sin(angles[i]);
+		}
+	}
+
+	/**
+	 * @param angles beam angles to check
+	 * @return True if the table was built for exactly these beam angles
+	 */
+	public boolean matches(double[] angles){
+		return Arrays.equals(this.angles, angles);
+	}
+
+	/**
+	 * @return The number of beams in the table
+	 */
+	public int size(){
+		return this.angles.length;
+	}
+
+	/**
+	 * @param beam index of the beam
+	 * @return Cosine of the beam's angle
+	 */
+	public double getCos(int beam){
+		return this.cosA[beam];
+	}
+
+	/**
+	 * @param beam index of the beam
+	 * @return Sine of the beam's angle
+	 */
+	public double getSin(int beam){
+		return this.sinA[beam];
+	}
+
+	/**
+	 * @return Scratch buffer for the X coordinates of beam end points
+	 */
+	int[] getEndX(){
+		return this.endX;
+	}
+
+	/**
+	 * @return Scratch buffer for the Y coordinates of beam end points
+	 */
+	int[] getEndY(){
+		return this.endY;
+	}
+}
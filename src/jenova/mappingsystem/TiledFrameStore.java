@@ -0,0 +1,372 @@
+package jenova.mappingsystem;
+
+import java.util.Arrays;
+
+/**
+ * Sparse frame store which splits the frame into square tiles of TILE_SIZE x TILE_SIZE cells. A tile is only allocated the first time
+ * one of its cells is written with something other than the background; until then every cell in it reads as the background
+ * MapObject the store was created with. Memory use and creation time therefore scale with the area which has actually been mapped,
+ * rather than with the declared size of the frame. Allocated tiles are packed the same way as a PackedFrameStore.
+ * A store can hand out immutable snapshots of itself which share its tiles, see snapshot(). Tiles are copied on write: the first write
+ * to a tile after a snapshot copies that tile, so taking a snapshot costs nothing up front and keeping it costs one tile per tile written.
+ * @author Adam Panzica
+ *
+ */
+public class TiledFrameStore implements IFrameStore {
+	/**
+	 * log2 of the tile size
+	 */
+	public static final int TILE_SHIFT = 6;
+	/**
+	 * Width and height of a tile, in cells
+	 */
+	public static final int TILE_SIZE = 1<<TILE_SHIFT;
+	private static final int TILE_MASK = TILE_SIZE-1;
+
+	private Tile[] tiles;
+	private int tilesWide;
+	private int tilesHigh;
+	private int allocatedTiles;
+	private int height;
+	private int width;
+	private short backgroundState;
+	private float backgroundLogOdds;
+	private int generation;					//Tiles from an earlier generation may be shared with a snapshot, and are copied before being written
+	private boolean tilesShared;			//True if the tile array itself is shared with a snapshot
+	private boolean readOnly;				//True if the store is a snapshot
+
+	/**
+	 * Constructor to create a store with every cell unset
+	 * @param height height of the store
+	 * @param width width of the store
+	 */
+	public TiledFrameStore(int height, int width){
+		this.height = height;
+		this.width = width;
+		this.tilesWide = (width+TILE_MASK)>>TILE_SHIFT;
+		this.tilesHigh = (height+TILE_MASK)>>TILE_SHIFT;
+		this.tiles = new Tile[this.tilesWide*this.tilesHigh];
+		this.backgroundState = MapStateRegistry.UNSET;
+		this.backgroundLogOdds = 0;
+	}
+
+	/**
+	 * Constructor to create a store in which every cell starts as some base MapObject. No tiles are allocated until they are written to.
+	 * @param height height of the store
+	 * @param width width of the store
+	 * @param baseObj Base MapObject which all cells in the store start as
+	 */
+	public TiledFrameStore(int height, int width, MapObject baseObj){
+		this(height, width);
+		this.backgroundState = baseObj.getStateId();
+		this.backgroundLogOdds = baseObj.getLogOdds();
+	}
+
+	/**
+	 * Constructor to create a snapshot of a store, sharing its tiles
+	 */
+	private TiledFrameStore(TiledFrameStore source){
+		this.height = source.height;
+		this.width = source.width;
+		this.tilesWide = source.tilesWide;
+		this.tilesHigh = source.tilesHigh;
+		this.tiles = source.tiles;
+		this.allocatedTiles = source.allocatedTiles;
+		this.backgroundState = source.backgroundState;
+		this.backgroundLogOdds = source.backgroundLogOdds;
+		this.generation = -1;			//No tile belongs to a snapshot, so every write to one goes through copyTile() or allocateTile()
+		this.readOnly = true;
+	}
+
+	/**
+	 * Takes an immutable snapshot of the store. The snapshot shares every tile with the store, so taking it does not copy any cells;
+	 * instead the store copies each tile the first time it is written afterwards, and its tile index (one reference per tile) the first
+	 * time any tile is written or allocated. Writing to the snapshot throws an UnsupportedOperationException.
+	 * @return The snapshot, or this store if it is already a snapshot
+	 */
+	public TiledFrameStore snapshot(){
+		if(this.readOnly) return this;
+		TiledFrameStore snapshot = new TiledFrameStore(this);
+		this.tilesShared = true;
+		this.generation++;
+		return snapshot;
+	}
+
+	/**
+	 * @return True if the store is a snapshot, and cannot be written to
+	 */
+	public boolean isReadOnly(){
+		return this.readOnly;
+	}
+
+	@Override
+	public int getWidth() {
+		return this.width;
+	}
+
+	@Override
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * @return The number of tiles which have been allocated
+	 */
+	public int getAllocatedTiles(){
+		return this.allocatedTiles;
+	}
+
+	/**
+	 * @return The total number of tiles covering the store
+	 */
+	public int getTileCount(){
+		return this.tiles.length;
+	}
+
+	@Override
+	public MapObject getPoint(int x, int y) {
+		short state = getState(x, y);
+		if(state == MapStateRegistry.UNSET) return null;
+		MapObject view = new MapObject(state);
+		float cellLogOdds = getLogOdds(x, y);
+		if(cellLogOdds != 0) view.addProbData(new LogOddsProbability(cellLogOdds));
+		return view;
+	}
+
+	@Override
+	public void setPoint(int x, int y, MapObject object) {
+		setCell(x, y, object.getStateId(), object.getLogOdds());
+	}
+
+	@Override
+	public short getState(int x, int y) {
+		Tile tile = this.tiles[tileIndex(x, y)];
+		if(tile == null) return this.backgroundState;
+		return tile.states[cellIndex(x, y)];
+	}
+
+	@Override
+	public float getLogOdds(int x, int y) {
+		Tile tile = this.tiles[tileIndex(x, y)];
+		if(tile == null) return this.backgroundLogOdds;
+		return tile.logOdds[cellIndex(x, y)];
+	}
+
+	@Override
+	public void copyCell(int x, int y, IFrameStore source, int sourceX, int sourceY) {
+		short state = source.getState(sourceX, sourceY);
+		if(state == MapStateRegistry.UNSET) return;
+		setCell(x, y, state, source.getLogOdds(sourceX, sourceY));
+	}
+
+	/**
+	 * Writing the background into a cell of a tile which has not been allocated does not allocate it
+	 */
+	@Override
+	public void setCell(int x, int y, short state, float logOdds) {
+		if(state == MapStateRegistry.UNSET) logOdds = 0;
+		int tileIndex = tileIndex(x, y);
+		Tile tile = this.tiles[tileIndex];
+		if(tile == null){
+			if(state == this.backgroundState && logOdds == this.backgroundLogOdds) return;
+			tile = allocateTile(tileIndex);
+		}
+		else if(tile.generation != this.generation) tile = copyTile(tileIndex);
+		int cellIndex = cellIndex(x, y);
+		tile.states[cellIndex] = state;
+		tile.logOdds[cellIndex] = logOdds;
+	}
+
+	/**
+	 * Cells in tiles which have not been allocated are read as the background without allocating the tile
+	 */
+	@Override
+	public void readRow(int x, int y, int length, short[] states, float[] logOdds, int offset) {
+		int end = x+length;
+		int span;
+		Tile tile;
+		while(x<end){
+			span = Math.min(TILE_SIZE-(x&TILE_MASK), end-x);
+			tile = this.tiles[tileIndex(x, y)];
+			if(tile == null){
+				Arrays.fill(states, offset, offset+span, this.backgroundState);
+				Arrays.fill(logOdds, offset, offset+span, this.backgroundLogOdds);
+			}
+			else{
+				System.arraycopy(tile.states, cellIndex(x, y), states, offset, span);
+				System.arraycopy(tile.logOdds, cellIndex(x, y), logOdds, offset, span);
+			}
+			x += span;
+			offset += span;
+		}
+	}
+
+	/**
+	 * Runs which are entirely background do not allocate the tiles they fall in
+	 */
+	@Override
+	public void writeRow(int x, int y, int length, short[] states, float[] logOdds, int offset) {
+		int end = x+length;
+		int span;
+		int tileIndex;
+		while(x<end){
+			span = Math.min(TILE_SIZE-(x&TILE_MASK), end-x);
+			tileIndex = tileIndex(x, y);
+			if(this.tiles[tileIndex] != null || !isBackground(states, logOdds, offset, span)){
+				if(this.tiles[tileIndex] == null) allocateTile(tileIndex);
+				else if(this.tiles[tileIndex].generation != this.generation) copyTile(tileIndex);
+				for(int i=0; i<span; i++){
+					setCell(x+i, y, states[offset+i], logOdds[offset+i]);
+				}
+			}
+			x += span;
+			offset += span;
+		}
+	}
+
+	/**
+	 * @return True if every cell in the run is the background
+	 */
+	private boolean isBackground(short[] states, float[] logOdds, int offset, int length){
+		for(int i=offset; i<offset+length; i++){
+			if(states[i] != this.backgroundState || logOdds[i] != this.backgroundLogOdds) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The state code which cells in unallocated tiles read as
+	 */
+	public short getBackgroundState(){
+		return this.backgroundState;
+	}
+
+	/**
+	 * @return The log-odds which cells in unallocated tiles read as
+	 */
+	public float getBackgroundLogOdds(){
+		return this.backgroundLogOdds;
+	}
+
+	@Override
+	public void clearCell(int x, int y) {
+		setCell(x, y, MapStateRegistry.UNSET, 0);
+	}
+
+	/**
+	 * @return A newly created grid of MapObject views of the store. Changes made to these MapObjects are not written back to the store.
+	 * NOTE: This creates a MapObject for every cell in the store, regardless of how few tiles have been allocated
+	 */
+	@Override
+	public MapObject[][] getPoints() {
+		MapObject[][] points = new MapObject[this.height][this.width];
+		for(int y=0;y<this.height;y++){
+			for(int x=0;x<this.width;x++){
+				points[y][x] = getPoint(x, y);
+			}
+		}
+		return points;
+	}
+
+	@Override
+	public void setPoints(MapObject[][] points) {
+		checkWritable();
+		if(points.length != this.height || points[0].length != this.width){
+			this.height = points.length;
+			this.width = points[0].length;
+			this.tilesWide = (this.width+TILE_MASK)>>TILE_SHIFT;
+			this.tilesHigh = (this.height+TILE_MASK)>>TILE_SHIFT;
+		}
+		this.tiles = new Tile[this.tilesWide*this.tilesHigh];
+		this.tilesShared = false;
+		this.allocatedTiles = 0;
+		for(int y=0;y<this.height;y++){
+			for(int x=0;x<this.width;x++){
+				if(points[y][x] != null) setPoint(x, y, points[y][x]);
+				else clearCell(x, y);
+			}
+		}
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if the store is a snapshot
+	 */
+	private void checkWritable(){
+		if(this.readOnly) throw new UnsupportedOperationException("A snapshot of a TiledFrameStore cannot be written to");
+	}
+
+	/**
+	 * Frames derived from a tiled store are small windows which are written all over, so they are given a PackedFrameStore
+	 */
+	@Override
+	public IFrameStore spawn(int height, int width) {
+		return new PackedFrameStore(height, width);
+	}
+
+	/**
+	 * @return Index into tiles of the tile holding (x,y)
+	 */
+	private int tileIndex(int x, int y){
+		return (y>>TILE_SHIFT)*this.tilesWide+(x>>TILE_SHIFT);
+	}
+
+	/**
+	 * @return Index of (x,y) inside of its tile
+	 */
+	private static int cellIndex(int x, int y){
+		return ((y&TILE_MASK)<<TILE_SHIFT)|(x&TILE_MASK);
+	}
+
+	/**
+	 * Allocates a tile, filled with the background
+	 * @param tileIndex index of the tile
+	 * @return the new tile
+	 */
+	private Tile allocateTile(int tileIndex){
+		Tile tile = new Tile(this.generation);
+		Arrays.fill(tile.states, this.backgroundState);
+		Arrays.fill(tile.logOdds, this.backgroundLogOdds);
+		unshareTiles();
+		this.tiles[tileIndex] = tile;
+		this.allocatedTiles++;
+		return tile;
+	}
+
+	/**
+	 * Replaces a tile which may be shared with a snapshot with a copy of it which belongs to the store
+	 * @param tileIndex index of the tile
+	 * @return the copy
+	 */
+	private Tile copyTile(int tileIndex){
+		Tile source = this.tiles[tileIndex];
+		Tile tile = new Tile(this.generation);
+		System.arraycopy(source.states, 0, tile.states, 0, tile.states.length);
+		System.arraycopy(source.logOdds, 0, tile.logOdds, 0, tile.logOdds.length);
+		unshareTiles();
+		this.tiles[tileIndex] = tile;
+		return tile;
+	}
+
+	/**
+	 * Copies the tile index if it is shared with a snapshot, so that the store can change which tiles it holds
+	 */
+	private void unshareTiles(){
+		checkWritable();
+		if(!this.tilesShared) return;
+		this.tiles = this.tiles.clone();
+		this.tilesShared = false;
+	}
+
+	/**
+	 * A single allocated tile, holding the state codes and log-odds of its cells in row major order
+	 */
+	private static class Tile{
+		final short[] states = new short[TILE_SIZE*TILE_SIZE];
+		final float[] logOdds = new float[TILE_SIZE*TILE_SIZE];
+		final int generation;			//Generation of the store the tile was allocated or copied in
+
+		Tile(int generation){
+			this.generation = generation;
+		}
+	}
+}
@@ -1,24 +1,50 @@
 package jenova.mappingsystem;
 /**
- * Class for calculating values for performing transforms
+ * Class for calculating values for performing transforms. Along with the single point transforms, whole rows of points can be transformed
+ * at once: the position of the first point in the row is calculated once, and every following point is reached by adding a fixed point
+ * step, so walking a frame needs no trigonometry, rounding calls or allocation per point. A calculator can be moved to a new transform
+ * with set(), and the single point transforms can write into a MutableCoord, so a calculator kept by its owner allocates nothing.
  * @author Adam Panzica
  */
 public class TransformCalculator {
+	private static final int FIXED_SHIFT = 32;						//Number of fractional bits in fixed point values
+	private static final double FIXED_ONE = 1L<<FIXED_SHIFT;
+	private static final long FIXED_HALF = 1L<<(FIXED_SHIFT-1);
+	
 	private double sinT;
 	private double cosT;
-	private int xTrans;
-	private int yTrans;
+	private double xTrans;
+	private double yTrans;
+	private long xTransFixed;										//xTrans in fixed point
+	private long yTransFixed;										//yTrans in fixed point
+	private long cosFixed;											//cosT in fixed point, the step along a row
+	private long sinFixed;											//sinT in fixed point, the step along a row
 	
 	/**
 	 * Constructor for initializing a transform calculations
 	 * @param theta rotation from the base frame, positive clockwise from the Y axis of the base frame
-	 * @param translation Translation from the base frame to local frame
+	 * @param translation Translation from the base frame to local frame. The translation is kept to the precision of the point, so a
+	 * PreciseCoord translation is not rounded until points are transformed into the base frame
 	 */
 	public TransformCalculator(double theta, IMapPoint translation){
+		set(theta, translation.getPreciseX(), translation.getPreciseY());
+	}
+	
+	/**
+	 * Moves the calculator to a new transform, so that one calculator can be reused rather than making one per transform
+	 * @param theta rotation from the base frame, positive clockwise from the Y axis of the base frame
+	 * @param xTrans translation along the X axis of the base frame
+	 * @param yTrans translation along the Y axis of the base frame
+	 */
+	public void set(double theta, double xTrans, double yTrans){
 		this.sinT = Math.sin(theta);
 		this.cosT = Math.cos(theta);
-		this.xTrans = translation.getX();
-		this.yTrans = translation.getY();
+		this.xTrans = xTrans;
+		this.yTrans = yTrans;
+		this.xTransFixed = Math.round(this.xTrans*FIXED_ONE);
+		this.yTransFixed = Math.round(this.yTrans*FIXED_ONE);
+		this.cosFixed = Math.round(this.cosT*FIXED_ONE);
+		this.sinFixed = Math.round(this.sinT*FIXED_ONE);
 	}
 	
 	/**
@@ -27,8 +53,8 @@ public class TransformCalculator {
 	 * @return A CartCoord containing the X and Y value of the local point in the base frame
 	 */
 	public CartCoord rotateLocalToBase(IMapPoint localPoint){
-		return new CartCoord((int) Math.round((this.cosT*(double)localPoint.getX()+this.sinT*(double)localPoint.getY())),
-							 (int) Math.round((-1*this.sinT*localPoint.getX()+this.cosT*localPoint.getY())));
+		return new CartCoord((int) Math.round((this.cosT*localPoint.getPreciseX()+this.sinT*localPoint.getPreciseY())),
+							 (int) Math.round((-1*this.sinT*localPoint.getPreciseX()+this.cosT*localPoint.getPreciseY())));
 	}
 	
 	/**
@@ -37,8 +63,8 @@ public class TransformCalculator {
 	 * @return An array containing the X and Y value of the base point in the local frame
 	 */
 	public CartCoord rotateBaseToLocal(IMapPoint basePoint){
-		return new CartCoord((int) Math.round((this.cosT*(double)basePoint.getX()-this.sinT*(double)basePoint.getY())),
-							 (int) Math.round((this.sinT*(double)basePoint.getX()+this.cosT*basePoint.getY())));
+		return new CartCoord((int) Math.round((this.cosT*basePoint.getPreciseX()-this.sinT*basePoint.getPreciseY())),
+							 (int) Math.round((this.sinT*basePoint.getPreciseX()+this.cosT*basePoint.getPreciseY())));
 	}
 	
 	/**
@@ -47,7 +73,7 @@ public class TransformCalculator {
 	 * @return An array containing the X and Y value of the local point in the base frame
 	 */
 	public CartCoord translateLocalToBase(IMapPoint localPoint){
-		return new CartCoord(this.xTrans+localPoint.getX(), this.yTrans+localPoint.getY());
+		return new CartCoord((int) Math.round(this.xTrans+localPoint.getPreciseX()), (int) Math.round(this.yTrans+localPoint.getPreciseY()));
 	}
 	
 	/**
@@ -56,7 +82,7 @@ public class TransformCalculator {
 	 * @return An array containing the X and Y value of the base point in the local frame
 	 */
 	public CartCoord translateBaseToLocal(IMapPoint basePoint){
-		return new CartCoord(basePoint.getX()-this.xTrans, basePoint.getY()-this.yTrans);
+		return new CartCoord((int) Math.round(basePoint.getPreciseX()-this.xTrans), (int) Math.round(basePoint.getPreciseY()-this.yTrans));
 	}
 	
 	public String toString(){
@@ -69,9 +95,20 @@ public class TransformCalculator {
 	 * @return An array containing the X and Y value of the local point in the base frame
 	 */
 	public CartCoord transformLocalToBase (IMapPoint localPoint){
-		CartCoord rotateXY = rotateLocalToBase(localPoint);
-		
-		return new CartCoord(rotateXY.getX()+this.xTrans, rotateXY.getY()+this.yTrans);
+		return new CartCoord((int) Math.round(this.cosT*localPoint.getPreciseX()+this.sinT*localPoint.getPreciseY()+this.xTrans),
+							 (int) Math.round(-1*this.sinT*localPoint.getPreciseX()+this.cosT*localPoint.getPreciseY()+this.yTrans));
+	}
+	
+	/**
+	 * Given a local point, calculates the corresponding base point for a transformation (rotation+translation) into a coordinate kept by
+	 * the caller, without allocating. See transformLocalToBase()
+	 * @param localPoint Point in the local frame
+	 * @param result coordinate to write the base point into
+	 * @return result, holding the base point
+	 */
+	public MutableCoord transformLocalToBase(IMapPoint localPoint, MutableCoord result){
+		return result.set(transformLocalToBaseX(localPoint.getPreciseX(), localPoint.getPreciseY()),
+						  transformLocalToBaseY(localPoint.getPreciseX(), localPoint.getPreciseY()));
 	}
 	
 	/**
@@ -84,4 +121,169 @@ public class TransformCalculator {
 		CartCoord translateXY = translateBaseToLocal(basePoint);
 		return new CartCoord(rotateXY.getX()-translateXY.getX(), rotateXY.getY()-translateXY.getY());
 	}
+	
+	/**
+	 * Given a local point, calculates its exact position in the base frame for a transformation (rotation+translation), without rounding
+	 * to a base point. Chaining exact transforms loses no precision, rounding only once when the result is used to access a map
+	 * @param localPoint Point in the local frame
+	 * @return The position of the local point in the base frame
+	 */
+	public PreciseCoord transformLocalToBasePrecise(IMapPoint localPoint){
+		return new PreciseCoord(this.cosT*localPoint.getPreciseX()+this.sinT*localPoint.getPreciseY()+this.xTrans,
+								-1*this.sinT*localPoint.getPreciseX()+this.cosT*localPoint.getPreciseY()+this.yTrans);
+	}
+	
+	/**
+	 * Given a local point, calculates its exact position in the base frame into a coordinate kept by the caller, without allocating. See
+	 * transformLocalToBasePrecise(IMapPoint)
+	 * @param localPoint Point in the local frame
+	 * @param result coordinate to write the position into
+	 * @return result, holding the position of the local point in the base frame
+	 */
+	public MutableCoord transformLocalToBasePrecise(IMapPoint localPoint, MutableCoord result){
+		return result.set(this.cosT*localPoint.getPreciseX()+this.sinT*localPoint.getPreciseY()+this.xTrans,
+						  -1*this.sinT*localPoint.getPreciseX()+this.cosT*localPoint.getPreciseY()+this.yTrans);
+	}
+	
+	/**
+	 * Given a base point, calculates its exact position in the local frame, the exact inverse of transformLocalToBasePrecise()
+	 * @param basePoint Point in the base frame
+	 * @return The position of the base point in the local frame
+	 */
+	public PreciseCoord transformBaseToLocalPrecise(IMapPoint basePoint){
+		double x = basePoint.getPreciseX()-this.xTrans;
+		double y = basePoint.getPreciseY()-this.yTrans;
+		return new PreciseCoord(this.cosT*x-this.sinT*y, this.sinT*x+this.cosT*y);
+	}
+	
+	/**
+	 * Given a base point, calculates its exact position in the local frame into a coordinate kept by the caller, without allocating. See
+	 * transformBaseToLocalPrecise(IMapPoint)
+	 * @param basePoint Point in the base frame
+	 * @param result coordinate to write the position into
+	 * @return result, holding the position of the base point in the local frame
+	 */
+	public MutableCoord transformBaseToLocalPrecise(IMapPoint basePoint, MutableCoord result){
+		double x = basePoint.getPreciseX()-this.xTrans;
+		double y = basePoint.getPreciseY()-this.yTrans;
+		return result.set(this.cosT*x-this.sinT*y, this.sinT*x+this.cosT*y);
+	}
+	
+	/**
+	 * Given a local X and Y value, calculates the corresponding base frame X value for a transformation (rotation+translation), without
+	 * allocating. See transformLocalToBase()
+	 * @return The X value of the local point in the base frame
+	 */
+	public int transformLocalToBaseX(double x, double y){
+		return (int) Math.round(this.cosT*x+this.sinT*y+this.xTrans);
+	}
+	
+	/**
+	 * Given a local X and Y value, calculates the corresponding base frame Y value for a transformation (rotation+translation), without
+	 * allocating. See transformLocalToBase()
+	 * @return The Y value of the local point in the base frame
+	 */
+	public int transformLocalToBaseY(double x, double y){
+		return (int) Math.round(-1*this.sinT*x+this.cosT*y+this.yTrans);
+	}
+	
+	/**
+	 * Transforms a run of points along a row of the local frame into the base frame (rotation+translation). The start of the row is
+	 * calculated exactly and each following point is stepped to in fixed point. The stepped position stays within a tiny fraction of a
+	 * point of the exact one, so the result agrees with transformLocalToBase() to within a cell, but a point lying almost exactly between
+	 * two base points may round to the other one; callers must not rely on the two matching point for point.
+	 * @param y Y value of the row in the local frame
+	 * @param startX X value of the first point in the row
+	 * @param length number of points to transform
+	 * @param baseX array to write the base frame X values into, starting at index 0
+	 * @param baseY array to write the base frame Y values into, starting at index 0
+	 */
+	public void transformRowLocalToBase(int y, int startX, int length, int[] baseX, int[] baseY){
+		long fx = Math.round((this.cosT*(double)startX+this.sinT*(double)y)*FIXED_ONE)+this.xTransFixed+FIXED_HALF;
+		long fy = Math.round((-1*this.sinT*startX+this.cosT*y)*FIXED_ONE)+this.yTransFixed+FIXED_HALF;
+		for(int i=0; i<length; i++){
+			baseX[i] = (int)(fx>>FIXED_SHIFT);
+			baseY[i] = (int)(fy>>FIXED_SHIFT);
+			fx += this.cosFixed;
+			fy -= this.sinFixed;
+		}
+	}
+	
+	/**
+	 * Transforms a run of points along a row of the local frame into the base frame (rotation+translation) without rounding, giving the
+	 * exact position of each point for interpolating between base points
+	 * @param y Y value of the row in the local frame
+	 * @param startX X value of the first point in the row
+	 * @param length number of points to transform
+	 * @param baseX array to write the base frame X positions into, starting at index 0
+	 * @param baseY array to write the base frame Y positions into, starting at index 0
+	 */
+	public void transformRowLocalToBase(int y, int startX, int length, double[] baseX, double[] baseY){
+		double x0 = this.cosT*(double)startX+this.sinT*(double)y+this.xTrans;
+		double y0 = -1*this.sinT*startX+this.cosT*y+this.yTrans;
+		for(int i=0; i<length; i++){
+			baseX[i] = x0+this.cosT*i;
+			baseY[i] = y0-this.sinT*i;
+		}
+	}
+	
+	/**
+	 * Transforms a run of points along a row of the base frame into the local frame, the exact inverse of transformRowLocalToBase().
+	 * Walking the base frame this way, rather than the local frame, visits every base point covered by a rotated local frame exactly once.
+	 * @param baseY Y value of the row in the base frame
+	 * @param startX X value of the first point in the row
+	 * @param length number of points to transform
+	 * @param localX array to write the local frame X values into, starting at index 0
+	 * @param localY array to write the local frame Y values into, starting at index 0
+	 */
+	public void transformRowBaseToLocal(int baseY, int startX, int length, int[] localX, int[] localY){
+		double x = startX-this.xTrans;
+		double y = baseY-this.yTrans;
+		long fx = Math.round((this.cosT*x-this.sinT*y)*FIXED_ONE)+FIXED_HALF;
+		long fy = Math.round((this.sinT*x+this.cosT*y)*FIXED_ONE)+FIXED_HALF;
+		for(int i=0; i<length; i++){
+			localX[i] = (int)(fx>>FIXED_SHIFT);
+			localY[i] = (int)(fy>>FIXED_SHIFT);
+			fx += this.cosFixed;
+			fy += this.sinFixed;
+		}
+	}
+	
+	/**
+	 * Calculates the bounding box in the base frame of a local frame of the given size. The box is grown by a point on each side, so that
+	 * it holds every base point which transforms back into the local frame
+	 * @param width width of the local frame
+	 * @param height height of the local frame
+	 * @param bounds array to write the bounds into, as {minX, minY, maxX, maxY}, inclusive
+	 */
+	public void boundsLocalToBase(int width, int height, int[] bounds){
+		int[] cornersX = {0, width-1, 0, width-1};
+		int[] cornersY = {0, 0, height-1, height-1};
+		int x;
+		int y;
+		bounds[0] = Integer.MAX_VALUE;
+		bounds[1] = Integer.MAX_VALUE;
+		bounds[2] = Integer.MIN_VALUE;
+		bounds[3] = Integer.MIN_VALUE;
+		for(int i=0; i<4; i++){
+			x = transformLocalToBaseX(cornersX[i], cornersY[i]);
+			y = transformLocalToBaseY(cornersX[i], cornersY[i]);
+			bounds[0] = Math.min(bounds[0], x);
+			bounds[1] = Math.min(bounds[1], y);
+			bounds[2] = Math.max(bounds[2], x);
+			bounds[3] = Math.max(bounds[3], y);
+		}
+		bounds[0]--;
+		bounds[1]--;
+		bounds[2]++;
+		bounds[3]++;
+	}
+	
+	/**
+	 * @return True if the rotation lines the axes of the local frame up with those of the base frame (a multiple of 90 degrees), in which
+	 * case every local point maps to its own base point
+	 */
+	public boolean isAxisAligned(){
+		return Math.abs(this.sinT*this.cosT) <= 1e-9;
+	}
 }
@@ -0,0 +1,72 @@
+package jenova.pathplanning;
+
+/**
+ * IPathPlanner which plans each path from scratch with A*, guided by the octile distance. The open set is a CellHeap, and the costs, parents
+ * and closed set are held in flat arrays which are reused between searches; rather than clearing them, each search stamps the points it
+ * touches, so starting a search costs nothing however large the map is.
+ * @author Adam Panzica
+ *
+ */
+public class AStarPlanner implements IPathPlanner {
+	private final GridCostMap map;
+	private final float[] cost;					//Cost of the cheapest known path from the start to each point
+	private final int[] parent;					//Point each point was reached from along that path
+	private final int[] seen;					//Search in which each point was last reached
+	private final int[] closed;					//Search in which each point was last expanded
+	private final CellHeap open;
+	private int search;
+
+	/**
+	 * Constructor for creating an A* planner
+	 * @param map GridCostMap to plan over
+	 */
+	public AStarPlanner(GridCostMap map){
+		int size = map.getWidth()*map.getHeight();
+		this.map = map;
+		this.cost = new float[size];
+		this.parent = new int[size];
+		this.seen = new int[size];
+		this.closed = new int[size];
+		this.open = new CellHeap(size);
+		this.search = 0;
+	}
+
+	@Override
+	public GridPath plan(int startX, int startY, int goalX, int goalY) {
+		int width = this.map.getWidth();
+		int start = startY*width+startX;
+		int goal = goalY*width+goalX;
+		if(this.map.isBlocked(startX, startY) || this.map.isBlocked(goalX, goalY)) return null;
+
+		this.search++;
+		this.open.clear();
+		this.cost[start] = 0;
+		this.parent[start] = -1;
+		this.seen[start] = this.search;
+		this.open.put(start, this.map.estimate(start, goal), 0);
+
+		int point;
+		int neighbour;
+		float step;
+		float newCost;
+		while(!this.open.isEmpty()){
+			point = this.open.pop();
+			if(point == goal) return GridPath.fromParents(this.parent, goal, width, this.cost[goal]);
+			this.closed[point] = this.search;
+			for(int direction=0; direction<8; direction++){
+				step = this.map.getStepCost(point, direction);
+				if(step == GridCostMap.BLOCKED) continue;
+				neighbour = this.map.getNeighbour(point, direction);
+				if(this.closed[neighbour] == this.search) continue;
+				newCost = this.cost[point]+step;
+				if(this.seen[neighbour] == this.search && newCost >= this.cost[neighbour]) continue;
+				this.seen[neighbour] = this.search;
+				this.cost[neighbour] = newCost;
+				this.parent[neighbour] = point;
+				//Ties are broken towards the point furthest along, which keeps the search from spreading across open ground
+				this.open.put(neighbour, newCost+this.map.estimate(neighbour, goal), -newCost);
+			}
+		}
+		return null;
+	}
+}
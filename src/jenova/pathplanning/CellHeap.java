@@ -0,0 +1,149 @@
+package jenova.pathplanning;
+
+import java.util.Arrays;
+
+/**
+ * Binary min heap of point indices, each with a two part key compared first on its primary then on its secondary part. The position of
+ * every point in the heap is kept in a flat array, so a point can be found, re-keyed or removed without searching.
+ * @author Adam Panzica
+ *
+ */
+class CellHeap {
+	private int[] cells;
+	private float[] primary;
+	private float[] secondary;
+	private final int[] position;			//Position of each point in the heap, -1 if it is not in the heap
+	private int size;
+
+	/**
+	 * @param capacity number of points which may be held, points are indexed from 0 to capacity-1
+	 */
+	CellHeap(int capacity){
+		this.cells = new int[64];
+		this.primary = new float[64];
+		this.secondary = new float[64];
+		this.position = new int[capacity];
+		Arrays.fill(this.position, -1);
+	}
+
+	boolean isEmpty(){
+		return this.size == 0;
+	}
+
+	boolean contains(int cell){
+		return this.position[cell] >= 0;
+	}
+
+	int peek(){
+		return this.cells[0];
+	}
+
+	float peekPrimary(){
+		return this.primary[0];
+	}
+
+	float peekSecondary(){
+		return this.secondary[0];
+	}
+
+	/**
+	 * Adds a point, or changes its key if it is already in the heap
+	 */
+	void put(int cell, float primaryKey, float secondaryKey){
+		int at = this.position[cell];
+		if(at < 0){
+			if(this.size == this.cells.length){
+				this.cells = Arrays.copyOf(this.cells, this.size*2);
+				this.primary = Arrays.copyOf(this.primary, this.size*2);
+				this.secondary = Arrays.copyOf(this.secondary, this.size*2);
+			}
+			at = this.size++;
+			place(at, cell, primaryKey, secondaryKey);
+			siftUp(at);
+			return;
+		}
+		boolean smaller = less(primaryKey, secondaryKey, this.primary[at], this.secondary[at]);
+		this.primary[at] = primaryKey;
+		this.secondary[at] = secondaryKey;
+		if(smaller) siftUp(at);
+		else siftDown(at);
+	}
+
+	/**
+	 * Removes and returns the point with the smallest key
+	 */
+	int pop(){
+		int top = this.cells[0];
+		removeAt(0);
+		return top;
+	}
+
+	/**
+	 * Removes a point if it is in the heap
+	 */
+	void remove(int cell){
+		int at = this.position[cell];
+		if(at >= 0) removeAt(at);
+	}
+
+	/**
+	 * Removes every point from the heap
+	 */
+	void clear(){
+		for(int n=0; n<this.size; n++){
+			this.position[this.cells[n]] = -1;
+		}
+		this.size = 0;
+	}
+
+	private void removeAt(int at){
+		this.position[this.cells[at]] = -1;
+		this.size--;
+		if(at == this.size) return;
+		place(at, this.cells[this.size], this.primary[this.size], this.secondary[this.size]);
+		siftDown(at);
+		siftUp(at);
+	}
+
+	private void place(int at, int cell, float primaryKey, float secondaryKey){
+		this.cells[at] = cell;
+		this.primary[at] = primaryKey;
+		this.secondary[at] = secondaryKey;
+		this.position[cell] = at;
+	}
+
+	private void siftUp(int at){
+		int cell = this.cells[at];
+		float primaryKey = this.primary[at];
+		float secondaryKey = this.secondary[at];
+		int parent;
+		while(at > 0){
+			parent = (at-1)>>1;
+			if(!less(primaryKey, secondaryKey, this.primary[parent], this.secondary[parent])) break;
+			place(at, this.cells[parent], this.primary[parent], this.secondary[parent]);
+			at = parent;
+		}
+		place(at, cell, primaryKey, secondaryKey);
+	}
+
+	private void siftDown(int at){
+		int cell = this.cells[at];
+		float primaryKey = this.primary[at];
+		float secondaryKey = this.secondary[at];
+		int child;
+		while((child = 2*at+1) < this.size){
+			if(child+1 < this.size && less(this.primary[child+1], this.secondary[child+1], this.primary[child], this.secondary[child])) child++;
+			if(!less(this.primary[child], this.secondary[child], primaryKey, secondaryKey)) break;
+			place(at, this.cells[child], this.primary[child], this.secondary[child]);
+			at = child;
+		}
+		place(at, cell, primaryKey, secondaryKey);
+	}
+
+	/**
+	 * @return True if key a is smaller than key b
+	 */
+	static boolean less(float primaryA, float secondaryA, float primaryB, float secondaryB){
+		return primaryA < primaryB || (primaryA == primaryB && secondaryA < secondaryB);
+	}
+}
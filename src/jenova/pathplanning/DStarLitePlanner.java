@@ -0,0 +1,209 @@
+package jenova.pathplanning;
+
+import java.util.Arrays;
+
+/**
+ * IPathPlanner which replans incrementally with D* Lite. The search runs backwards from the goal, so as the robot moves and the map
+ * changes, the costs already found for the rest of the map stay valid; each call to plan() with the same goal repairs only the points
+ * whose cost changed in the GridCostMap (and those that depend on them) before reading the new path out. Changing the goal starts a new
+ * search. All search state is held in flat arrays.
+ * @author Adam Panzica
+ *
+ */
+public class DStarLitePlanner implements IPathPlanner {
+	private static final float INFINITY = Float.POSITIVE_INFINITY;
+	private static final int KEY_TOLERANCE = 64;		//Units of rounding within which keys are treated as tied with the start
+
+	private final GridCostMap map;
+	private final float[] g;					//Cost to the goal as of the last time each point was expanded
+	private final float[] rhs;					//Cost to the goal through the best neighbour of each point
+	private final CellHeap open;
+	private int goal;
+	private int start;
+	private int lastStart;
+	private float keyModifier;					//Sum of the distances the start has moved, added to keys instead of re-keying the heap
+
+	/**
+	 * Constructor for creating a D* Lite planner
+	 * @param map GridCostMap to plan over. The planner consumes, and clears, the changes recorded by the map
+	 */
+	public DStarLitePlanner(GridCostMap map){
+		int size = map.getWidth()*map.getHeight();
+		this.map = map;
+		this.g = new float[size];
+		this.rhs = new float[size];
+		this.open = new CellHeap(size);
+		this.goal = -1;
+	}
+
+	@Override
+	public GridPath plan(int startX, int startY, int goalX, int goalY) {
+		if(this.map.isBlocked(startX, startY) || this.map.isBlocked(goalX, goalY)) return null;
+		int width = this.map.getWidth();
+		int newGoal = goalY*width+goalX;
+		this.start = startY*width+startX;
+		if(newGoal != this.goal){
+			initialize(newGoal);
+		}
+		else{
+			this.keyModifier += this.map.estimate(this.lastStart, this.start);
+			applyChanges();
+		}
+		this.lastStart = this.start;
+		this.map.clearChanges();
+		computeShortestPath();
+		return extractPath();
+	}
+
+	/**
+	 * Starts a new search towards a goal
+	 */
+	private void initialize(int newGoal){
+		this.goal = newGoal;
+		this.keyModifier = 0;
+		this.open.clear();
+		Arrays.fill(this.g, INFINITY);
+		Arrays.fill(this.rhs, INFINITY);
+		this.rhs[newGoal] = 0;
+		this.open.put(newGoal, this.map.estimate(this.start, newGoal), 0);
+	}
+
+	/**
+	 * Updates every point whose steps may have changed cost: each changed point, and its neighbours, whose diagonal steps pass by it
+	 */
+	private void applyChanges(){
+		int changed;
+		int neighbour;
+		for(int n=0; n<this.map.getChangeCount(); n++){
+			changed = this.map.getChange(n);
+			recalculate(changed);
+			for(int direction=0; direction<8; direction++){
+				neighbour = this.map.getNeighbour(changed, direction);
+				if(neighbour >= 0) recalculate(neighbour);
+			}
+		}
+	}
+
+	/**
+	 * Recalculates the best cost to the goal through the neighbours of a point, and queues the point if it is no longer consistent
+	 */
+	private void recalculate(int point){
+		if(point != this.goal){
+			float best = INFINITY;
+			float step;
+			for(int direction=0; direction<8; direction++){
+				step = this.map.getStepCost(point, direction);
+				if(step != GridCostMap.BLOCKED) best = Math.min(best, step+this.g[this.map.getNeighbour(point, direction)]);
+			}
+			this.rhs[point] = best;
+		}
+		queue(point);
+	}
+
+	/**
+	 * Puts a point in the open set if its cost is inconsistent, or takes it out if it is not
+	 */
+	private void queue(int point){
+		if(this.g[point] != this.rhs[point]){
+			float min = Math.min(this.g[point], this.rhs[point]);
+			this.open.put(point, min+this.map.estimate(this.start, point)+this.keyModifier, min);
+		}
+		else this.open.remove(point);
+	}
+
+	/**
+	 * Expands points until the cost of the start is known
+	 */
+	private void computeShortestPath(){
+		int point;
+		int neighbour;
+		float min;
+		float keyPrimary;
+		float step;
+		float oldG;
+		while(!this.open.isEmpty()){
+			//Keys are sums of floats, so keys which are equal when worked out exactly can differ by a few units of rounding. Points tied
+			//with the start must still be expanded, or the path read out may run through a point whose cost is out of date
+			min = Math.min(this.g[this.start], this.rhs[this.start]);
+			keyPrimary = min+this.keyModifier;
+			if(this.open.peekPrimary() > keyPrimary+KEY_TOLERANCE*Math.ulp(keyPrimary) && this.rhs[this.start] <= this.g[this.start]) break;
+			point = this.open.peek();
+			min = Math.min(this.g[point], this.rhs[point]);
+			keyPrimary = min+this.map.estimate(this.start, point)+this.keyModifier;
+			if(CellHeap.less(this.open.peekPrimary(), this.open.peekSecondary(), keyPrimary, min)){
+				//The key is out of date because the start has moved since the point was queued
+				this.open.put(point, keyPrimary, min);
+			}
+			else if(this.g[point] > this.rhs[point]){
+				//Overconsistent: the point has become cheaper, pass the saving on to its neighbours
+				this.g[point] = this.rhs[point];
+				this.open.remove(point);
+				for(int direction=0; direction<8; direction++){
+					step = this.map.getStepCost(point, direction);
+					if(step == GridCostMap.BLOCKED) continue;
+					neighbour = this.map.getNeighbour(point, direction);
+					if(neighbour != this.goal && step+this.g[point] < this.rhs[neighbour]){
+						this.rhs[neighbour] = step+this.g[point];
+						queue(neighbour);
+					}
+				}
+			}
+			else{
+				//Underconsistent: the point has become more expensive, so every neighbour which relied on it must be recalculated
+				oldG = this.g[point];
+				this.g[point] = INFINITY;
+				for(int direction=0; direction<8; direction++){
+					step = this.map.getStepCost(point, direction);
+					if(step == GridCostMap.BLOCKED) continue;
+					neighbour = this.map.getNeighbour(point, direction);
+					if(neighbour != this.goal && this.rhs[neighbour] == step+oldG) recalculate(neighbour);
+				}
+				recalculate(point);
+			}
+		}
+	}
+
+	/**
+	 * Reads the path out by stepping from the start to whichever neighbour is cheapest to reach the goal through
+	 */
+	private GridPath extractPath(){
+		if(this.rhs[this.start] == INFINITY) return null;
+		int width = this.map.getWidth();
+		int[] xs = new int[64];
+		int[] ys = new int[64];
+		int length = 0;
+		int point = this.start;
+		int best;
+		int neighbour;
+		float bestCost;
+		float step;
+		double total = 0;
+		int limit = this.g.length;
+		while(true){
+			if(length == xs.length){
+				xs = Arrays.copyOf(xs, length*2);
+				ys = Arrays.copyOf(ys, length*2);
+			}
+			xs[length] = point%width;
+			ys[length] = point/width;
+			length++;
+			if(point == this.goal) break;
+			if(length > limit) return null;
+			best = -1;
+			bestCost = INFINITY;
+			for(int direction=0; direction<8; direction++){
+				step = this.map.getStepCost(point, direction);
+				if(step == GridCostMap.BLOCKED) continue;
+				neighbour = this.map.getNeighbour(point, direction);
+				if(step+this.g[neighbour] < bestCost){
+					bestCost = step+this.g[neighbour];
+					best = direction;
+				}
+			}
+			if(best < 0) return null;
+			total += this.map.getStepCost(point, best);
+			point = this.map.getNeighbour(point, best);
+		}
+		return new GridPath(Arrays.copyOf(xs, length), Arrays.copyOf(ys, length), total);
+	}
+}
@@ -0,0 +1,222 @@
+package jenova.pathplanning;
+
+import java.util.Arrays;
+
+import jenova.mappingsystem.Frame;
+import jenova.mappingsystem.IFrameListener;
+import jenova.mappingsystem.MapObject;
+import jenova.mappingsystem.MapStateRegistry;
+
+/**
+ * Class for holding the cost of travelling through each point of a Frame, for use by path planners. Points holding the obstacle state are
+ * blocked, points which have never been set cost the unknown cost, and every other point costs 1. The costs are held in a flat array, and
+ * follow the frame as it changes; the points whose cost has changed are remembered until cleared, so incremental planners can repair
+ * only what changed.
+ * Points are connected to their 8 neighbours. A diagonal step costs sqrt(2) times as much as a straight one, and may not cut the corner
+ * of a blocked point.
+ * @author Adam Panzica
+ *
+ */
+public class GridCostMap implements IFrameListener {
+	/**
+	 * Cost of a blocked point
+	 */
+	public static final float BLOCKED = Float.POSITIVE_INFINITY;
+	/**
+	 * X offset of each of the 8 neighbours of a point. Straight neighbours come first, so neighbour n+4 is the diagonal between
+	 * neighbours n and (n+1)%4
+	 */
+	public static final int[] NEIGHBOUR_X = {1, 0, -1, 0, 1, -1, -1, 1};
+	/**
+	 * Y offset of each of the 8 neighbours of a point, see NEIGHBOUR_X
+	 */
+	public static final int[] NEIGHBOUR_Y = {0, 1, 0, -1, 1, 1, -1, -1};
+	private static final float DIAGONAL = (float)Math.sqrt(2);
+
+	private final Frame frame;
+	private final short obstacleState;
+	private final float unknownCost;
+	private final int width;
+	private final int height;
+	private final float[] costs;
+	private int[] changes;
+	private int changeCount;
+	private final boolean[] changed;
+
+	/**
+	 * Constructor for creating a cost map which follows a frame. The cost map registers itself as a listener on the frame
+	 * @param frame Frame to take costs from. The frame must not change size
+	 * @param obstacle MapObject whose state marks a point as blocked
+	 * @param unknownCost cost of points which have never been set, at least 1, or BLOCKED to plan only through known space
+	 */
+	public GridCostMap(Frame frame, MapObject obstacle, float unknownCost){
+		this.frame = frame;
+		this.obstacleState = obstacle.getStateId();
+		this.unknownCost = Math.max(unknownCost, 1);
+		this.width = frame.getWidth();
+		this.height = frame.getHeight();
+		this.costs = new float[this.width*this.height];
+		this.changes = new int[64];
+		this.changed = new boolean[this.width*this.height];
+		for(int y=0; y<this.height; y++){
+			for(int x=0; x<this.width; x++){
+				this.costs[y*this.width+x] = costOf(frame.getState(x, y));
+			}
+		}
+		frame.addListener(this);
+	}
+
+	/**
+	 * Constructor for creating a cost map which does not follow a frame, with every point costing 1
+	 * @param height height of the map
+	 * @param width width of the map
+	 */
+	public GridCostMap(int height, int width){
+		this.frame = null;
+		this.obstacleState = MapStateRegistry.UNSET;
+		this.unknownCost = 1;
+		this.width = width;
+		this.height = height;
+		this.costs = new float[width*height];
+		this.changes = new int[64];
+		this.changed = new boolean[width*height];
+		Arrays.fill(this.costs, 1);
+	}
+
+	/**
+	 * Stops the cost map following changes to its frame
+	 */
+	public void detach(){
+		if(this.frame != null) this.frame.removeListener(this);
+	}
+
+	@Override
+	public void pointChanged(Frame frame, int x, int y) {
+		if(x<0 || x>=this.width || y<0 || y>=this.height) return;
+		setCost(x, y, costOf(frame.getState(x, y)));
+	}
+
+	private float costOf(short state){
+		if(state == MapStateRegistry.UNSET) return this.unknownCost;
+		if(state == this.obstacleState) return BLOCKED;
+		return 1;
+	}
+
+	/**
+	 * Sets the cost of travelling through a point. NOTE: There is no bounds checking, calling function must ensure that the location is within bounds
+	 * @param x X coordinate of the point
+	 * @param y Y coordinate of the point
+	 * @param cost new cost of the point, at least 1, or BLOCKED
+	 */
+	public void setCost(int x, int y, float cost){
+		int index = y*this.width+x;
+		cost = Math.max(cost, 1);
+		if(this.costs[index] == cost) return;
+		this.costs[index] = cost;
+		if(!this.changed[index]){
+			if(this.changeCount == this.changes.length) this.changes = Arrays.copyOf(this.changes, this.changeCount*2);
+			this.changes[this.changeCount++] = index;
+			this.changed[index] = true;
+		}
+	}
+
+	/**
+	 * @return The cost of travelling through the point at (x,y). NOTE: There is no bounds checking, calling function must ensure that the location is within bounds
+	 */
+	public float getCost(int x, int y){
+		return this.costs[y*this.width+x];
+	}
+
+	/**
+	 * @return True if the point at (x,y) is blocked. NOTE: There is no bounds checking, calling function must ensure that the location is within bounds
+	 */
+	public boolean isBlocked(int x, int y){
+		return this.costs[y*this.width+x] == BLOCKED;
+	}
+
+	/**
+	 * @return The width of the map
+	 */
+	public int getWidth(){
+		return this.width;
+	}
+
+	/**
+	 * @return The height of the map
+	 */
+	public int getHeight(){
+		return this.height;
+	}
+
+	/**
+	 * @return The number of points whose cost has changed since the changes were last cleared
+	 */
+	public int getChangeCount(){
+		return this.changeCount;
+	}
+
+	/**
+	 * @param n Which changed point to get, from 0 to getChangeCount()-1
+	 * @return The index (y*width+x) of the nth changed point
+	 */
+	public int getChange(int n){
+		return this.changes[n];
+	}
+
+	/**
+	 * Forgets the points whose cost has changed
+	 */
+	public void clearChanges(){
+		for(int n=0; n<this.changeCount; n++){
+			this.changed[this.changes[n]] = false;
+		}
+		this.changeCount = 0;
+	}
+
+	/**
+	 * Gets the index of a neighbour of a point
+	 * @param index index (y*width+x) of the point
+	 * @param direction which neighbour, see NEIGHBOUR_X
+	 * @return The index of the neighbour, or -1 if it is outside of the map
+	 */
+	public int getNeighbour(int index, int direction){
+		int x = index%this.width+NEIGHBOUR_X[direction];
+		int y = index/this.width+NEIGHBOUR_Y[direction];
+		if(x<0 || x>=this.width || y<0 || y>=this.height) return -1;
+		return y*this.width+x;
+	}
+
+	/**
+	 * Gets the cost of stepping from a point to one of its neighbours: the length of the step times the higher cost of the two points.
+	 * Stepping the same way between two points costs the same in either direction.
+	 * @param index index (y*width+x) of the point
+	 * @param direction which neighbour to step to, see NEIGHBOUR_X
+	 * @return The cost of the step, or BLOCKED if the step is not possible
+	 */
+	public float getStepCost(int index, int direction){
+		int neighbour = getNeighbour(index, direction);
+		if(neighbour < 0) return BLOCKED;
+		float cost = Math.max(this.costs[index], this.costs[neighbour]);
+		if(direction < 4) return cost;
+		//Diagonal steps may not cut past a blocked point
+		if(this.costs[getNeighbour(index, direction-4)] == BLOCKED || this.costs[getNeighbour(index, (direction-3)&3)] == BLOCKED) return BLOCKED;
+		return cost*DIAGONAL;
+	}
+
+	/**
+	 * @return An admissible estimate of the cost of travelling between two points (the octile distance)
+	 */
+	public float estimate(int from, int to){
+		int dx = Math.abs(from%this.width-to%this.width);
+		int dy = Math.abs(from/this.width-to/this.width);
+		return Math.max(dx, dy)+(DIAGONAL-1)*Math.min(dx, dy);
+	}
+
+	/**
+	 * @return The direction opposite to a direction, see NEIGHBOUR_X
+	 */
+	public static int opposite(int direction){
+		if(direction < 4) return (direction+2)&3;
+		return ((direction-2)&3)+4;
+	}
+}
@@ -0,0 +1,83 @@
+package jenova.pathplanning;
+/**
+ * Class for representing a path through a grid as a sequence of points
+ * @author Adam Panzica
+ *
+ */
+public class GridPath {
+	private final int[] xs;
+	private final int[] ys;
+	private final double cost;
+	
+	/**
+	 * Constructor for creating a path
+	 * @param xs X coordinates of the points along the path, in order
+	 * @param ys Y coordinates of the points along the path, in order
+	 * @param cost total cost of the path
+	 */
+	public GridPath(int[] xs, int[] ys, double cost){
+		this.xs = xs;
+		this.ys = ys;
+		this.cost = cost;
+	}
+	
+	/**
+	 * @return The number of points along the path
+	 */
+	public int getLength(){
+		return this.xs.length;
+	}
+	
+	/**
+	 * @param n Which point to get, from 0 to getLength()-1
+	 * @return X coordinate of the nth point
+	 */
+	public int getX(int n){
+		return this.xs[n];
+	}
+	
+	/**
+	 * @param n Which point to get, from 0 to getLength()-1
+	 * @return Y coordinate of the nth point
+	 */
+	public int getY(int n){
+		return this.ys[n];
+	}
+	
+	/**
+	 * @return The total cost of the path
+	 */
+	public double getCost(){
+		return this.cost;
+	}
+	
+	/**
+	 * Builds a path by following parent links back from its last point
+	 * @param parent index of the point each point was reached from, -1 for the first point of the path
+	 * @param last index (y*width+x) of the last point of the path
+	 * @param width width of the grid
+	 * @param cost total cost of the path
+	 * @return The path, from its first point to last
+	 */
+	static GridPath fromParents(int[] parent, int last, int width, double cost){
+		int length = 0;
+		for(int point=last; point>=0; point=parent[point]) length++;
+		int[] xs = new int[length];
+		int[] ys = new int[length];
+		for(int point=last; point>=0; point=parent[point]){
+			length--;
+			xs[length] = point%width;
+			ys[length] = point/width;
+		}
+		return new GridPath(xs, ys, cost);
+	}
+	
+	public String toString(){
+		StringBuilder path = new StringBuilder();
+		for(int n=0; n<this.xs.length; n++){
+			if(n > 0) path.append("->");
+			path.append('(').append(this.xs[n]).append(',').append(this.ys[n]).append(')');
+		}
+		return path.toString();
+	}
+}
@@ -0,0 +1,18 @@
+package jenova.pathplanning;
+/**
+ * Interface for creating planners which find paths between points of a GridCostMap
+ * @author Adam Panzica
+ *
+ */
+public interface IPathPlanner {
+	/**
+	 * Plans the cheapest path between two points. There is no path from or to a blocked point, even when the start is the goal. NOTE: There
+	 * is no bounds checking, calling function must ensure that the start and goal are within the GridCostMap
+	 * @param startX X coordinate of the start of the path
+	 * @param startY Y coordinate of the start of the path
+	 * @param goalX X coordinate of the end of the path
+	 * @param goalY Y coordinate of the end of the path
+	 * @return The path, including both the start and the goal, or null if there is no path between them
+	 */
+	public GridPath plan(int startX, int startY, int goalX, int goalY);
+}
@@ -0,0 +1,108 @@
+package test;
+
+import jenova.mappingsystem.CartCoord;
+import jenova.mappingsystem.HawkEye;
+import jenova.mappingsystem.IMapPoint;
+import jenova.mappingsystem.IMapReader;
+import jenova.mappingsystem.MapObject;
+import jenova.mappingsystem.ObjectLocationData;
+
+/**
+ * Checks that a HawkEye with concurrent access enabled can be queried from inside read() while another thread updates its location: the
+ * region and obstacle distance queries neither deadlock nor see a save part way through, and a reader which tries to save the map is
+ * refused
+ * @author Adam Panzica
+ *
+ */
+public class HawkEyeConcurrencyTest {
+	private static final int UPDATES = 20000;
+	private static final long TIMEOUT = 10000;
+
+	private static final MapObject free = new MapObject("0");
+	private static final MapObject obstacle = new MapObject("1");
+	private static final IMapPoint point = new CartCoord(5, 5);
+
+	private static volatile boolean writing;
+	private static volatile int torn;
+	private static volatile int reads;
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		final HawkEye map = new HawkEye(100, 100, 40, 40, new CartCoord(50, 50), new CartCoord(20, 20), new ObjectLocationData(new CartCoord(0, 0), 0), free);
+		map.enableDistanceField(obstacle, 10);
+		map.enableMapPyramid(obstacle);
+		map.enableConcurrentAccess();
+
+		String failure = checkQueries(map);
+		if(failure == null) failure = checkRefused(map);
+		System.out.println(failure == null ? "HawkEyeConcurrencyTest passed" : "HawkEyeConcurrencyTest FAILED: "+failure);
+		if(failure != null) System.exit(1);
+	}
+
+	/**
+	 * @return A description of the failure, or null if a save from inside read() was refused
+	 */
+	private static String checkRefused(final HawkEye map){
+		boolean refused = map.read(new IMapReader<Boolean>(){
+			@Override
+			public Boolean read(HawkEye map) {
+				try{
+					map.saveToGolbal();
+					return false;
+				}
+				catch(IllegalStateException e){
+					return true;
+				}
+			}
+		});
+		return refused ? null : "saveToGolbal() was allowed from inside read()";
+	}
+
+	/**
+	 * Reads the occupancy and obstacle distance of one point from inside read() while another thread sets and clears it, saving after
+	 * each change
+	 * @return A description of the failure, or null if the queries finished and always agreed
+	 */
+	private static String checkQueries(final HawkEye map) throws InterruptedException {
+		Thread writer = new Thread(new Runnable(){
+			@Override
+			public void run() {
+				for(int update=0; update<UPDATES; update++){
+					map.castPoint(point, update%2 == 0 ? obstacle : free);
+					map.updateLocation(new ObjectLocationData(new CartCoord(update%3, 0), 0));
+				}
+				writing = false;
+			}
+		});
+		Thread reader = new Thread(new Runnable(){
+			@Override
+			public void run() {
+				IMapReader<Boolean> query = new IMapReader<Boolean>(){
+					@Override
+					public Boolean read(HawkEye map) {
+						boolean occupied = map.countOccupied(point, point) == 1;
+						boolean clear = map.isRegionClear(point, 0.5);
+						boolean atObstacle = map.getObstacleDistance(point) == 0;
+						return occupied == atObstacle && clear != atObstacle;
+					}
+				};
+				while(writing){
+					if(!map.read(query)) torn++;
+					reads++;
+				}
+			}
+		});
+		writer.setDaemon(true);
+		reader.setDaemon(true);
+		writing = true;
+		writer.start();
+		reader.start();
+		writer.join(TIMEOUT);
+		reader.join(TIMEOUT);
+		if(writer.isAlive() || reader.isAlive()) return "the writer and reader deadlocked after "+reads+" reads";
+		if(torn != 0) return torn+" of "+reads+" reads saw the occupancy and obstacle distance disagree";
+		return null;
+	}
+}
@@ -0,0 +1,127 @@
+package test;
+
+import java.util.Random;
+
+import jenova.mappingsystem.CartCoord;
+import jenova.mappingsystem.Frame;
+import jenova.mappingsystem.MapObject;
+import jenova.mappingsystem.MapPyramid;
+
+/**
+ * Checks the polygon queries of a MapPyramid: convex polygons, wound either way, count the same occupied points as a brute force walk of
+ * the frame, and polygons which are not convex, including stars which turn the same way at every corner, are rejected
+ * @author Adam Panzica
+ *
+ */
+public class MapPyramidTest {
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int failures = 0;
+		failures += checkConvex();
+		failures += checkRejected("concave quadrilateral", new double[]{0, 10, 4, 10}, new double[]{0, 0, 4, 10});
+		failures += checkRejected("bow tie", new double[]{0, 10, 0, 10}, new double[]{0, 0, 10, 10});
+		failures += checkRejected("pentagram", starXs(5, 2), starYs(5, 2));
+		failures += checkRejected("reversed pentagram", reverse(starXs(5, 2)), reverse(starYs(5, 2)));
+		failures += checkRejected("heptagram", starXs(7, 3), starYs(7, 3));
+		System.out.println(failures == 0 ? "MapPyramidTest passed" : "MapPyramidTest FAILED: "+failures+" checks failed");
+		if(failures != 0) System.exit(1);
+	}
+
+	/**
+	 * Compares the count of random convex polygons (rotated rectangles and regular polygons, wound both ways) against brute force
+	 * @return The number of polygons counted wrongly
+	 */
+	private static int checkConvex(){
+		MapObject free = new MapObject("0");
+		MapObject occupied = new MapObject("1");
+		Random random = new Random(5);
+		Frame frame = new Frame(120, 120, free);
+		MapPyramid pyramid = new MapPyramid(frame, occupied);
+		for(int n=0; n<1500; n++) frame.castPoint(new CartCoord(random.nextInt(120), random.nextInt(120)), occupied);
+		int failures = 0;
+
+		for(int trial=0; trial<300; trial++){
+			int corners = 3+random.nextInt(6);
+			double centerX = random.nextDouble()*120;
+			double centerY = random.nextDouble()*120;
+			double radius = 1+random.nextDouble()*40;
+			double start = random.nextDouble()*2*Math.PI;
+			boolean clockwise = random.nextBoolean();
+			double[] xs = new double[corners];
+			double[] ys = new double[corners];
+			for(int corner=0; corner<corners; corner++){
+				double angle = start+(clockwise ? -1 : 1)*corner*2*Math.PI/corners;
+				xs[corner] = centerX+radius*Math.cos(angle);
+				ys[corner] = centerY+radius*Math.sin(angle);
+			}
+			int expected = 0;
+			for(int y=0; y<frame.getHeight(); y++){
+				for(int x=0; x<frame.getWidth(); x++){
+					if(frame.getState(x, y) == occupied.getStateId() && inside(xs, ys, x, y)) expected++;
+				}
+			}
+			if(pyramid.countOccupied(xs, ys) != expected || pyramid.isClear(xs, ys) != (expected == 0)){
+				System.out.println("Convex polygon with "+corners+" corners counted wrongly, expected "+expected);
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * @return 1 if a query over the polygon was not rejected, 0 if it was
+	 */
+	private static int checkRejected(String name, double[] xs, double[] ys){
+		MapPyramid pyramid = new MapPyramid(new Frame(20, 20, new MapObject("0")), new MapObject("1"));
+		try{
+			pyramid.countOccupied(xs, ys);
+		}
+		catch(IllegalArgumentException e){
+			return 0;
+		}
+		System.out.println("A "+name+" was accepted as convex");
+		return 1;
+	}
+
+	/**
+	 * @return True if (x,y) lies within the convex polygon, or on its edge
+	 */
+	private static boolean inside(double[] xs, double[] ys, int x, int y){
+		boolean left = true;
+		boolean right = true;
+		for(int corner=0; corner<xs.length; corner++){
+			int next = (corner+1)%xs.length;
+			double side = (xs[next]-xs[corner])*(y-ys[corner])-(ys[next]-ys[corner])*(x-xs[corner]);
+			if(side < -1e-9) left = false;
+			if(side > 1e-9) right = false;
+		}
+		return left || right;
+	}
+
+	/**
+	 * @return The X coordinates of the corners of a star polygon {points/step}, around (10,10)
+	 */
+	private static double[] starXs(int points, int step){
+		double[] xs = new double[points];
+		for(int n=0; n<points; n++) xs[n] = 10+8*Math.cos(n*step*2*Math.PI/points);
+		return xs;
+	}
+
+	/**
+	 * @return The Y coordinates of the corners of a star polygon {points/step}, around (10,10)
+	 */
+	private static double[] starYs(int points, int step){
+		double[] ys = new double[points];
+		for(int n=0; n<points; n++) ys[n] = 10+8*Math.sin(n*step*2*Math.PI/points);
+		return ys;
+	}
+
+	private static double[] reverse(double[] values){
+		double[] reversed = new double[values.length];
+		for(int n=0; n<values.length; n++) reversed[n] = values[values.length-1-n];
+		return reversed;
+	}
+}
@@ -0,0 +1,182 @@
+package test;
+
+import jenova.mappingsystem.CartCoord;
+import jenova.mappingsystem.Frame;
+import jenova.mappingsystem.IMapPoint;
+import jenova.mappingsystem.MapObject;
+
+/**
+ * Times the line, rectangle and circle rasterizers of Frame against the trigonometric ones they replaced, which are kept here as they
+ * were, casting through castPoint() just as they did. Prints the time per cast of each and the speedup.
+ * @author Adam Panzica
+ *
+ */
+public class RasterizerBenchmark {
+	private static final int SIZE = 400;
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int ROUNDS = 5;
+
+	private static final MapObject free = new MapObject("0");
+	private static final MapObject occupied = new MapObject("1");
+
+	/**
+	 * Interface for the shapes being timed, each cast once by the new rasterizer and once by the old
+	 */
+	private interface Shape {
+		public void cast(Frame frame, boolean old);
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		final IMapPoint center = new CartCoord(SIZE/2, SIZE/2);
+		final IMapPoint corner = new CartCoord(20, SIZE-20);
+		final IMapPoint oppositeCorner = new CartCoord(SIZE-20, 20);
+		time("line", 2000, new Shape(){
+			@Override
+			public void cast(Frame frame, boolean old){
+				if(old) oldCastLine(frame, corner, occupied, oppositeCorner, occupied, free);
+				else frame.castLine(corner, occupied, oppositeCorner, occupied, free);
+			}
+		});
+		time("filled rectangle", 20, new Shape(){
+			@Override
+			public void cast(Frame frame, boolean old){
+				if(old) oldCastRec(frame, corner, oppositeCorner, occupied, true);
+				else frame.castRec(corner, oppositeCorner, occupied, true);
+			}
+		});
+		time("rectangle outline", 500, new Shape(){
+			@Override
+			public void cast(Frame frame, boolean old){
+				if(old) oldCastRec(frame, corner, oppositeCorner, occupied, false);
+				else frame.castRec(corner, oppositeCorner, occupied, false);
+			}
+		});
+		time("filled circle", 20, new Shape(){
+			@Override
+			public void cast(Frame frame, boolean old){
+				if(old) oldCastCircle(frame, center, 150, 360, occupied, true);
+				else frame.castCircle(center, 150, 360, occupied, true);
+			}
+		});
+		time("circle edge", 2000, new Shape(){
+			@Override
+			public void cast(Frame frame, boolean old){
+				if(old) oldCastCircle(frame, center, 150, 360, occupied, false);
+				else frame.castCircle(center, 150, 360, occupied, false);
+			}
+		});
+		time("filled quarter arc", 50, new Shape(){
+			@Override
+			public void cast(Frame frame, boolean old){
+				if(old) oldCastCircle(frame, center, 150, 90, occupied, true);
+				else frame.castCircle(center, 150, 90, occupied, true);
+			}
+		});
+	}
+
+	/**
+	 * Times a shape cast by both rasterizers, taking the best of several rounds of each, and prints the result
+	 * @param casts number of times the shape is cast in each round
+	 */
+	private static void time(String name, int casts, Shape shape){
+		Frame frame = new Frame(SIZE, SIZE, free);
+		for(int round=0; round<WARMUP_ROUNDS; round++){
+			run(frame, shape, casts, true);
+			run(frame, shape, casts, false);
+		}
+		long oldTime = Long.MAX_VALUE;
+		long newTime = Long.MAX_VALUE;
+		for(int round=0; round<ROUNDS; round++){
+			oldTime = Math.min(oldTime, run(frame, shape, casts, true));
+			newTime = Math.min(newTime, run(frame, shape, casts, false));
+		}
+		System.out.println(String.format("%-20s old %10.1f us  new %10.1f us  speedup %6.1fx", name, oldTime/1000.0/casts, newTime/1000.0/casts, (double)oldTime/newTime));
+	}
+
+	/**
+	 * @return The time taken to cast the shape the given number of times, in nanoseconds
+	 */
+	private static long run(Frame frame, Shape shape, int casts, boolean old){
+		long start = System.nanoTime();
+		for(int cast=0; cast<casts; cast++) shape.cast(frame, old);
+		return System.nanoTime()-start;
+	}
+
+	/************************************************ REPLACED RASTERIZERS **********************************************************/
+
+	/**
+	 * Frame.castLine() as it was, stepping along the vector between the points with cos and sin
+	 */
+	private static void oldCastLine(Frame frame, IMapPoint startPoint, MapObject startPointObject, IMapPoint endPoint, MapObject endPointObject, MapObject lineObject){
+		CartCoord delta = new CartCoord(endPoint.getX()-startPoint.getX(),endPoint.getY()-startPoint.getY());
+		double range = delta.getRange();
+		double theta = delta.getTheta();
+		double tempX;
+		double tempY;
+		double step;
+
+		for(int n=0; n<=range;n++){
+			step = n/range;
+			tempX = Math.round(range*step*Math.cos(theta))+(double)startPoint.getX();
+			tempY = Math.round(range*step*Math.sin(theta))+(double)startPoint.getY();
+			frame.castPoint(new CartCoord((int)tempX,(int)tempY),lineObject);
+			frame.castPoint(startPoint,startPointObject);
+			frame.castPoint(endPoint,endPointObject);
+		}
+	}
+
+	/**
+	 * Frame.castRec() as it was, checking the bounds of each point of a solid rectangle and drawing outlines as four lines
+	 */
+	private static void oldCastRec(Frame frame, IMapPoint topLeft, IMapPoint bottomRight, MapObject object, boolean fill){
+		if(fill){
+			int deltaX = Math.abs(bottomRight.getX()-topLeft.getX());
+			int deltaY = Math.abs(topLeft.getY()-bottomRight.getY());
+			int newX;
+			int newY;
+
+			for(int y=0; y<deltaY; y++){
+				for(int x=0; x<deltaX; x++){
+					newX = x+topLeft.getX();
+					newY = topLeft.getY()-y;
+					frame.castPoint(new CartCoord(newX,newY), object);
+				}
+			}
+		}
+		else{
+			CartCoord topRight = new CartCoord(bottomRight.getX(),topLeft.getY());
+			CartCoord bottomLeft = new CartCoord(topLeft.getX(),bottomRight.getY());
+			oldCastLine(frame, topLeft, object, topRight, object, object);
+			oldCastLine(frame, topLeft, object, bottomLeft, object, object);
+			oldCastLine(frame, bottomRight, object, bottomLeft, object, object);
+			oldCastLine(frame, bottomRight, object, topRight, object, object);
+		}
+	}
+
+	/**
+	 * Frame.castCircle() as it was, stepping round the arc a degree at a time and filling it with a line to each step
+	 */
+	private static void oldCastCircle(Frame frame, IMapPoint center, int radius, int degrees, MapObject object, boolean fill){
+		CartCoord nextPoint = new CartCoord(radius+center.getX(), center.getY());
+
+		if(radius<0)degrees = -degrees;
+
+		if (degrees > 0) {
+			for(int step = 0; step-1 <= degrees; step++) {
+				if (fill) oldCastLine(frame, center, object, nextPoint, object, object);
+				else frame.castPoint(nextPoint, object);
+				nextPoint = new CartCoord((int)Math.round(Math.cos(step*Math.PI/180)*radius)+center.getX(), (int)Math.round(Math.sin(step*Math.PI/180)*radius)+center.getY());
+			}
+		}
+		else {
+			for(int step = 360; step+1 >= (360 + degrees); step--) {
+				if (fill) oldCastLine(frame, center, object, nextPoint, object, object);
+				else frame.castPoint(nextPoint, object);
+				nextPoint = new CartCoord((int)Math.round(Math.cos(step*Math.PI/180)*radius)+center.getX(), (int)Math.round(Math.sin(step*Math.PI/180)*radius)+center.getY());
+			}
+		}
+	}
+}
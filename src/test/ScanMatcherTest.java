@@ -0,0 +1,62 @@
+package test;
+
+import java.util.Random;
+
+import jenova.localization.LikelihoodField;
+import jenova.localization.ScanMatch;
+import jenova.localization.ScanMatcher;
+import jenova.mappingsystem.CartCoord;
+import jenova.mappingsystem.Frame;
+import jenova.mappingsystem.MapObject;
+
+/**
+ * Checks that the branch and bound search of a ScanMatcher finds the same match as an exhaustive search (a field with a single level),
+ * both in the middle of the map and against its top left edge, where the bounds of the coarse levels are clipped
+ * @author Adam Panzica
+ *
+ */
+public class ScanMatcherTest {
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int worse = 0;
+		worse += compare(0);
+		worse += compare(40);
+		System.out.println(worse == 0 ? "ScanMatcherTest passed" : "ScanMatcherTest FAILED: "+worse+" searches found a worse match");
+		if(worse != 0) System.exit(1);
+	}
+
+	/**
+	 * Matches scans taken among obstacles in a 12x12 corner of a map, offset into the map by offset points, with both a four level and an
+	 * exhaustive search
+	 * @return The number of trials in which the four level search found a worse match than the exhaustive one
+	 */
+	private static int compare(int offset){
+		MapObject free = new MapObject("0");
+		MapObject obstacle = new MapObject("1");
+		Random random = new Random(11);
+		ScanMatcher matcher = new ScanMatcher(8, 0.1);
+		double[] angles = new double[90];
+		for(int n=0; n<angles.length; n++) angles[n] = n*2*Math.PI/angles.length;
+		double[] ranges = new double[angles.length];
+		int worse = 0;
+
+		for(int trial=0; trial<200; trial++){
+			Frame frame = new Frame(80, 80, free);
+			for(int n=0; n<10; n++) frame.castPoint(new CartCoord(offset+random.nextInt(12), offset+random.nextInt(12)), obstacle);
+			LikelihoodField exhaustive = new LikelihoodField(frame, obstacle, 1.0, 1);
+			LikelihoodField pyramid = new LikelihoodField(frame, obstacle, 1.0, 4);
+			double x = offset+random.nextDouble()*12;
+			double y = offset+random.nextDouble()*12;
+			double heading = random.nextDouble()*2*Math.PI;
+			for(int n=0; n<ranges.length; n++) ranges[n] = 1+random.nextDouble()*10;
+
+			ScanMatch best = matcher.match(exhaustive, x, y, heading, angles, ranges, 20);
+			ScanMatch found = matcher.match(pyramid, x, y, heading, angles, ranges, 20);
+			if(found.getScore() < best.getScore()-1e-4) worse++;
+		}
+		return worse;
+	}
+}